@@ -0,0 +1,170 @@
+package bench;
+
+import domain.MenuItem;
+import domain.Order;
+import json.JsonWriter;
+import repository.MenuItemRepository;
+import repository.OrderRepository;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * BenchSuite - the hot paths of the domain, the repositories and JSON
+ * handling, run with fixed settings and saved to a results file that can be
+ * compared between versions.
+ *
+ * Each entry uses the current code only; the per-area benchmarks
+ * (JsonParseBenchmark, JsonWriteBenchmark, OrderRepositoryBenchmark) keep the
+ * comparisons with the code they replaced. The results file is tab-separated
+ * (benchmark, ns/op, bytes/op) with the JVM and machine in `#` header lines.
+ *
+ * `compare` prints the change for every benchmark in both files and exits
+ * with status 1 if any got slower by more than -Dbench.regressPercent
+ * (default 10). Differences of a few percent are noise on a shared machine.
+ *
+ * Run with: `java -cp out;bench-out bench.BenchSuite [results.tsv] [warmupMillis]`
+ *      and: `java -cp out;bench-out bench.BenchSuite compare old.tsv new.tsv`
+ */
+public class BenchSuite {
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("compare")) {
+            if (args.length != 3) {
+                System.err.println("usage: BenchSuite compare old.tsv new.tsv");
+                System.exit(2);
+            }
+            boolean ok = compare(Path.of(args[1]), Path.of(args[2]),
+                    Double.parseDouble(System.getProperty("bench.regressPercent", "10")));
+            System.exit(ok ? 0 : 1);
+        }
+
+        Path out = Path.of(args.length > 0 ? args[0] : "bench-results.tsv");
+        int warmupMillis = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        List<Microbench.Result> results = run(warmupMillis);
+        write(out, results);
+        System.out.println("(sink " + Microbench.sink() + ") results written to " + out.toAbsolutePath());
+    }
+
+    static List<Microbench.Result> run(int warmupMillis) {
+        List<MenuItem> menu = JsonWriteBenchmark.menu();
+        List<Microbench.Result> results = new ArrayList<>();
+        Microbench.printHeader();
+
+        // Domain: one customer adding four dishes and taking them back
+        int[] nextOrder = {0};
+        results.add(Microbench.run("order.addItem+removeItem", warmupMillis, 10, 100_000, () -> {
+            Order order = new Order(++nextOrder[0], "Whiskers");
+            for (int i = 0; i < 4; i++) order.addItem(menu.get(i), 1);
+            for (int i = 0; i < 4; i++) order.removeItem(menu.get(i));
+            return order.getItemCount() + order.getTotalCents();
+        }));
+
+        // Repositories at a realistic size
+        int size = 100_000;
+        OrderRepository orders = new OrderRepository();
+        for (int id = 1; id <= size; id++) orders.save(new Order(id, "c" + id));
+        Order[] replacements = new Order[size];
+        for (int i = 0; i < size; i++) replacements[i] = new Order(i + 1, "r" + i);
+        int[] cursor = {0};
+        results.add(Microbench.run("orderRepository.save", warmupMillis, 10, 100_000, () -> {
+            Order o = replacements[cursor[0]++ % size];
+            orders.save(o);
+            return o.getOrderId();
+        }));
+        results.add(Microbench.run("orderRepository.findById", warmupMillis, 10, 100_000, () -> {
+            int id = (int) ((cursor[0]++ * 0x9E3779B97F4A7C15L >>> 40) % size) + 1;
+            return orders.findById(id).getOrderId();
+        }));
+
+        MenuItemRepository menuRepository = new MenuItemRepository();
+        menuRepository.saveAll(menu);
+        results.add(Microbench.run("menuRepository.findById", warmupMillis, 10, 100_000,
+                () -> menuRepository.findById(cursor[0]++ % menu.size() + 1).getId()));
+
+        // JSON: request parsing, the orders.items column and response writing
+        byte[] orderBody = JsonParseBenchmark.orderBody(8).getBytes(StandardCharsets.UTF_8);
+        String itemsBlob = JsonParseBenchmark.itemsBlob(8);
+        Order order = new Order(1042, "Whiskers \"The Cat\" McPaw");
+        for (int i = 0; i < 8; i++) order.addItem(menu.get(i % menu.size()), i % 3 + 1);
+        String escaped = "Tom \"Cat\" \\ likes\ttuna\nand milk";
+
+        results.add(Microbench.run("json.parseOrderItems", warmupMillis, 10, 20_000,
+                () -> JsonParseBenchmark.readerOrder(orderBody)));
+        results.add(Microbench.run("json.parseLineItems", warmupMillis, 10, 20_000,
+                () -> JsonParseBenchmark.readerItems(itemsBlob)));
+        results.add(Microbench.run("json.writeOrder", warmupMillis, 10, 20_000,
+                () -> JsonWriteBenchmark.writerOrder(order)));
+        results.add(Microbench.run("json.writeMenu", warmupMillis, 10, 20_000,
+                () -> JsonWriteBenchmark.writerMenu(menu)));
+        results.add(Microbench.run("json.escapeString", warmupMillis, 10, 50_000, () -> {
+            try (JsonWriter json = JsonWriter.pooled()) {
+                return json.value(escaped).size();
+            }
+        }));
+        return results;
+    }
+
+    static void write(Path file, List<Microbench.Result> results) throws IOException {
+        if (file.toAbsolutePath().getParent() != null) Files.createDirectories(file.toAbsolutePath().getParent());
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.printf("# java=%s vm=%s%n", System.getProperty("java.version"), System.getProperty("java.vm.name"));
+            out.printf("# os=%s/%s cpus=%d%n", System.getProperty("os.name"), System.getProperty("os.arch"),
+                    Runtime.getRuntime().availableProcessors());
+            out.println("benchmark\tns/op\tbytes/op");
+            for (Microbench.Result r : results) {
+                // Locale.ROOT: read() parses with Double.parseDouble, which wants a '.' decimal point
+                out.printf(Locale.ROOT, "%s\t%.1f\t%s%n", r.name(), r.nsPerOp(),
+                        r.bytesPerOp() < 0 ? "n/a" : String.format(Locale.ROOT, "%.1f", r.bytesPerOp()));
+            }
+        }
+    }
+
+    // name -> {ns/op, bytes/op (NaN if unknown)}
+    static Map<String, double[]> read(Path file) throws IOException {
+        Map<String, double[]> results = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isBlank() || line.startsWith("#") || line.startsWith("benchmark\t")) continue;
+            String[] cols = line.split("\t");
+            if (cols.length < 3) throw new IOException("Bad line in " + file + ": " + line);
+            double bytes = cols[2].equals("n/a") ? Double.NaN : Double.parseDouble(cols[2]);
+            results.put(cols[0], new double[] {Double.parseDouble(cols[1]), bytes});
+        }
+        return results;
+    }
+
+    static boolean compare(Path oldFile, Path newFile, double regressPercent) throws IOException {
+        Map<String, double[]> before = read(oldFile);
+        Map<String, double[]> after = read(newFile);
+        boolean ok = true;
+        System.out.printf("%-28s %12s %12s %9s %12s %12s%n", "benchmark", "old ns/op", "new ns/op", "change", "old B/op", "new B/op");
+        for (Map.Entry<String, double[]> e : after.entrySet()) {
+            double[] o = before.get(e.getKey());
+            double[] n = e.getValue();
+            if (o == null) {
+                System.out.printf(Locale.ROOT, "%-28s %12s %12.1f %9s%n", e.getKey(), "-", n[0], "new");
+                continue;
+            }
+            double change = (n[0] - o[0]) / o[0] * 100;
+            boolean regressed = change > regressPercent;
+            ok &= !regressed;
+            System.out.printf(Locale.ROOT, "%-28s %12.1f %12.1f %+8.1f%% %12s %12s%s%n",
+                    e.getKey(), o[0], n[0], change, bytes(o[1]), bytes(n[1]), regressed ? "  REGRESSION" : "");
+        }
+        for (String name : before.keySet()) {
+            if (!after.containsKey(name)) System.out.printf("%-28s (only in %s)%n", name, oldFile);
+        }
+        return ok;
+    }
+
+    private static String bytes(double b) {
+        return Double.isNaN(b) ? "n/a" : String.format(Locale.ROOT, "%.1f", b);
+    }
+}
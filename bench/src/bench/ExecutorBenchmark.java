@@ -0,0 +1,148 @@
+package bench;
+
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import server.ServerExecutors;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ExecutorBenchmark - compares the ServerExecutors modes under concurrent load.
+ *
+ * Each mode serves two routes on a local HttpServer: an "api" route that blocks
+ * for a fixed time (standing in for a JDBC call) and a "static" route that
+ * answers immediately. Static latency shows how much a blocked handler delays
+ * unrelated requests.
+ *
+ * Run with: `java -cp out;bench-out bench.ExecutorBenchmark [concurrency] [seconds] [blockMillis]`
+ */
+public class ExecutorBenchmark {
+    public static void main(String[] args) throws Exception {
+        int concurrency = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int blockMillis = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        System.out.println("concurrency=" + concurrency + " duration=" + seconds + "s blocking=" + blockMillis + "ms");
+        System.out.printf("%-8s %10s %12s %12s %12s %12s %8s%n",
+                "mode", "req/s", "api p50 ms", "api p99 ms", "static p50", "static p99", "503s");
+        for (ServerExecutors.Mode mode : ServerExecutors.Mode.values()) {
+            run(mode, concurrency, seconds, blockMillis);
+        }
+    }
+
+    private static void run(ServerExecutors.Mode mode, int concurrency, int seconds, int blockMillis) throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        HttpHandler api = exchange -> {
+            try {
+                Thread.sleep(blockMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, "{\"ok\":true}");
+        };
+        HttpHandler stat = exchange -> respond(exchange, "body{}");
+        server.createContext("/api", api).getFilters().add(ServerExecutors.overloadFilter());
+        server.createContext("/static", stat).getFilters().add(ServerExecutors.overloadFilter());
+        Executor executor = ServerExecutors.create(mode, 32, 256, 10_000);
+        server.setExecutor(executor);
+        server.start();
+        String base = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        LatencyLog[] apiLogs = new LatencyLog[concurrency];
+        LatencyLog[] staticLogs = new LatencyLog[concurrency];
+        AtomicLong rejected = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(concurrency);
+
+        for (int c = 0; c < concurrency; c++) {
+            LatencyLog apiLog = apiLogs[c] = new LatencyLog();
+            LatencyLog staticLog = staticLogs[c] = new LatencyLog();
+            Thread t = new Thread(() -> {
+                try {
+                    int n = 0;
+                    while (System.nanoTime() < deadline) {
+                        boolean isStatic = (n++ % 10) == 0;
+                        long start = System.nanoTime();
+                        int status = get(base + (isStatic ? "/static" : "/api"));
+                        long elapsed = System.nanoTime() - start;
+                        if (status == 503) rejected.incrementAndGet();
+                        (isStatic ? staticLog : apiLog).add(elapsed);
+                    }
+                } catch (IOException e) {
+                    System.err.println("client error: " + e.getMessage());
+                } finally {
+                    done.countDown();
+                }
+            });
+            t.setDaemon(true);
+            t.start();
+        }
+        done.await();
+
+        server.stop(0);
+        if (executor instanceof ExecutorService) ((ExecutorService) executor).shutdownNow();
+
+        long[] apiLat = LatencyLog.merge(apiLogs);
+        long[] staticLat = LatencyLog.merge(staticLogs);
+        double rps = (apiLat.length + staticLat.length) / (double) seconds;
+        System.out.printf("%-8s %10.0f %12.2f %12.2f %12.2f %12.2f %8d%n", mode, rps,
+                percentile(apiLat, 0.50), percentile(apiLat, 0.99),
+                percentile(staticLat, 0.50), percentile(staticLat, 0.99), rejected.get());
+    }
+
+    private static void respond(com.sun.net.httpserver.HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private static int get(String url) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) java.net.URI.create(url).toURL().openConnection();
+        int status = conn.getResponseCode();
+        try (InputStream in = status >= 400 ? conn.getErrorStream() : conn.getInputStream()) {
+            if (in != null) in.readAllBytes();
+        }
+        return status;
+    }
+
+    private static double percentile(long[] sortedNanos, double p) {
+        if (sortedNanos.length == 0) return 0.0;
+        int idx = (int) Math.min(sortedNanos.length - 1, Math.ceil(p * sortedNanos.length) - 1);
+        return sortedNanos[Math.max(0, idx)] / 1_000_000.0;
+    }
+
+    // Per-thread growable latency buffer, merged once at the end
+    private static class LatencyLog {
+        long[] values = new long[1024];
+        int size;
+
+        void add(long v) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = v;
+        }
+
+        static long[] merge(LatencyLog[] logs) {
+            int total = 0;
+            for (LatencyLog l : logs) total += l.size;
+            long[] all = new long[total];
+            int pos = 0;
+            for (LatencyLog l : logs) {
+                System.arraycopy(l.values, 0, all, pos, l.size);
+                pos += l.size;
+            }
+            Arrays.sort(all);
+            return all;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package bench;
+
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import metrics.Histogram;
+import server.NioHttpServer;
+import server.ServerExecutors;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HttpEngineBenchmark - throughput and latency of the JDK HttpServer against
+ * NioHttpServer, with the same handlers and executor.
+ *
+ * Each engine serves a small response (about the size of /api/menu) and a
+ * 64 KiB one from memory, through the same filters the RestServer contexts
+ * have. Clients are plain sockets on keep-alive connections, so the numbers
+ * are the server's cost per request, not a client library's. With a
+ * pipeline depth above 1 each connection keeps that many requests in flight.
+ * Both engines answer pipelined requests one at a time, but the client saves
+ * the round trip between them.
+ *
+ * Run with: `java -cp out;bench-out bench.HttpEngineBenchmark [connections] [seconds] [pipelineDepth] [executor]`
+ */
+public class HttpEngineBenchmark {
+    private static final byte[] SMALL = new byte[1200];
+    private static final byte[] LARGE = new byte[64 * 1024];
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        ServerExecutors.Mode mode = args.length > 3
+                ? ServerExecutors.Mode.valueOf(args[3].toUpperCase()) : ServerExecutors.Mode.POOL;
+        Arrays.fill(SMALL, (byte) 'x');
+        Arrays.fill(LARGE, (byte) 'y');
+
+        System.out.println("connections=" + connections + " duration=" + seconds + "s pipeline=" + depth
+                + " executor=" + mode + " cpus=" + Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-6s %-6s %10s %10s %10s %10s %10s %8s%n",
+                "engine", "body", "req/s", "MB/s", "p50 ms", "p99 ms", "max ms", "errors");
+        for (String path : new String[] {"/small", "/large"}) {
+            for (String engine : new String[] {"jdk", "nio"}) {
+                // Warm up both engines, then measure
+                run(engine, mode, path, connections, 1, depth, false);
+                run(engine, mode, path, connections, seconds, depth, true);
+            }
+        }
+    }
+
+    private static void run(String engine, ServerExecutors.Mode mode, String path, int connections, int seconds,
+                            int depth, boolean report) throws Exception {
+        HttpServer server = engine.equals("nio") ? NioHttpServer.create() : HttpServer.create();
+        server.bind(new InetSocketAddress("127.0.0.1", 0), 1024);
+        HttpHandler small = exchange -> respond(exchange, SMALL);
+        HttpHandler large = exchange -> respond(exchange, LARGE);
+        server.createContext("/small", small).getFilters().add(ServerExecutors.overloadFilter());
+        server.createContext("/large", large).getFilters().add(ServerExecutors.overloadFilter());
+        Executor executor = ServerExecutors.create(mode, 32, 256, 10_000);
+        server.setExecutor(executor);
+        server.start();
+        int port = server.getAddress().getPort();
+
+        byte[] request = ("GET " + path + " HTTP/1.1\r\nHost: 127.0.0.1\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        byte[] batch = new byte[request.length * depth];
+        for (int i = 0; i < depth; i++) System.arraycopy(request, 0, batch, i * request.length, request.length);
+
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        Histogram latency = new Histogram();
+        AtomicLong requests = new AtomicLong();
+        AtomicLong bytes = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(connections);
+        for (int c = 0; c < connections; c++) {
+            Thread t = new Thread(() -> {
+                try (Socket socket = new Socket("127.0.0.1", port)) {
+                    socket.setTcpNoDelay(true);
+                    OutputStream out = socket.getOutputStream();
+                    InputStream in = new BufferedInputStream(socket.getInputStream(), 64 * 1024);
+                    while (System.nanoTime() < deadline) {
+                        long start = System.nanoTime();
+                        out.write(batch);
+                        out.flush();
+                        for (int i = 0; i < depth; i++) {
+                            int length = readResponse(in);
+                            if (length < 0) {
+                                errors.incrementAndGet();
+                            } else {
+                                bytes.addAndGet(length);
+                            }
+                        }
+                        latency.record((System.nanoTime() - start) / depth);
+                        requests.addAndGet(depth);
+                    }
+                } catch (IOException e) {
+                    errors.incrementAndGet();
+                } finally {
+                    done.countDown();
+                }
+            });
+            t.setDaemon(true);
+            t.start();
+        }
+        done.await();
+        server.stop(0);
+        if (executor instanceof ExecutorService) ((ExecutorService) executor).shutdownNow();
+
+        if (!report) return;
+        System.out.printf("%-6s %-6s %10.0f %10.1f %10.3f %10.3f %10.3f %8d%n", engine, path.substring(1),
+                requests.get() / (double) seconds, bytes.get() / (double) seconds / 1e6,
+                latency.getValueAtPercentile(50) / 1e6, latency.getValueAtPercentile(99) / 1e6,
+                latency.getMax() / 1e6, errors.get());
+    }
+
+    private static void respond(com.sun.net.httpserver.HttpExchange exchange, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    // Reads one response with a Content-Length body; returns the body length, or -1 unless 200
+    private static int readResponse(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int status = -1;
+        int length = 0;
+        while (true) {
+            line.setLength(0);
+            int b;
+            while ((b = in.read()) != '\n') {
+                if (b < 0) throw new IOException("Connection closed");
+                if (b != '\r') line.append((char) b);
+            }
+            if (line.length() == 0) break;
+            String header = line.toString();
+            if (status < 0) {
+                status = Integer.parseInt(header.substring(9, 12));
+            } else if (header.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                length = Integer.parseInt(header.substring(15).trim());
+            }
+        }
+        long skipped = 0;
+        while (skipped < length) {
+            long n = in.skip(length - skipped);
+            if (n <= 0) {
+                if (in.read() < 0) throw new IOException("Connection closed");
+                n = 1;
+            }
+            skipped += n;
+        }
+        return status == 200 ? length : -1;
+    }
+}
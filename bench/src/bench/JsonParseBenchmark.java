@@ -0,0 +1,284 @@
+package bench;
+
+import json.JsonReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JsonParseBenchmark - JsonReader against the string-scanning helpers it
+ * replaced in RestServer and DatabaseManager.
+ *
+ * Two inputs are parsed each way: a POST /api/orders body read from an
+ * InputStream, and an orders.items blob as stored in the JSON schema. The
+ * legacy code is copied into {@link Legacy} unchanged apart from logging.
+ *
+ * Run with: `java -cp out;bench-out bench.JsonParseBenchmark [lines] [warmupMillis]`
+ */
+public class JsonParseBenchmark {
+    public static void main(String[] args) {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int warmupMillis = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+        byte[] orderBody = orderBody(lines).getBytes(StandardCharsets.UTF_8);
+        String itemsBlob = itemsBlob(lines);
+        System.out.println("lines=" + lines + " orderBody=" + orderBody.length + "B itemsBlob=" + itemsBlob.length() + "B");
+
+        Microbench.printHeader();
+        Microbench.run("order body: legacy helpers", warmupMillis, 10, 20_000, () -> legacyOrder(orderBody));
+        Microbench.run("order body: JsonReader", warmupMillis, 10, 20_000, () -> readerOrder(orderBody));
+        Microbench.run("items blob: legacy helpers", warmupMillis, 10, 20_000, () -> legacyItems(itemsBlob));
+        Microbench.run("items blob: JsonReader", warmupMillis, 10, 20_000, () -> readerItems(itemsBlob));
+        System.out.println("(sink " + Microbench.sink() + ")");
+    }
+
+    static String orderBody(int lines) {
+        StringBuilder sb = new StringBuilder("{\"customerName\":\"Whiskers McPaw\",\"items\":[");
+        for (int i = 0; i < lines; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"menuItemId\":").append(i + 1).append(",\"quantity\":").append(i % 3 + 1).append('}');
+        }
+        return sb.append("]}").toString();
+    }
+
+    static String itemsBlob(int lines) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < lines; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"id\":").append(i + 1).append(",\"name\":\"Tuna Delight ").append(i)
+              .append("\",\"quantity\":").append(i % 3 + 1).append(",\"price\":").append(i + 12).append(".99").append('}');
+        }
+        return sb.append(']').toString();
+    }
+
+    // Same work as the old handleCreateOrder: read the stream, then scan the string
+    private static long legacyOrder(byte[] body) {
+        try {
+            String json = Legacy.readBody(new ByteArrayInputStream(body));
+            long acc = Legacy.extractJsonString(json, "customerName").length();
+            for (int[] item : Legacy.parseOrderItems(json)) acc += item[0] + item[1];
+            return acc;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Same work as RestServer.parseOrderBody
+    static long readerOrder(byte[] body) {
+        try {
+            JsonReader reader = new JsonReader(new ByteArrayInputStream(body));
+            long acc = 0;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName();
+                if (key.equals("customerName")) {
+                    acc += reader.nextString().length();
+                } else if (key.equals("items")) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            String field = reader.nextName();
+                            if (field.equals("menuItemId") || field.equals("quantity")) {
+                                acc += reader.nextInt();
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return acc;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long legacyItems(String blob) {
+        long acc = 0;
+        for (String item : Legacy.parseItemsJson(blob)) {
+            acc += Legacy.extractInt(item, "id") + Legacy.extractInt(item, "quantity");
+            acc += Legacy.extractString(item, "name").length();
+            acc += (long) Legacy.extractDouble(item, "price");
+        }
+        return acc;
+    }
+
+    // Same work as DatabaseManager.parseLineItems
+    static long readerItems(String blob) {
+        try {
+            JsonReader reader = JsonReader.of(blob);
+            long acc = 0;
+            reader.beginArray();
+            while (reader.hasNext()) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "id":
+                        case "quantity": acc += reader.nextInt(); break;
+                        case "name": acc += reader.nextString().length(); break;
+                        case "price": acc += (long) reader.nextDouble(); break;
+                        default: reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            }
+            reader.endArray();
+            return acc;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** The pre-JsonReader helpers, kept here as the baseline. */
+    static final class Legacy {
+        static String readBody(java.io.InputStream is) throws IOException {
+            java.io.ByteArrayOutputStream buffer = new java.io.ByteArrayOutputStream();
+            byte[] data = new byte[1024];
+            int nRead;
+            while ((nRead = is.read(data, 0, data.length)) != -1) {
+                buffer.write(data, 0, nRead);
+            }
+            return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+        }
+
+        static List<int[]> parseOrderItems(String json) {
+            List<int[]> items = new ArrayList<>();
+            int itemsStart = json.indexOf("\"items\":");
+            if (itemsStart == -1) return items;
+            int arrayStart = json.indexOf("[", itemsStart);
+            int arrayEnd = json.lastIndexOf("]");
+            if (arrayStart == -1 || arrayEnd == -1) return items;
+
+            String itemsArray = json.substring(arrayStart + 1, arrayEnd);
+            String[] itemStrings = itemsArray.split("\\}\\s*,\\s*\\{");
+            for (String itemStr : itemStrings) {
+                itemStr = itemStr.replaceAll("[\\{\\}]", "").trim();
+                if (itemStr.isEmpty()) continue;
+                items.add(new int[]{extractJsonIntSafe(itemStr, "menuItemId"), extractJsonIntSafe(itemStr, "quantity")});
+            }
+            return items;
+        }
+
+        static int extractJsonIntSafe(String json, String key) {
+            String pattern = "\"" + key + "\":";
+            int start = json.indexOf(pattern);
+            if (start == -1) return 0;
+            start += pattern.length();
+            while (start < json.length() && Character.isWhitespace(json.charAt(start))) start++;
+            int end = start;
+            while (end < json.length() && Character.isDigit(json.charAt(end))) end++;
+            if (end <= start) return 0;
+            try {
+                return Integer.parseInt(json.substring(start, end).trim());
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+
+        static String extractJsonString(String json, String key) {
+            String pattern = "\"" + key + "\"";
+            int start = json.indexOf(pattern);
+            if (start == -1) return "";
+            start += pattern.length();
+            while (start < json.length() && (Character.isWhitespace(json.charAt(start)) || json.charAt(start) == ':')) {
+                start++;
+            }
+            if (start < json.length() && json.charAt(start) == '"') {
+                start++;
+            } else {
+                return "";
+            }
+            int end = start;
+            while (end < json.length() && json.charAt(end) != '"') {
+                if (json.charAt(end) == '\\' && end + 1 < json.length()) {
+                    end += 2;
+                } else {
+                    end++;
+                }
+            }
+            if (end >= json.length() || start > end) return "";
+            return json.substring(start, end);
+        }
+
+        static List<String> parseItemsJson(String itemsJson) {
+            List<String> items = new ArrayList<>();
+            if (itemsJson == null || itemsJson.equals("[]")) return items;
+            String content = itemsJson.substring(1, itemsJson.length() - 1);
+            if (content.isEmpty()) return items;
+
+            int depth = 0;
+            StringBuilder current = new StringBuilder();
+            for (char c : content.toCharArray()) {
+                if (c == '{') depth++;
+                if (c == '}') depth--;
+                if (c == ',' && depth == 0) {
+                    items.add(current.toString().trim());
+                    current = new StringBuilder();
+                } else {
+                    current.append(c);
+                }
+            }
+            if (current.length() > 0) items.add(current.toString().trim());
+            return items;
+        }
+
+        static int extractInt(String json, String key) {
+            try {
+                String pattern = "\"" + key + "\":";
+                int idx = json.indexOf(pattern);
+                if (idx == -1) return 0;
+                idx += pattern.length();
+                StringBuilder sb = new StringBuilder();
+                while (idx < json.length()) {
+                    char c = json.charAt(idx);
+                    if (c == ',' || c == '}' || Character.isWhitespace(c)) break;
+                    sb.append(c);
+                    idx++;
+                }
+                String s = sb.toString().trim();
+                return s.isEmpty() ? 0 : Integer.parseInt(s);
+            } catch (Exception e) {
+                return 0;
+            }
+        }
+
+        static double extractDouble(String json, String key) {
+            try {
+                String pattern = "\"" + key + "\":";
+                int idx = json.indexOf(pattern);
+                if (idx == -1) return 0.0;
+                idx += pattern.length();
+                StringBuilder sb = new StringBuilder();
+                while (idx < json.length()) {
+                    char c = json.charAt(idx);
+                    if (c == ',' || c == '}' || Character.isWhitespace(c)) break;
+                    sb.append(c);
+                    idx++;
+                }
+                String s = sb.toString().trim();
+                return s.isEmpty() ? 0.0 : Double.parseDouble(s);
+            } catch (Exception e) {
+                return 0.0;
+            }
+        }
+
+        static String extractString(String json, String key) {
+            String pattern = "\"" + key + "\":\"";
+            int idx = json.indexOf(pattern);
+            if (idx == -1) return "";
+            idx += pattern.length();
+            int end = json.indexOf('"', idx);
+            return end == -1 ? "" : json.substring(idx, end);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package bench;
+
+import domain.MenuItem;
+import domain.MenuItemFactory;
+import domain.Money;
+import domain.Order;
+import domain.OrderLine;
+import json.JsonWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JsonWriteBenchmark - JsonWriter against the StringBuilder / String.format
+ * emitters it replaced in RestServer.
+ *
+ * Three responses are produced each way: a POST /api/orders reply, the full
+ * menu and an error body. Both sides end with the UTF-8 bytes handed to an
+ * OutputStream, as the server does. The legacy code is copied into
+ * {@link Legacy} unchanged.
+ *
+ * Run with: `java -cp out;bench-out bench.JsonWriteBenchmark [lines] [warmupMillis]`
+ */
+public class JsonWriteBenchmark {
+    // Stands in for the response body; counts bytes so the work is not dead
+    private static final class CountingStream extends OutputStream {
+        long bytes;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+        }
+    }
+
+    private static final CountingStream OUT = new CountingStream();
+
+    public static void main(String[] args) {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int warmupMillis = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+        List<MenuItem> menu = menu();
+        Order order = new Order(1042, "Whiskers \"The Cat\" McPaw");
+        for (int i = 0; i < lines; i++) order.addItem(menu.get(i % menu.size()), i % 3 + 1);
+        String error = "Invalid JSON: Expected a number but was \"two\" at offset 57";
+
+        System.out.println("lines=" + lines + " orderUnits=" + order.getItemCount() + " menuItems=" + menu.size());
+        Microbench.printHeader();
+        Microbench.run("order: legacy StringBuilder", warmupMillis, 10, 20_000, () -> send(Legacy.convertOrderToJson(order)));
+        Microbench.run("order: JsonWriter", warmupMillis, 10, 20_000, () -> writerOrder(order));
+        Microbench.run("menu: legacy StringBuilder", warmupMillis, 10, 20_000, () -> send(Legacy.menuJson(menu)));
+        Microbench.run("menu: JsonWriter", warmupMillis, 10, 20_000, () -> writerMenu(menu));
+        Microbench.run("error: legacy String.format", warmupMillis, 10, 50_000, () -> send(Legacy.errorJson(error)));
+        Microbench.run("error: JsonWriter", warmupMillis, 10, 50_000, () -> writerError(error));
+        System.out.println("(sink " + Microbench.sink() + ", bytes " + OUT.bytes + ")");
+    }
+
+    static List<MenuItem> menu() {
+        List<MenuItem> menu = new ArrayList<>();
+        menu.add(MenuItemFactory.create(1, "Margherita Pizza", "Classic pizza with tomato and mozzarella", 12.99, "Main"));
+        menu.add(MenuItemFactory.create(2, "Carbonara Pasta", "Spaghetti with eggs, cheese, and pancetta", 14.50, "Main"));
+        menu.add(MenuItemFactory.create(3, "Caesar Salad", "Romaine lettuce with croutons and Caesar dressing", 8.75, "Appetizer"));
+        menu.add(MenuItemFactory.create(4, "Tiramisu", "Italian coffee-flavored dessert", 6.99, "Dessert"));
+        menu.add(MenuItemFactory.create(5, "Coca Cola", "Refreshing soft drink", 2.50, "Drink"));
+        menu.add(MenuItemFactory.create(6, "House Red Wine", "Full-bodied red wine", 7.50, "Drink"));
+        menu.add(MenuItemFactory.create(7, "Grilled Salmon", "Salmon from Balkhash", 18.99, "Main"));
+        menu.add(MenuItemFactory.create(8, "Caesar Olive", "Kolbasa, egg, cucumber, mayonaise", 6.50, "Appetizer"));
+        menu.add(MenuItemFactory.create(9, "Cheesecake", "Cheese and cake", 6.50, "Dessert"));
+        menu.add(MenuItemFactory.create(10, "Red Wine", "100 years wine", 1000.00, "Drink"));
+        menu.add(MenuItemFactory.create(11, "Botol of Water", "Water", 1.00, "Drink"));
+        return menu;
+    }
+
+    private static long send(String json) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        OUT.write(bytes, 0, bytes.length);
+        return bytes.length;
+    }
+
+    private static long send(JsonWriter json) {
+        try {
+            json.writeTo(OUT);
+            return json.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Same work as RestServer.writeOrderJson
+    static long writerOrder(Order order) {
+        try (JsonWriter json = JsonWriter.pooled()) {
+            json.beginObject()
+                .name("orderId").value(order.getOrderId())
+                .name("customerName").value(order.getCustomerName())
+                .name("items").beginArray();
+            for (OrderLine line : order.getLines()) {
+                for (int q = 0; q < line.getQuantity(); q++) {
+                    json.beginObject()
+                        .name("id").value(line.getMenuItemId())
+                        .name("name").value(line.getName())
+                        .name("price").valueCents(line.getUnitPriceCents())
+                        .endObject();
+                }
+            }
+            json.endArray()
+                .name("totalPrice").valueCents(order.getTotalCents())
+                .name("status").value(order.getStatus())
+                .name("itemCount").value(order.getItemCount())
+                .endObject();
+            return send(json);
+        }
+    }
+
+    // Same work as RestServer.getMenuFromRepository
+    static long writerMenu(List<MenuItem> menu) {
+        try (JsonWriter json = JsonWriter.pooled()) {
+            json.beginArray();
+            for (MenuItem item : menu) {
+                json.beginObject()
+                    .name("id").value(item.getId())
+                    .name("name").value(item.getName())
+                    .name("description").value(item.getDescription())
+                    .name("price").valueCents(item.getPriceCents())
+                    .name("category").value(item.getCategory())
+                    .endObject();
+            }
+            json.endArray();
+            return send(json);
+        }
+    }
+
+    static long writerError(String message) {
+        try (JsonWriter json = JsonWriter.pooled()) {
+            json.beginObject().name("error").value(message).endObject();
+            return send(json);
+        }
+    }
+
+    /** The emitters JsonWriter replaced, kept here as the baseline. */
+    static final class Legacy {
+        static String convertOrderToJson(Order order) {
+            StringBuilder json = new StringBuilder(128 + order.getItemCount() * 48);
+            json.append("{\"orderId\":").append(order.getOrderId())
+                .append(",\"customerName\":\"").append(escapeJson(order.getCustomerName()))
+                .append("\",\"items\":[");
+            boolean first = true;
+            for (OrderLine line : order.getLines()) {
+                if (!first) json.append(',');
+                first = false;
+                int start = json.length();
+                json.append("{\"id\":").append(line.getMenuItemId())
+                    .append(",\"name\":\"").append(escapeJson(line.getName())).append("\",\"price\":");
+                Money.appendTo(json, line.getUnitPriceCents()).append('}');
+                int end = json.length();
+                for (int q = 1; q < line.getQuantity(); q++) {
+                    json.append(',').append(json, start, end);
+                }
+            }
+            json.append("],\"totalPrice\":");
+            Money.appendTo(json, order.getTotalCents())
+                .append(",\"status\":\"").append(order.getStatus())
+                .append("\",\"itemCount\":").append(order.getItemCount()).append('}');
+            return json.toString();
+        }
+
+        static String menuJson(List<MenuItem> menu) {
+            StringBuilder json = new StringBuilder("[");
+            boolean first = true;
+            for (MenuItem item : menu) {
+                if (!first) json.append(",");
+                json.append("{")
+                    .append("\"id\":").append(item.getId()).append(",")
+                    .append("\"name\":\"").append(escapeJson(item.getName())).append("\",")
+                    .append("\"description\":\"").append(escapeJson(item.getDescription())).append("\",")
+                    .append("\"price\":");
+                Money.appendTo(json, item.getPriceCents())
+                    .append(",")
+                    .append("\"category\":\"").append(escapeJson(item.getCategory())).append("\"")
+                    .append("}");
+                first = false;
+            }
+            json.append("]");
+            return json.toString();
+        }
+
+        static String errorJson(String message) {
+            return String.format("{\"error\":\"%s\"}", escapeJson(message));
+        }
+
+        static String escapeJson(String text) {
+            if (text == null) return "";
+            return text.replace("\\", "\\\\")
+                       .replace("\"", "\\\"")
+                       .replace("\n", "\\n")
+                       .replace("\r", "\\r")
+                       .replace("\t", "\\t");
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package bench;
+
+import json.JsonReader;
+import metrics.Histogram;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * LoadTest - open-loop load generator for a running RestServer, reporting
+ * throughput and latency percentiles per operation.
+ *
+ * Requests are scheduled at a fixed rate (-Dload.rate per second) no matter
+ * how fast the server answers. A pool of -Dload.connections worker threads
+ * sends them; when all workers are busy, requests wait. Latency is measured
+ * from the time a request was scheduled, not from when it was sent, so a
+ * server stall shows up in every request queued behind it. This corrects for
+ * coordinated omission: a closed-loop client that waits for each answer
+ * before sending the next would only record the one slow request. The time
+ * from actual send to answer is reported too, as "service" latency.
+ *
+ * Operations are mixed by weight with -Dload.mix (default
+ * menu=35,orders=20,create=15,delete=5,static=25):
+ *   menu    GET /api/menu
+ *   orders  GET /api/orders?limit=20
+ *   create  POST /api/orders with one or two lines
+ *   delete  DELETE /api/orders/{id} of an order this run created (a create if none is left)
+ *   static  GET /, /styles.css or /scripts/app.js
+ *
+ * Order operations need the server's database. Against a server without one,
+ * menu and static files still work and order operations count as errors.
+ *
+ * Other settings: -Dload.url (default http://localhost:8080),
+ * -Dload.warmupSeconds (5) and -Dload.seconds (30). With -Dload.sloP99Millis
+ * set, the run exits with status 1 if any operation's p99 exceeds it, more
+ * than -Dload.maxErrorPercent (1) of requests fail, or the generator could not
+ * keep up with the schedule.
+ *
+ * Run with: `java -cp out;bench-out -Dload.rate=500 bench.LoadTest`
+ */
+public class LoadTest {
+    private static final String ADMIN_KEY = "meowadmin";
+    private static final String[] STATIC_PATHS = {"/", "/styles.css", "/scripts/app.js"};
+
+    private enum Op { MENU, ORDERS, CREATE, DELETE, STATIC }
+
+    /** Latencies and outcomes for one operation (or the total). */
+    private static final class Stats {
+        final Histogram response = new Histogram();   // from scheduled time
+        final Histogram service = new Histogram();    // from actual send
+        final AtomicLong errors = new AtomicLong();
+    }
+
+    private final URI base;
+    private final double rate;
+    private final int connections;
+    private final long warmupNanos;
+    private final long measureNanos;
+    private final Op[] schedule;   // weighted op table, indexed by request number
+    private final HttpClient client;
+    private final Map<Op, Stats> stats = new LinkedHashMap<>();
+    private final Queue<Integer> createdOrders = new ConcurrentLinkedQueue<>();
+    private final AtomicLong nextRequest = new AtomicLong();
+    private final AtomicLong unsent = new AtomicLong();
+
+    private long startNanos;
+
+    LoadTest(URI base, double rate, int connections, double warmupSeconds, double seconds, String mix) {
+        this.base = base;
+        this.rate = rate;
+        this.connections = Math.max(1, connections);
+        this.warmupNanos = (long) (warmupSeconds * 1e9);
+        this.measureNanos = (long) (seconds * 1e9);
+        this.schedule = parseMix(mix);
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        for (Op op : Op.values()) stats.put(op, new Stats());
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        LoadTest test = new LoadTest(
+                URI.create(System.getProperty("load.url", "http://localhost:8080")),
+                Double.parseDouble(System.getProperty("load.rate", "200")),
+                Integer.getInteger("load.connections", 32),
+                Double.parseDouble(System.getProperty("load.warmupSeconds", "5")),
+                Double.parseDouble(System.getProperty("load.seconds", "30")),
+                System.getProperty("load.mix", "menu=35,orders=20,create=15,delete=5,static=25"));
+        long wallNanos = test.run();
+        test.report(wallNanos);
+
+        String slo = System.getProperty("load.sloP99Millis");
+        if (slo != null) {
+            double maxErrorPercent = Double.parseDouble(System.getProperty("load.maxErrorPercent", "1"));
+            boolean ok = test.meetsSlo((long) (Double.parseDouble(slo) * 1_000_000), maxErrorPercent);
+            System.out.println(ok ? "SLO: PASS" : "SLO: FAIL");
+            System.exit(ok ? 0 : 1);
+        }
+    }
+
+    /** Run warm-up and measurement; returns the wall time of the measured part. */
+    long run() throws InterruptedException {
+        System.out.printf("target %s, %.0f req/s, %d connections, %.0fs warm-up + %.0fs measured%n",
+                base, rate, connections, warmupNanos / 1e9, measureNanos / 1e9);
+        startNanos = System.nanoTime() + 100_000_000L; // give the workers a moment to start
+        List<Thread> workers = new ArrayList<>(connections);
+        for (int i = 0; i < connections; i++) {
+            Thread t = new Thread(this::work, "load-" + i);
+            t.setDaemon(true);
+            workers.add(t);
+            t.start();
+        }
+        for (Thread t : workers) t.join();
+        return Math.max(System.nanoTime() - startNanos - warmupNanos, 1);
+    }
+
+    private void work() {
+        long interval = (long) (1e9 / rate);
+        long end = startNanos + warmupNanos + measureNanos;
+        // A generator this far behind is measuring itself, not the server
+        long giveUp = end + Math.max(measureNanos / 2, 5_000_000_000L);
+        while (true) {
+            long n = nextRequest.getAndIncrement();
+            long scheduled = startNanos + n * interval;
+            if (scheduled >= end) return;
+            long now = System.nanoTime();
+            if (now > giveUp) {
+                unsent.incrementAndGet();
+                continue;
+            }
+            while (now < scheduled) {
+                LockSupport.parkNanos(scheduled - now);
+                now = System.nanoTime();
+            }
+            send(n, scheduled, now, scheduled >= startNanos + warmupNanos);
+        }
+    }
+
+    private void send(long n, long scheduled, long sent, boolean measured) {
+        Op op = schedule[(int) (n % schedule.length)];
+        Integer deleteId = op == Op.DELETE ? createdOrders.poll() : null;
+        if (op == Op.DELETE && deleteId == null) op = Op.CREATE;
+
+        HttpRequest.Builder request = HttpRequest.newBuilder().timeout(Duration.ofSeconds(30));
+        switch (op) {
+            case MENU -> request.uri(base.resolve("/api/menu")).GET();
+            case ORDERS -> request.uri(base.resolve("/api/orders?limit=20")).GET();
+            case CREATE -> request.uri(base.resolve("/api/orders"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(orderBody(n)));
+            case DELETE -> request.uri(base.resolve("/api/orders/" + deleteId))
+                    .header("X-Admin-Key", ADMIN_KEY)
+                    .DELETE();
+            case STATIC -> request.uri(base.resolve(STATIC_PATHS[(int) (n / schedule.length % STATIC_PATHS.length)])).GET();
+        }
+
+        boolean ok;
+        try {
+            HttpResponse<byte[]> response = client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+            ok = response.statusCode() / 100 == 2;
+            if (ok && op == Op.CREATE) {
+                int id = orderId(response.body());
+                if (id > 0) createdOrders.add(id);
+            }
+        } catch (IOException e) {
+            ok = false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        long done = System.nanoTime();
+        if (!measured) return;
+
+        Stats s = stats.get(op);
+        s.response.record(done - scheduled);
+        s.service.record(done - sent);
+        if (!ok) s.errors.incrementAndGet();
+    }
+
+    private static String orderBody(long n) {
+        int first = (int) (n % 11) + 1;
+        String lines = "{\"menuItemId\":" + first + ",\"quantity\":" + (n % 3 + 1) + "}";
+        if (n % 2 == 0) lines += ",{\"menuItemId\":" + ((first % 11) + 1) + ",\"quantity\":1}";
+        return "{\"customerName\":\"load-" + n + "\",\"items\":[" + lines + "]}";
+    }
+
+    private static int orderId(byte[] body) {
+        try {
+            JsonReader reader = new JsonReader(body);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("orderId")) return reader.nextInt();
+                reader.skipValue();
+            }
+        } catch (IOException | RuntimeException e) {
+            // not an order; nothing to delete later
+        }
+        return -1;
+    }
+
+    // "menu=35,orders=20" -> table with each op repeated by weight, interleaved
+    private static Op[] parseMix(String mix) {
+        Map<Op, Integer> weights = new LinkedHashMap<>();
+        int total = 0;
+        for (String part : mix.split(",")) {
+            String[] kv = part.trim().split("=");
+            if (kv.length != 2) throw new IllegalArgumentException("Bad load.mix entry: " + part);
+            int w = Integer.parseInt(kv[1].trim());
+            if (w < 0) throw new IllegalArgumentException("Negative weight in load.mix: " + part);
+            weights.put(Op.valueOf(kv[0].trim().toUpperCase()), w);
+            total += w;
+        }
+        if (total == 0) throw new IllegalArgumentException("load.mix has no positive weights");
+
+        // Spread each op evenly over the table instead of running them in blocks
+        Op[] table = new Op[total];
+        double[] credit = new double[Op.values().length];
+        for (int i = 0; i < total; i++) {
+            Op best = null;
+            for (Map.Entry<Op, Integer> e : weights.entrySet()) {
+                credit[e.getKey().ordinal()] += e.getValue();
+                if (best == null || credit[e.getKey().ordinal()] > credit[best.ordinal()]) best = e.getKey();
+            }
+            credit[best.ordinal()] -= total;
+            table[i] = best;
+        }
+        return table;
+    }
+
+    void report(long wallNanos) {
+        Stats all = new Stats();
+        System.out.printf("%n%-8s %9s %7s %9s %9s %9s %9s %9s %9s %11s%n",
+                "op", "requests", "errors", "req/s", "p50 ms", "p95 ms", "p99 ms", "p999 ms", "max ms", "svc p99 ms");
+        for (Map.Entry<Op, Stats> e : stats.entrySet()) {
+            Stats s = e.getValue();
+            if (s.response.getCount() == 0) continue;
+            printRow(e.getKey().name().toLowerCase(), s, wallNanos);
+            all.response.add(s.response);
+            all.service.add(s.service);
+            all.errors.addAndGet(s.errors.get());
+        }
+        printRow("total", all, wallNanos);
+        if (unsent.get() > 0) {
+            System.out.printf("generator fell behind: %d scheduled requests were never sent%n", unsent.get());
+        }
+    }
+
+    private static void printRow(String name, Stats s, long wallNanos) {
+        Histogram h = s.response;
+        System.out.printf("%-8s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f %11.2f%n",
+                name, h.getCount(), s.errors.get(), h.getCount() / (wallNanos / 1e9),
+                ms(h.getValueAtPercentile(50)), ms(h.getValueAtPercentile(95)),
+                ms(h.getValueAtPercentile(99)), ms(h.getValueAtPercentile(99.9)), ms(h.getMax()),
+                ms(s.service.getValueAtPercentile(99)));
+    }
+
+    boolean meetsSlo(long p99Nanos, double maxErrorPercent) {
+        boolean ok = unsent.get() == 0;
+        long requests = 0;
+        long errors = 0;
+        for (Map.Entry<Op, Stats> e : stats.entrySet()) {
+            Histogram h = e.getValue().response;
+            requests += h.getCount();
+            errors += e.getValue().errors.get();
+            if (h.getCount() > 0 && h.getValueAtPercentile(99) > p99Nanos) {
+                System.out.printf("SLO: %s p99 %.2f ms is over %.2f ms%n",
+                        e.getKey().name().toLowerCase(), ms(h.getValueAtPercentile(99)), ms(p99Nanos));
+                ok = false;
+            }
+        }
+        if (requests > 0 && errors * 100.0 / requests > maxErrorPercent) {
+            System.out.printf("SLO: %.2f%% of requests failed (limit %.2f%%)%n", errors * 100.0 / requests, maxErrorPercent);
+            ok = false;
+        }
+        return ok;
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,69 @@
+package bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.LongSupplier;
+
+/**
+ * Microbench - minimal warmup/measure loop for single-threaded hot paths.
+ *
+ * Not a replacement for JMH: there is no fork isolation, so run one benchmark
+ * class per JVM and treat small differences as noise. Each measured batch
+ * reports ns/op and, where the JVM supports it, bytes allocated per op. The
+ * operation returns a value that is folded into a sink so the JIT cannot
+ * discard the work.
+ */
+public final class Microbench {
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+    private static long sink;
+
+    private Microbench() {
+    }
+
+    /** Best batch of one run; bytesPerOp is negative when allocation cannot be measured. */
+    public record Result(String name, double nsPerOp, double bytesPerOp) {
+    }
+
+    public static void printHeader() {
+        System.out.printf("%-36s %12s %14s%n", "benchmark", "ns/op", "bytes/op");
+    }
+
+    /** Warm up for `warmupMillis`, then measure `batches` batches of `opsPerBatch`; print and return the best. */
+    public static Result run(String name, int warmupMillis, int batches, int opsPerBatch, LongSupplier op) {
+        long warmupEnd = System.nanoTime() + warmupMillis * 1_000_000L;
+        while (System.nanoTime() < warmupEnd) {
+            for (int i = 0; i < opsPerBatch; i++) sink += op.getAsLong();
+        }
+
+        double bestNs = Double.MAX_VALUE;
+        double bytes = -1;
+        for (int b = 0; b < batches; b++) {
+            long alloc0 = allocatedBytes();
+            long t0 = System.nanoTime();
+            for (int i = 0; i < opsPerBatch; i++) sink += op.getAsLong();
+            long t1 = System.nanoTime();
+            long alloc1 = allocatedBytes();
+            bestNs = Math.min(bestNs, (t1 - t0) / (double) opsPerBatch);
+            if (alloc0 >= 0) bytes = (alloc1 - alloc0) / (double) opsPerBatch;
+        }
+        System.out.printf("%-36s %12.1f %14s%n", name, bestNs, bytes < 0 ? "n/a" : String.format("%.1f", bytes));
+        return new Result(name, bestNs, bytes);
+    }
+
+    /** Value accumulated from all operations; print it once so it stays observable. */
+    public static long sink() {
+        return sink;
+    }
+
+    private static long allocatedBytes() {
+        return THREADS == null ? -1 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported()) {
+            bean.setThreadAllocatedMemoryEnabled(true);
+            return bean;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,163 @@
+package bench;
+
+import domain.Order;
+import repository.OrderRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * OrderRepositoryBenchmark - save/find/delete cost of OrderRepository at
+ * 10k to 1M orders, next to the synchronized ArrayList it replaced.
+ *
+ * Single-threaded phases report ns/op for saving n orders (the startup load),
+ * n random lookups, and deleting every order in random order. A mixed phase
+ * then runs 8 threads doing 90% lookups and 10% saves. The legacy store is
+ * quadratic, so it only runs up to -Dbench.legacyMax (default 50000) orders.
+ *
+ * Run with: `java -cp out;bench-out bench.OrderRepositoryBenchmark [sizes...]`
+ */
+public class OrderRepositoryBenchmark {
+    interface Store {
+        void save(Order o);
+        Order findById(int id);
+        boolean deleteById(int id);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = args.length > 0
+                ? java.util.Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+                : new int[]{10_000, 100_000, 1_000_000};
+        int legacyMax = Integer.getInteger("bench.legacyMax", 50_000);
+
+        System.out.printf("%-8s %9s %12s %12s %12s %14s%n", "store", "orders", "save ns/op", "find ns/op", "delete ns/op", "mixed Mops/s");
+        for (int n : sizes) {
+            // Run twice and keep the second, so the JIT has compiled the paths
+            run("striped", n, OrderRepositoryBenchmark::newRepository, false);
+            run("striped", n, OrderRepositoryBenchmark::newRepository, true);
+            if (n <= legacyMax) {
+                run("legacy", n, LegacyOrderRepository::new, false);
+                run("legacy", n, LegacyOrderRepository::new, true);
+            }
+        }
+    }
+
+    private static Store newRepository() {
+        OrderRepository repo = new OrderRepository();
+        return new Store() {
+            public void save(Order o) { repo.save(o); }
+            public Order findById(int id) { return repo.findById(id); }
+            public boolean deleteById(int id) { return repo.deleteById(id); }
+        };
+    }
+
+    private static void run(String name, int n, java.util.function.Supplier<Store> factory, boolean print) throws Exception {
+        Order[] orders = new Order[n];
+        for (int i = 0; i < n; i++) orders[i] = new Order(i + 1, "customer" + (i % 1000));
+        int[] lookups = new SplittableRandom(42).ints(n, 1, n + 1).toArray();
+
+        Store store = factory.get();
+        long t0 = System.nanoTime();
+        for (Order o : orders) store.save(o);
+        long t1 = System.nanoTime();
+        long found = 0;
+        for (int id : lookups) if (store.findById(id) != null) found++;
+        long t2 = System.nanoTime();
+        if (found != n) throw new IllegalStateException("lookups missed: " + (n - found));
+
+        double mixed = mixed(store, n, 8, Math.min(2_000_000, n * 10));
+
+        int[] deleteOrder = shuffledIds(n);
+        long t3 = System.nanoTime();
+        for (int id : deleteOrder) store.deleteById(id);
+        long t4 = System.nanoTime();
+
+        if (print) {
+            System.out.printf("%-8s %9d %12.1f %12.1f %12.1f %14.2f%n", name, n,
+                    (t1 - t0) / (double) n, (t2 - t1) / (double) n, (t4 - t3) / (double) n, mixed);
+        }
+    }
+
+    // 90% findById, 10% save of an existing order, spread over `threads` threads
+    private static double mixed(Store store, int n, int threads, int opsTotal) throws InterruptedException {
+        int perThread = opsTotal / threads;
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicLong sink = new AtomicLong();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long seed = t;
+            Thread w = new Thread(() -> {
+                SplittableRandom rnd = new SplittableRandom(seed);
+                long local = 0;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    int id = rnd.nextInt(n) + 1;
+                    if (rnd.nextInt(10) == 0) {
+                        store.save(new Order(id, "c"));
+                    } else if (store.findById(id) != null) {
+                        local++;
+                    }
+                }
+                sink.addAndGet(local);
+                done.countDown();
+            });
+            w.start();
+            workers.add(w);
+        }
+        long t0 = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - t0;
+        return perThread * (double) threads / (elapsed / 1000.0);
+    }
+
+    private static int[] shuffledIds(int n) {
+        int[] ids = new int[n];
+        for (int i = 0; i < n; i++) ids[i] = i + 1;
+        SplittableRandom rnd = new SplittableRandom(7);
+        for (int i = n - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            int tmp = ids[i];
+            ids[i] = ids[j];
+            ids[j] = tmp;
+        }
+        return ids;
+    }
+
+    /** The previous OrderRepository: a synchronized ArrayList with linear scans. */
+    static final class LegacyOrderRepository implements Store {
+        private final List<Order> orders = new ArrayList<>();
+
+        public synchronized void save(Order order) {
+            for (int i = 0; i < orders.size(); i++) {
+                if (orders.get(i).getOrderId() == order.getOrderId()) {
+                    orders.set(i, order);
+                    return;
+                }
+            }
+            orders.add(order);
+        }
+
+        public synchronized Order findById(int id) {
+            return orders.stream().filter(o -> o.getOrderId() == id).findFirst().orElse(null);
+        }
+
+        public synchronized boolean deleteById(int id) {
+            for (int i = 0; i < orders.size(); i++) {
+                if (orders.get(i).getOrderId() == id) {
+                    orders.remove(i);
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
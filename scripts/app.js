@@ -5,6 +5,8 @@ let currentFilter = 'All';
 let imageManifest = {};
 let adminKey = null;
 let isAdmin = false;
+let adminOrders = new Map();   // order id -> order row, kept current by the order event stream
+let orderEvents = null;        // EventSource for /api/orders/stream while logged in as admin
 
 // Initialize the application
 async function init() {
@@ -292,23 +294,57 @@ function adminLogout() {
     document.getElementById('admin-login-btn').style.display = 'inline-block';
     document.getElementById('admin-logout-btn').style.display = 'none';
     document.getElementById('admin-area').style.display = 'none';
+    if (orderEvents) {
+        orderEvents.close();
+        orderEvents = null;
+    }
 }
 
+// Load the full order list once, then apply changes pushed by the server
 async function fetchOrders() {
     try {
         const resp = await fetch(`${API_URL}/orders`);
         if (!resp.ok) throw new Error('Failed to load orders');
         const orders = await resp.json();
-        renderOrdersTable(orders);
+        adminOrders = new Map(orders.map(o => [o.id, o]));
+        renderOrdersTable();
+        subscribeToOrders(resp.headers.get('X-Last-Event-Id'));
     } catch (e) {
         console.error('fetchOrders error:', e);
     }
 }
 
-function renderOrdersTable(orders) {
+function subscribeToOrders(lastEventId) {
+    if (orderEvents) orderEvents.close();
+    const query = lastEventId ? `?lastEventId=${encodeURIComponent(lastEventId)}` : '';
+    orderEvents = new EventSource(`${API_URL}/orders/stream${query}`);
+    // Created and updated orders are merged, since an update carries only the fields that changed
+    const mergeOrder = e => {
+        const change = JSON.parse(e.data);
+        adminOrders.set(change.id, { ...adminOrders.get(change.id), ...change });
+        renderOrdersTable();
+    };
+    orderEvents.addEventListener('order-created', mergeOrder);
+    orderEvents.addEventListener('order-updated', e => {
+        if (adminOrders.has(JSON.parse(e.data).id)) mergeOrder(e);
+    });
+    orderEvents.addEventListener('order-deleted', e => {
+        adminOrders.delete(JSON.parse(e.data).id);
+        renderOrdersTable();
+    });
+    // Missed too much to catch up: start over from a fresh list
+    orderEvents.addEventListener('reset', () => {
+        orderEvents.close();
+        orderEvents = null;
+        if (isAdmin) fetchOrders();
+    });
+}
+
+function renderOrdersTable() {
     const tbody = document.querySelector('#orders-table tbody');
     if (!tbody) return;
     tbody.innerHTML = '';
+    const orders = [...adminOrders.values()].sort((a, b) => b.id - a.id);
     orders.forEach(o => {
         const itemsText = (o.items || []).map(i => `${i.name}×${i.quantity || 1}`).join(', ');
         const tr = document.createElement('tr');
@@ -317,6 +353,7 @@ function renderOrdersTable(orders) {
             <td style="padding:6px;border-bottom:1px solid #eee">${o.customer}</td>
             <td style="padding:6px;border-bottom:1px solid #eee">${itemsText}</td>
             <td style="padding:6px;border-bottom:1px solid #eee">$${(o.price||0).toFixed(2)}</td>
+            <td style="padding:6px;border-bottom:1px solid #eee">${o.status || 'NEW'}</td>
             <td style="padding:6px;border-bottom:1px solid #eee;text-align:center"><button data-id="${o.id}" class="admin-delete-order">Delete</button></td>
         `;
         tbody.appendChild(tr);
@@ -333,7 +370,8 @@ function renderOrdersTable(orders) {
                     headers: { 'X-Admin-Key': adminKey }
                 });
                 if (!resp.ok) throw new Error('Delete failed');
-                await fetchOrders();
+                adminOrders.delete(Number(id));
+                renderOrdersTable();
             } catch (err) {
                 alert('Failed to delete order: ' + err.message);
             }
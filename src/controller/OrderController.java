@@ -30,7 +30,7 @@ public class OrderController {
         return menuRepository;
     }
 
-    // Simple inner type used by RestServer.parseOrderItems
+    // Simple inner type used by RestServer.parseOrderBody
     public static class OrderItemRequest {
         public final int menuItemId;
         public final int quantity;
@@ -0,0 +1,263 @@
+package domain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * MenuIndex - immutable, indexed snapshot of a menu.
+ *
+ * Built once from a list of items and never changed afterwards, so any number
+ * of threads can query it without locking. Holders (MenuItemRepository,
+ * Restaurant) swap in a new snapshot when the menu changes.
+ *
+ * Indexes:
+ * - id: open-addressing table with primitive int keys
+ * - category: lowercase category to items
+ * - price: items sorted by price, queried by binary search
+ * - name: lowercase name tokens to items, for {@link #searchByName}
+ *
+ * Items are indexed by the values they had when the snapshot was built; after
+ * changing an item through its setters, build a new snapshot.
+ */
+public final class MenuIndex {
+    private static final int FREE = Integer.MIN_VALUE; // unused id slot
+    private static final MenuIndex EMPTY = new MenuIndex(new MenuItem[0]);
+
+    private final MenuItem[] items;         // menu order
+    private final List<MenuItem> itemList;
+
+    private final int[] idKeys;             // FREE marks an unused slot
+    private final MenuItem[] idValues;
+
+    private final Map<String, List<MenuItem>> byCategory;
+
+    private final MenuItem[] byPrice;
+    private final long[] prices;            // cents, parallel to byPrice
+
+    private final String[] lowerNames;      // parallel to items
+    private final Map<String, int[]> tokenPositions; // token -> ascending positions in items
+    private final String[] tokens;          // distinct tokens, for substring matching
+
+    private MenuIndex(MenuItem[] items) {
+        this.items = items;
+        this.itemList = Collections.unmodifiableList(Arrays.asList(items));
+
+        int capacity = Integer.highestOneBit(Math.max(4, items.length * 2 - 1)) << 1;
+        idKeys = new int[capacity];
+        Arrays.fill(idKeys, FREE);
+        idValues = new MenuItem[capacity];
+        for (MenuItem item : items) {
+            int mask = capacity - 1;
+            int i = slot(item.getId(), mask);
+            while (idKeys[i] != FREE) i = (i + 1) & mask;
+            idKeys[i] = item.getId();
+            idValues[i] = item;
+        }
+
+        Map<String, List<MenuItem>> categories = new HashMap<>();
+        for (MenuItem item : items) {
+            String key = item.getCategory() == null ? "" : item.getCategory().toLowerCase(Locale.ROOT);
+            categories.computeIfAbsent(key, k -> new ArrayList<>()).add(item);
+        }
+        categories.replaceAll((k, v) -> Collections.unmodifiableList(v));
+        byCategory = categories;
+
+        byPrice = items.clone();
+        Arrays.sort(byPrice, (a, b) -> Long.compare(a.getPriceCents(), b.getPriceCents())); // stable: ties keep menu order
+        prices = new long[byPrice.length];
+        for (int i = 0; i < byPrice.length; i++) prices[i] = byPrice[i].getPriceCents();
+
+        lowerNames = new String[items.length];
+        Map<String, List<Integer>> positions = new HashMap<>();
+        for (int p = 0; p < items.length; p++) {
+            String lower = items[p].getName() == null ? "" : items[p].getName().toLowerCase(Locale.ROOT);
+            lowerNames[p] = lower;
+            for (String token : tokenize(lower)) {
+                List<Integer> list = positions.computeIfAbsent(token, k -> new ArrayList<>());
+                if (list.isEmpty() || list.get(list.size() - 1) != p) list.add(p);
+            }
+        }
+        tokenPositions = new HashMap<>();
+        positions.forEach((token, list) -> tokenPositions.put(token, list.stream().mapToInt(Integer::intValue).toArray()));
+        tokens = tokenPositions.keySet().toArray(new String[0]);
+    }
+
+    public static MenuIndex empty() {
+        return EMPTY;
+    }
+
+    /** Snapshot of `items` in order; a later item replaces an earlier one with the same id. */
+    public static MenuIndex of(Collection<? extends MenuItem> items) {
+        if (items.isEmpty()) return EMPTY;
+        Map<Integer, MenuItem> byId = new LinkedHashMap<>();
+        for (MenuItem item : items) byId.put(item.getId(), item);
+        return new MenuIndex(byId.values().toArray(new MenuItem[0]));
+    }
+
+    /** New snapshot with `item` added, or replacing the item with the same id in place. */
+    public MenuIndex with(MenuItem item) {
+        MenuItem[] next;
+        int existing = positionOf(item.getId());
+        if (existing >= 0) {
+            next = items.clone();
+            next[existing] = item;
+        } else {
+            next = Arrays.copyOf(items, items.length + 1);
+            next[items.length] = item;
+        }
+        return new MenuIndex(next);
+    }
+
+    /** New snapshot without the item with this id (this snapshot if there is none). */
+    public MenuIndex without(int id) {
+        int existing = positionOf(id);
+        if (existing < 0) return this;
+        MenuItem[] next = new MenuItem[items.length - 1];
+        System.arraycopy(items, 0, next, 0, existing);
+        System.arraycopy(items, existing + 1, next, existing, items.length - existing - 1);
+        return next.length == 0 ? EMPTY : new MenuIndex(next);
+    }
+
+    // ==================== Queries ====================
+
+    /** All items in menu order (unmodifiable). */
+    public List<MenuItem> all() {
+        return itemList;
+    }
+
+    public int size() {
+        return items.length;
+    }
+
+    public MenuItem findById(int id) {
+        int mask = idKeys.length - 1;
+        for (int i = slot(id, mask); ; i = (i + 1) & mask) {
+            int k = idKeys[i];
+            if (k == id && k != FREE) return idValues[i];
+            if (k == FREE) return null;
+        }
+    }
+
+    /** Items whose category equals `category`, ignoring case, in menu order. */
+    public List<MenuItem> filterByCategory(String category) {
+        List<MenuItem> found = byCategory.get(category.toLowerCase(Locale.ROOT));
+        return found == null ? Collections.emptyList() : found;
+    }
+
+    /** Items priced at most `maxPrice`, cheapest first. */
+    public List<MenuItem> filterByMaxPrice(double maxPrice) {
+        return priceRange(Double.NEGATIVE_INFINITY, maxPrice);
+    }
+
+    /** Items priced between `minPrice` and `maxPrice` inclusive, cheapest first. */
+    public List<MenuItem> priceRange(double minPrice, double maxPrice) {
+        return priceRangeCents(boundCents(minPrice, true), boundCents(maxPrice, false));
+    }
+
+    /** Items priced between `minCents` and `maxCents` inclusive, cheapest first. */
+    public List<MenuItem> priceRangeCents(long minCents, long maxCents) {
+        int from = firstPriceAbove(minCents, false);
+        int to = firstPriceAbove(maxCents, true);
+        if (from >= to) return Collections.emptyList();
+        return Collections.unmodifiableList(Arrays.asList(byPrice).subList(from, to));
+    }
+
+    /**
+     * Items whose name contains `keyword`, ignoring case, in menu order.
+     * A keyword made of letters and digits only can match nothing but the
+     * inside of one name token, so only the (smaller) token vocabulary is
+     * scanned. Keywords with spaces or punctuation fall back to scanning the
+     * precomputed lowercase names.
+     */
+    public List<MenuItem> searchByName(String keyword) {
+        String key = keyword.toLowerCase(Locale.ROOT);
+        if (key.isEmpty()) return itemList;
+
+        if (!isSingleToken(key)) {
+            List<MenuItem> found = new ArrayList<>();
+            for (int p = 0; p < items.length; p++) {
+                if (lowerNames[p].contains(key)) found.add(items[p]);
+            }
+            return found;
+        }
+
+        boolean[] hit = null;
+        for (String token : tokens) {
+            if (token.length() < key.length() || !token.contains(key)) continue;
+            if (hit == null) hit = new boolean[items.length];
+            for (int p : tokenPositions.get(token)) hit[p] = true;
+        }
+        if (hit == null) return Collections.emptyList();
+
+        List<MenuItem> found = new ArrayList<>();
+        for (int p = 0; p < items.length; p++) {
+            if (hit[p]) found.add(items[p]);
+        }
+        return found;
+    }
+
+    // ==================== Internals ====================
+
+    private int positionOf(int id) {
+        MenuItem item = findById(id);
+        if (item == null) return -1;
+        for (int p = 0; p < items.length; p++) {
+            if (items[p] == item) return p;
+        }
+        return -1;
+    }
+
+    // Index of the first price > bound (inclusive) or >= bound (exclusive)
+    private int firstPriceAbove(long bound, boolean inclusive) {
+        int lo = 0;
+        int hi = prices.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            boolean below = inclusive ? prices[mid] <= bound : prices[mid] < bound;
+            if (below) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    // A bound between two cents rounds inwards (up for a minimum, down for a maximum)
+    private static long boundCents(double price, boolean minimum) {
+        if (Double.isNaN(price)) return minimum ? Long.MAX_VALUE : Long.MIN_VALUE;
+        double cents = price * 100;
+        // Casting an infinity saturates at Long.MIN_VALUE / Long.MAX_VALUE
+        return minimum ? (long) Math.ceil(cents - 1e-6) : (long) Math.floor(cents + 1e-6);
+    }
+
+    private static int slot(int id, int mask) {
+        int h = id * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static boolean isSingleToken(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (!Character.isLetterOrDigit(s.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    private static List<String> tokenize(String lower) {
+        List<String> out = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean inToken = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (inToken && start < 0) {
+                start = i;
+            } else if (!inToken && start >= 0) {
+                out.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        return out;
+    }
+}
@@ -7,7 +7,7 @@ public class MenuItem {
     private int id;
     private String name;
     private String description;
-    private double price;
+    private long priceCents;     // exact, see Money
     private String category; // "Appetizer", "Main", "Dessert", "Drink"
 
     // Constructor
@@ -15,7 +15,7 @@ public class MenuItem {
         this.id = id;
         this.name = name;
         this.description = description;
-        this.price = price;
+        this.priceCents = Money.ofDouble(price);
         this.category = category;
     }
 
@@ -45,11 +45,19 @@ public class MenuItem {
     }
 
     public double getPrice() {
-        return price;
+        return Money.toDouble(priceCents);
     }
 
     public void setPrice(double price) {
-        this.price = price;
+        this.priceCents = Money.ofDouble(price);
+    }
+
+    public long getPriceCents() {
+        return priceCents;
+    }
+
+    public void setPriceCents(long priceCents) {
+        this.priceCents = priceCents;
     }
 
     public String getCategory() {
@@ -62,14 +70,14 @@ public class MenuItem {
 
     // Method to display item information
     public void displayInfo() {
-        System.out.println("[" + id + "] " + name + " - $" + price);
+        System.out.println("[" + id + "] " + name + " - $" + Money.format(priceCents));
         System.out.println("   " + description);
         System.out.println("   Category: " + category);
     }
 
     @Override
     public String toString() {
-        return String.format("%-25s $%.2f (%s)", name, price, category);
+        return String.format("%-25s $%s (%s)", name, Money.format(priceCents), category);
     }
 
     @Override
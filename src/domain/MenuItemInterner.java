@@ -0,0 +1,38 @@
+package domain;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * MenuItemInterner - shared MenuItem instances for order lines.
+ *
+ * Orders loaded from the database only know the id, name and price of each
+ * line. Instead of allocating a MenuItem per line, {@link #intern} returns one
+ * instance per distinct (id, name, price). Menu items registered from the
+ * menu itself (MenuItemRepository) are returned when they match, so loaded
+ * orders point at the real menu entries. The number of entries is bounded by
+ * the number of name/price versions the menu has had, which is small.
+ */
+public final class MenuItemInterner {
+    private record Key(int id, String name, long priceCents) {
+    }
+
+    private static final ConcurrentHashMap<Key, MenuItem> ITEMS = new ConcurrentHashMap<>();
+
+    private MenuItemInterner() {
+    }
+
+    /** Make `item` the shared instance for its id, name and price. */
+    public static void register(MenuItem item) {
+        ITEMS.put(new Key(item.getId(), item.getName(), item.getPriceCents()), item);
+    }
+
+    /** Shared item with this id, name and price; created (category "Other") if there is none. */
+    public static MenuItem intern(int id, String name, long priceCents) {
+        String n = name == null ? "" : name;
+        return ITEMS.computeIfAbsent(new Key(id, n, priceCents), k -> {
+            MenuItem item = new MenuItem(id, n, "", 0, "Other");
+            item.setPriceCents(priceCents);
+            return item;
+        });
+    }
+}
@@ -0,0 +1,66 @@
+package domain;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Money - amounts as a long number of cents.
+ *
+ * Prices and totals are kept as exact fixed-point values with two decimals,
+ * the same as the DECIMAL(10,2) database columns, so adding up an order never
+ * drifts (0.10 + 0.20 is exactly 0.30). Doubles appear only at the edges, for
+ * callers that still pass prices as doubles.
+ *
+ * {@link #appendTo} writes "-12.05" style text straight into a StringBuilder
+ * without going through String.format; JSON output uses
+ * JsonWriter.valueCents, which does the same into bytes.
+ */
+public final class Money {
+    private Money() {
+    }
+
+    /** Cents for a double amount, rounded to the nearest cent. */
+    public static long ofDouble(double amount) {
+        if (Double.isNaN(amount) || Double.isInfinite(amount)) {
+            throw new IllegalArgumentException("Not a money amount: " + amount);
+        }
+        return Math.round(amount * 100);
+    }
+
+    public static double toDouble(long cents) {
+        return cents / 100.0;
+    }
+
+    /** Cents for a decimal amount; digits past the second decimal are rounded half up. */
+    public static long fromBigDecimal(BigDecimal amount) {
+        if (amount == null) return 0;
+        return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /** The amount as a scale-2 BigDecimal, for DECIMAL(10,2) columns. */
+    public static BigDecimal toBigDecimal(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    /** unitCents * quantity, failing instead of wrapping around on overflow. */
+    public static long times(long unitCents, int quantity) {
+        return Math.multiplyExact(unitCents, (long) quantity);
+    }
+
+    /** Append the amount with exactly two decimals, e.g. 1250 as "12.50". */
+    public static StringBuilder appendTo(StringBuilder sb, long cents) {
+        // Split before negating, so Long.MIN_VALUE does not overflow
+        long whole = cents / 100;
+        int frac = (int) (cents % 100);
+        if (cents < 0) {
+            sb.append('-');
+            whole = -whole;
+            frac = -frac;
+        }
+        return sb.append(whole).append('.').append((char) ('0' + frac / 10)).append((char) ('0' + frac % 10));
+    }
+
+    public static String format(long cents) {
+        return appendTo(new StringBuilder(12), cents).toString();
+    }
+}
@@ -1,26 +1,35 @@
 package domain;
 
-import java.util.ArrayList;
+import logging.Log;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 
 /**
  * Order class represents a customer's order in the restaurant
  */
 public class Order {
+    private static final Log log = Log.get("order");
+
     // Attributes
     private int orderId;
-    private List<MenuItem> items; // List of menu items in the order
+    private final LinkedHashMap<Integer, OrderLine> lines; // One line per menu item id, in order added
+    private int itemCount;        // Total units over all lines
     private String status;        // Order status: "NEW", "IN PROGRESS", "COMPLETED"
-    private double totalPrice;    // Total price of the order
+    private long totalCents;      // Total price of the order, in cents (see Money)
     private String customerName;  // Customer name
 
     // Constructor
     public Order(int orderId) {
         this.orderId = orderId;
-        this.items = new ArrayList<>();
+        this.lines = new LinkedHashMap<>();
         this.status = "NEW";
-        this.totalPrice = 0.0;
         this.customerName = "";
     }
 
@@ -29,31 +38,53 @@ public class Order {
      */
     public Order(int orderId, String customerName) {
         this.orderId = orderId;
-        this.items = new ArrayList<>();
+        this.lines = new LinkedHashMap<>();
         this.status = "NEW";
-        this.totalPrice = 0.0;
         this.customerName = customerName;
     }
 
-    // Method to add an item to the order
+    // Method to add one unit of an item to the order
     public void addItem(MenuItem item) {
-        items.add(item);
-        totalPrice += item.getPrice();
-        System.out.println("Added " + item.getName() + " to order #" + orderId);
+        addItem(item, 1);
+    }
+
+    /**
+     * Add `quantity` units of an item. Adding an item that already has a line
+     * raises that line's quantity; the unit price stays the one captured when
+     * the line was created.
+     */
+    public void addItem(MenuItem item, int quantity) {
+        if (quantity <= 0) return;
+        OrderLine line = lines.get(item.getId());
+        if (line == null) {
+            line = new OrderLine(item, quantity);
+            lines.put(item.getId(), line);
+        } else {
+            line.setQuantity(line.getQuantity() + quantity);
+        }
+        itemCount += quantity;
+        totalCents += Money.times(line.getUnitPriceCents(), quantity);
+        log.debug("Added {} x{} to order #{}", item.getName(), quantity, orderId);
     }
 
-    // Method to remove an item from the order
+    // Method to remove one unit of an item from the order
     public void removeItem(MenuItem item) {
-        if (items.remove(item)) {
-            totalPrice -= item.getPrice();
-            System.out.println("Removed " + item.getName() + " from order #" + orderId);
+        OrderLine line = lines.get(item.getId());
+        if (line == null) return;
+        if (line.getQuantity() == 1) {
+            lines.remove(item.getId());
+        } else {
+            line.setQuantity(line.getQuantity() - 1);
         }
+        itemCount--;
+        totalCents -= line.getUnitPriceCents();
+        log.debug("Removed {} from order #{}", item.getName(), orderId);
     }
 
     // Method to change order status
     public void setStatus(String status) {
         this.status = status;
-        System.out.println("Order #" + orderId + " status changed to: " + status);
+        log.info("Order #{} status changed to: {}", orderId, status);
     }
 
     // Getter methods
@@ -61,12 +92,34 @@ public class Order {
         return orderId;
     }
 
+    /** The order lines, in the order they were first added (read-only). */
+    public Collection<OrderLine> getLines() {
+        return Collections.unmodifiableCollection(lines.values());
+    }
+
+    /** Total number of units over all lines. */
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    /**
+     * One entry per unit, as before order lines existed: a line with quantity
+     * 3 appears as the same MenuItem three times. This is a read-only view
+     * expanded on the fly, not a copy; prefer {@link #getLines()}.
+     */
     public List<MenuItem> getItems() {
-        return items;
+        return new ExpandedItems();
     }
 
+    // Replaces all lines; the total price is left as it was
     public void setItems(List<MenuItem> items) {
-        this.items = items;
+        long total = totalCents;
+        lines.clear();
+        itemCount = 0;
+        for (MenuItem item : items) {
+            addItem(item);
+        }
+        totalCents = total;
     }
 
     public String getStatus() {
@@ -74,11 +127,19 @@ public class Order {
     }
 
     public double getTotalPrice() {
-        return totalPrice;
+        return Money.toDouble(totalCents);
     }
 
     public void setTotalPrice(double totalPrice) {
-        this.totalPrice = totalPrice;
+        this.totalCents = Money.ofDouble(totalPrice);
+    }
+
+    public long getTotalCents() {
+        return totalCents;
+    }
+
+    public void setTotalCents(long totalCents) {
+        this.totalCents = totalCents;
     }
 
     public String getCustomerName() {
@@ -95,20 +156,20 @@ public class Order {
         System.out.println("Status: " + status);
         System.out.println("Items:");
 
-        // Display all items in the order
-        for (MenuItem item : items) {
-            System.out.println("  - " + item.getName() + " $" + item.getPrice());
+        // Display all lines in the order
+        for (OrderLine line : lines.values()) {
+            System.out.println("  - " + line.getQuantity() + " x " + line.getName() + " $" + Money.format(line.getUnitPriceCents()));
         }
 
-        System.out.println("Total: $" + totalPrice);
+        System.out.println("Total: $" + Money.format(totalCents));
         System.out.println("======================");
     }
 
     @Override
     public String toString() {
         return "Order #" + orderId + " | Status: " + status +
-                " | Total: $" + String.format("%.2f", totalPrice) +
-                " | Items: " + items.size();
+                " | Total: $" + Money.format(totalCents) +
+                " | Items: " + itemCount;
     }
 
     @Override
@@ -123,4 +184,48 @@ public class Order {
     public int hashCode() {
         return Objects.hash(orderId);
     }
+
+    // Read-only per-unit view over the lines, see getItems()
+    private final class ExpandedItems extends AbstractList<MenuItem> {
+        @Override
+        public MenuItem get(int index) {
+            if (index < 0 || index >= itemCount) throw new IndexOutOfBoundsException(index);
+            int remaining = index;
+            for (OrderLine line : lines.values()) {
+                if (remaining < line.getQuantity()) return line.getItem();
+                remaining -= line.getQuantity();
+            }
+            throw new IndexOutOfBoundsException(index);
+        }
+
+        @Override
+        public int size() {
+            return itemCount;
+        }
+
+        @Override
+        public Iterator<MenuItem> iterator() {
+            return new Iterator<MenuItem>() {
+                private final Iterator<OrderLine> it = lines.values().iterator();
+                private OrderLine line;
+                private int left;
+
+                @Override
+                public boolean hasNext() {
+                    while (left == 0 && it.hasNext()) {
+                        line = it.next();
+                        left = line.getQuantity();
+                    }
+                    return left > 0;
+                }
+
+                @Override
+                public MenuItem next() {
+                    if (!hasNext()) throw new NoSuchElementException();
+                    left--;
+                    return line.getItem();
+                }
+            };
+        }
+    }
 }
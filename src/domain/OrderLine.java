@@ -0,0 +1,68 @@
+package domain;
+
+/**
+ * OrderLine - one line of an order: a menu item, how many units, and the unit
+ * price captured when the line was added (later menu price changes do not
+ * affect it).
+ *
+ * "50 x Coca Cola" is one OrderLine with quantity 50. The item reference is
+ * normally a shared instance (see {@link MenuItemInterner}), so a line costs
+ * one small object no matter how many units it holds.
+ */
+public final class OrderLine {
+    private final MenuItem item;
+    private final long unitPriceCents;
+    private int quantity; // changed only through the owning Order
+
+    public OrderLine(MenuItem item, int quantity, long unitPriceCents) {
+        if (quantity <= 0) throw new IllegalArgumentException("Quantity must be positive: " + quantity);
+        this.item = item;
+        this.quantity = quantity;
+        this.unitPriceCents = unitPriceCents;
+    }
+
+    public OrderLine(MenuItem item, int quantity) {
+        this(item, quantity, item.getPriceCents());
+    }
+
+    public MenuItem getItem() {
+        return item;
+    }
+
+    public int getMenuItemId() {
+        return item.getId();
+    }
+
+    public String getName() {
+        return item.getName();
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public long getUnitPriceCents() {
+        return unitPriceCents;
+    }
+
+    public long getLineTotalCents() {
+        return Money.times(unitPriceCents, quantity);
+    }
+
+    public double getUnitPrice() {
+        return Money.toDouble(unitPriceCents);
+    }
+
+    public double getLineTotal() {
+        return Money.toDouble(getLineTotalCents());
+    }
+
+    void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    @Override
+    public String toString() {
+        return quantity + " x " + item.getName() + " @ $" + Money.format(unitPriceCents);
+    }
+}
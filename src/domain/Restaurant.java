@@ -3,7 +3,6 @@ package domain;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Comparator;
-import java.util.stream.Collectors;
 
 /**
  * Restaurant class represents a restaurant with menu and orders
@@ -14,6 +13,7 @@ public class Restaurant {
     private List<MenuItem> menu;   // List of menu items
     private List<Order> orders;    // List of active orders
     private int orderCounter;      // Counter for order IDs
+    private MenuIndex menuIndex;   // Indexed copy of menu for the search/filter methods; null when stale
 
     // Constructor
     public Restaurant(String name) {
@@ -26,6 +26,7 @@ public class Restaurant {
     // Method to add a menu item
     public void addMenuItem(MenuItem item) {
         menu.add(item);
+        menuIndex = null;
     }
 
     // Method to create a new order
@@ -60,6 +61,7 @@ public class Restaurant {
         return name;
     }
 
+    // Changes made through the returned list or to the items themselves must be followed by reindexMenu()
     public List<MenuItem> getMenu() {
         return menu;
     }
@@ -68,28 +70,39 @@ public class Restaurant {
         return orders;
     }
     public List<MenuItem> searchByName(String keyword) {
-        return menu.stream()
-                .filter(item -> item.getName().toLowerCase().contains(keyword.toLowerCase()))
-                .collect(Collectors.toList());
+        return index().searchByName(keyword);
     }
 
     public List<MenuItem> filterByCategory(String category) {
-        return menu.stream()
-                .filter(item -> item.getCategory().equalsIgnoreCase(category))
-                .collect(Collectors.toList());
+        return index().filterByCategory(category);
     }
 
+    // Cheapest first
     public List<MenuItem> filterByMaxPrice(double maxPrice) {
-        return menu.stream()
-                .filter(item -> item.getPrice() <= maxPrice)
-                .collect(Collectors.toList());
+        return index().filterByMaxPrice(maxPrice);
     }
 
     public void sortMenuByPrice() {
         menu.sort(Comparator.comparingDouble(MenuItem::getPrice));
+        menuIndex = null;
     }
 
     public void sortMenuByName() {
         menu.sort(Comparator.comparing(MenuItem::getName));
+        menuIndex = null;
+    }
+
+    // Rebuild the search indexes after the menu list or its items were changed directly
+    public void reindexMenu() {
+        menuIndex = null;
+    }
+
+    private MenuIndex index() {
+        MenuIndex index = menuIndex;
+        if (index == null) {
+            index = MenuIndex.of(menu);
+            menuIndex = index;
+        }
+        return index;
     }
 }
@@ -0,0 +1,15 @@
+package exceptions;
+
+/**
+ * DataAccessException - thrown when stored data could not be read, as
+ * opposed to not being there
+ */
+public class DataAccessException extends RuntimeException {
+    public DataAccessException(String message) {
+        super(message);
+    }
+
+    public DataAccessException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,16 @@
+package exceptions;
+
+import java.io.IOException;
+
+/**
+ * JsonParseException - thrown when a request or stored JSON document is malformed
+ */
+public class JsonParseException extends IOException {
+    public JsonParseException(String message) {
+        super(message);
+    }
+
+    public JsonParseException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,559 @@
+package json;
+
+import exceptions.JsonParseException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JsonReader - small pull-style JSON tokenizer reading UTF-8 bytes directly
+ * from an InputStream (or a byte array / String).
+ *
+ * Usage mirrors the document structure:
+ *
+ *     reader.beginObject();
+ *     while (reader.hasNext()) {
+ *         switch (reader.nextName()) {
+ *             case "quantity": qty = reader.nextInt(); break;
+ *             default: reader.skipValue();
+ *         }
+ *     }
+ *     reader.endObject();
+ *
+ * The reader allocates nothing per token apart from the Strings it returns:
+ * input is read through one fixed buffer, numbers are parsed in place, and
+ * object keys are served from a small shared cache so repeated keys return the same
+ * String instance. Fields may appear in any order and unknown or nested values
+ * are skipped, unlike the indexOf-based helpers this replaces.
+ */
+public final class JsonReader {
+    public enum Token { BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT }
+
+    // Nesting contexts
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_OBJECT = 2;
+    private static final int NONEMPTY_OBJECT = 3;
+    private static final int DANGLING_NAME = 4;
+    private static final int EMPTY_ARRAY = 5;
+    private static final int NONEMPTY_ARRAY = 6;
+
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final InputStream in;
+    private final byte[] buf;
+    private int pos;
+    private int limit;
+
+    private int[] stack = new int[16];
+    private int depth;
+    private Token peeked;
+
+    // Scratch space for decoded strings
+    private char[] chars = new char[64];
+
+    // Shared by all readers; a racy overwrite only costs a cache miss since Strings are immutable
+    private static final String[] NAME_CACHE = new String[256];
+
+    public JsonReader(InputStream in) {
+        this.in = in;
+        this.buf = new byte[1024];
+        push(EMPTY_DOCUMENT);
+    }
+
+    public JsonReader(byte[] data) {
+        this(data, 0, data.length);
+    }
+
+    public JsonReader(byte[] data, int offset, int length) {
+        this.in = null;
+        this.buf = data;
+        this.pos = offset;
+        this.limit = offset + length;
+        push(EMPTY_DOCUMENT);
+    }
+
+    public static JsonReader of(String json) {
+        return new JsonReader(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // ==================== Structure ====================
+
+    public Token peek() throws IOException {
+        if (peeked == null) peeked = doPeek();
+        return peeked;
+    }
+
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        depth--;
+    }
+
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        depth--;
+    }
+
+    /** True if the current object or array has another element. */
+    public boolean hasNext() throws IOException {
+        Token t = peek();
+        return t != Token.END_OBJECT && t != Token.END_ARRAY && t != Token.END_DOCUMENT;
+    }
+
+    // ==================== Values ====================
+
+    public String nextName() throws IOException {
+        expect(Token.NAME);
+        int len = readStringChars();
+        return cachedName(len);
+    }
+
+    public String nextString() throws IOException {
+        Token t = peek();
+        if (t == Token.NUMBER) {
+            peeked = null;
+            int len = readNumberChars();
+            return new String(chars, 0, len);
+        }
+        expect(Token.STRING);
+        int len = readStringChars();
+        return new String(chars, 0, len);
+    }
+
+    public boolean nextBoolean() throws IOException {
+        expect(Token.BOOLEAN);
+        if (buf[pos] == 't') {
+            expectLiteral("true");
+            return true;
+        }
+        expectLiteral("false");
+        return false;
+    }
+
+    public void nextNull() throws IOException {
+        expect(Token.NULL);
+        expectLiteral("null");
+    }
+
+    public long nextLong() throws IOException {
+        Token t = peek();
+        if (t == Token.STRING) {
+            // Accept numbers sent as strings, e.g. "quantity":"2"
+            String s = nextString().trim();
+            try {
+                return Long.parseLong(s);
+            } catch (NumberFormatException e) {
+                throw syntaxError("Expected a number but was \"" + s + "\"");
+            }
+        }
+        expect(Token.NUMBER);
+
+        boolean negative = false;
+        int c = read();
+        if (c == '-') {
+            negative = true;
+            c = read();
+        }
+        if (c < '0' || c > '9') throw syntaxError("Malformed number");
+        long value = 0;
+        while (c >= '0' && c <= '9') {
+            if (value > (Long.MAX_VALUE - (c - '0')) / 10) throw syntaxError("Number too large");
+            value = value * 10 + (c - '0');
+            c = read();
+        }
+        if (c == '.' || c == 'e' || c == 'E') throw syntaxError("Expected an integer");
+        unread(c);
+        return negative ? -value : value;
+    }
+
+    public int nextInt() throws IOException {
+        long value = nextLong();
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) throw syntaxError("Integer out of range: " + value);
+        return (int) value;
+    }
+
+    public double nextDouble() throws IOException {
+        Token t = peek();
+        if (t == Token.STRING) {
+            String s = nextString().trim();
+            try {
+                return Double.parseDouble(s);
+            } catch (NumberFormatException e) {
+                throw syntaxError("Expected a number but was \"" + s + "\"");
+            }
+        }
+        expect(Token.NUMBER);
+        int len = readNumberChars();
+
+        // Fast path: few significant digits and a small exponent convert exactly
+        int i = 0;
+        boolean negative = chars[0] == '-';
+        if (negative) i++;
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+        for (; i < len; i++) {
+            char c = chars[i];
+            if (c >= '0' && c <= '9') {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0) digits++;
+                    if (fraction) scale++;
+                } else {
+                    return slowDouble(len);
+                }
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                return slowDouble(len); // exponent or unusual form
+            }
+        }
+        if (mantissa < MAX_EXACT_MANTISSA && scale < POW10.length) {
+            double d = mantissa / POW10[scale];
+            return negative ? -d : d;
+        }
+        return slowDouble(len);
+    }
+
+    /**
+     * The next number as a fixed-point amount in hundredths ("12.5" is 1250,
+     * "3" is 300), read from its digits without going through double. Digits
+     * past the second decimal are rounded half up; exponents are accepted.
+     */
+    public long nextCents() throws IOException {
+        Token t = peek();
+        if (t == Token.STRING) return slowCents(nextString().trim());
+        expect(Token.NUMBER);
+        int len = readNumberChars();
+
+        int i = 0;
+        boolean negative = chars[0] == '-';
+        if (negative) i++;
+        long whole = 0;
+        int intDigits = 0;
+        for (; i < len && chars[i] >= '0' && chars[i] <= '9'; i++) {
+            if (++intDigits > 16) return slowCents(new String(chars, 0, len));
+            whole = whole * 10 + (chars[i] - '0');
+        }
+        int frac = 0;
+        int fracDigits = 0;
+        boolean roundUp = false;
+        if (i < len && chars[i] == '.') {
+            for (i++; i < len && chars[i] >= '0' && chars[i] <= '9'; i++) {
+                if (fracDigits < 2) frac = frac * 10 + (chars[i] - '0');
+                else if (fracDigits == 2) roundUp = chars[i] >= '5';
+                fracDigits++;
+            }
+            if (fracDigits == 0) throw syntaxError("Malformed number");
+        }
+        if (i < len || intDigits == 0) return slowCents(new String(chars, 0, len)); // exponent or unusual form
+        if (fracDigits == 1) frac *= 10;
+
+        long cents = whole * 100 + frac + (roundUp ? 1 : 0);
+        return negative ? -cents : cents;
+    }
+
+    private long slowCents(String s) throws JsonParseException {
+        try {
+            return new java.math.BigDecimal(s).setScale(2, java.math.RoundingMode.HALF_UP)
+                    .unscaledValue().longValueExact();
+        } catch (NumberFormatException e) {
+            throw syntaxError("Expected a number but was \"" + s + "\"");
+        } catch (ArithmeticException e) {
+            throw syntaxError("Amount out of range: " + s);
+        }
+    }
+
+    private double slowDouble(int len) throws JsonParseException {
+        try {
+            return Double.parseDouble(new String(chars, 0, len));
+        } catch (NumberFormatException e) {
+            throw syntaxError("Malformed number");
+        }
+    }
+
+    /** Skip the next value, including any nested objects and arrays. */
+    public void skipValue() throws IOException {
+        int count = 0;
+        do {
+            Token t = peek();
+            switch (t) {
+                case BEGIN_OBJECT:
+                    beginObject();
+                    count++;
+                    break;
+                case BEGIN_ARRAY:
+                    beginArray();
+                    count++;
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    count--;
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    count--;
+                    break;
+                case NAME:
+                    peeked = null;
+                    readStringChars();
+                    break;
+                case STRING:
+                    peeked = null;
+                    readStringChars();
+                    break;
+                case NUMBER:
+                    peeked = null;
+                    readNumberChars();
+                    break;
+                case BOOLEAN:
+                    nextBoolean();
+                    break;
+                case NULL:
+                    nextNull();
+                    break;
+                case END_DOCUMENT:
+                    throw syntaxError("Unexpected end of document");
+            }
+        } while (count > 0);
+    }
+
+    // ==================== Tokenizer ====================
+
+    private Token doPeek() throws IOException {
+        int ctx = stack[depth - 1];
+        int c;
+        switch (ctx) {
+            case EMPTY_ARRAY:
+                stack[depth - 1] = NONEMPTY_ARRAY;
+                c = nextNonWhitespace();
+                if (c == ']') return Token.END_ARRAY;
+                unread(c);
+                return readValueToken();
+            case NONEMPTY_ARRAY:
+                c = nextNonWhitespace();
+                if (c == ']') return Token.END_ARRAY;
+                if (c != ',') throw syntaxError("Expected ',' or ']'");
+                return readValueToken();
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                c = nextNonWhitespace();
+                if (c == '}') return Token.END_OBJECT;
+                if (ctx == NONEMPTY_OBJECT) {
+                    if (c != ',') throw syntaxError("Expected ',' or '}'");
+                    c = nextNonWhitespace();
+                }
+                if (c != '"') throw syntaxError("Expected a name");
+                stack[depth - 1] = DANGLING_NAME;
+                return Token.NAME;
+            case DANGLING_NAME:
+                c = nextNonWhitespace();
+                if (c != ':') throw syntaxError("Expected ':'");
+                stack[depth - 1] = NONEMPTY_OBJECT;
+                return readValueToken();
+            case EMPTY_DOCUMENT:
+                stack[depth - 1] = NONEMPTY_DOCUMENT;
+                return readValueToken();
+            case NONEMPTY_DOCUMENT:
+            default:
+                c = nextNonWhitespace();
+                if (c == -1) return Token.END_DOCUMENT;
+                throw syntaxError("Unexpected data after the document");
+        }
+    }
+
+    // Consumes the first character of objects, arrays and strings; leaves others for the value reader
+    private Token readValueToken() throws IOException {
+        int c = nextNonWhitespace();
+        switch (c) {
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case '"':
+                return Token.STRING;
+            case 't':
+            case 'f':
+                unread(c);
+                return Token.BOOLEAN;
+            case 'n':
+                unread(c);
+                return Token.NULL;
+            case -1:
+                throw syntaxError("Unexpected end of document");
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    unread(c);
+                    return Token.NUMBER;
+                }
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    // Decode a string body (opening quote already consumed) into `chars`; returns its length
+    private int readStringChars() throws IOException {
+        int len = 0;
+        // Fast path: plain ASCII run within the current buffer
+        byte[] b0 = buf;
+        int p = pos;
+        int end = limit;
+        while (p < end) {
+            byte b = b0[p];
+            if (b == '"') {
+                pos = p + 1;
+                return len;
+            }
+            if (b == '\\' || b < 0) break;
+            if (len == chars.length) chars = java.util.Arrays.copyOf(chars, len * 2);
+            chars[len++] = (char) b;
+            p++;
+        }
+        pos = p;
+
+        while (true) {
+            int b = read();
+            if (b == '"') return len;
+            if (b == -1) throw syntaxError("Unterminated string");
+            if (len + 2 > chars.length) chars = java.util.Arrays.copyOf(chars, chars.length * 2);
+
+            if (b == '\\') {
+                int e = read();
+                switch (e) {
+                    case '"': chars[len++] = '"'; break;
+                    case '\\': chars[len++] = '\\'; break;
+                    case '/': chars[len++] = '/'; break;
+                    case 'b': chars[len++] = '\b'; break;
+                    case 'f': chars[len++] = '\f'; break;
+                    case 'n': chars[len++] = '\n'; break;
+                    case 'r': chars[len++] = '\r'; break;
+                    case 't': chars[len++] = '\t'; break;
+                    case 'u':
+                        int cp = 0;
+                        for (int i = 0; i < 4; i++) {
+                            int h = Character.digit(read(), 16);
+                            if (h < 0) throw syntaxError("Malformed \\u escape");
+                            cp = (cp << 4) | h;
+                        }
+                        chars[len++] = (char) cp;
+                        break;
+                    default:
+                        throw syntaxError("Invalid escape");
+                }
+            } else if (b < 0x80) {
+                chars[len++] = (char) b;
+            } else if ((b & 0xE0) == 0xC0) {
+                chars[len++] = (char) (((b & 0x1F) << 6) | continuation());
+            } else if ((b & 0xF0) == 0xE0) {
+                chars[len++] = (char) (((b & 0x0F) << 12) | (continuation() << 6) | continuation());
+            } else if ((b & 0xF8) == 0xF0) {
+                int cp = ((b & 0x07) << 18) | (continuation() << 12) | (continuation() << 6) | continuation();
+                chars[len++] = Character.highSurrogate(cp);
+                chars[len++] = Character.lowSurrogate(cp);
+            } else {
+                throw syntaxError("Invalid UTF-8");
+            }
+        }
+    }
+
+    private int continuation() throws IOException {
+        int b = read();
+        if ((b & 0xC0) != 0x80) throw syntaxError("Invalid UTF-8");
+        return b & 0x3F;
+    }
+
+    // Copy the characters of a number into `chars`; returns its length
+    private int readNumberChars() throws IOException {
+        int len = 0;
+        while (true) {
+            int c = read();
+            if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+                if (len == chars.length) chars = java.util.Arrays.copyOf(chars, chars.length * 2);
+                chars[len++] = (char) c;
+            } else {
+                unread(c);
+                break;
+            }
+        }
+        if (len == 0) throw syntaxError("Malformed number");
+        return len;
+    }
+
+    private String cachedName(int len) {
+        int h = 0;
+        for (int i = 0; i < len; i++) h = 31 * h + chars[i];
+        int slot = (h ^ (h >>> 16)) & (NAME_CACHE.length - 1);
+        String cached = NAME_CACHE[slot];
+        if (cached != null && cached.length() == len) {
+            boolean same = true;
+            for (int i = 0; i < len && same; i++) same = cached.charAt(i) == chars[i];
+            if (same) return cached;
+        }
+        String name = new String(chars, 0, len);
+        NAME_CACHE[slot] = name;
+        return name;
+    }
+
+    private void expectLiteral(String rest) throws IOException {
+        for (int i = 0; i < rest.length(); i++) {
+            if (read() != rest.charAt(i)) throw syntaxError("Invalid literal");
+        }
+    }
+
+    private void expect(Token token) throws IOException {
+        Token t = peek();
+        if (t != token) throw syntaxError("Expected " + token + " but was " + t);
+        peeked = null;
+    }
+
+    private void push(int ctx) {
+        if (depth == stack.length) stack = java.util.Arrays.copyOf(stack, depth * 2);
+        stack[depth++] = ctx;
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+        return c;
+    }
+
+    private int read() throws IOException {
+        if (pos == limit && !fill()) return -1;
+        return buf[pos++] & 0xFF;
+    }
+
+    // Only ever called right after read() returned c, so the byte is still in the buffer
+    private void unread(int c) {
+        if (c != -1) pos--;
+    }
+
+    private boolean fill() throws IOException {
+        if (in == null) return false;
+        int n = in.read(buf, 0, buf.length);
+        if (n <= 0) return false;
+        pos = 0;
+        limit = n;
+        return true;
+    }
+
+    private JsonParseException syntaxError(String message) {
+        return new JsonParseException(message + " at byte " + pos);
+    }
+}
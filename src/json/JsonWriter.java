@@ -0,0 +1,392 @@
+package json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * JsonWriter - writes JSON as UTF-8 bytes straight into a byte buffer.
+ *
+ * The counterpart of {@link JsonReader}: calls mirror the document structure
+ * and commas are placed automatically.
+ *
+ *     try (JsonWriter w = JsonWriter.pooled()) {
+ *         w.beginObject().name("id").value(7).name("name").value(name).endObject();
+ *         w.writeTo(out);
+ *     }
+ *
+ * Strings are escaped and UTF-8 encoded in a single pass over their chars,
+ * with no intermediate String or char[]; numbers are written digit by digit.
+ * Buffers come from a small shared pool and go back on {@link #close()}, so
+ * a steady stream of responses allocates no new buffers.
+ *
+ * A writer made by {@link #pooled()} grows its buffer to hold the whole
+ * document. One made by {@link #streaming} instead hands each full buffer to
+ * its OutputStream, so arbitrarily long documents use a fixed amount of
+ * memory; an IOException from that stream is thrown as UncheckedIOException.
+ * Not thread-safe.
+ */
+public final class JsonWriter implements AutoCloseable {
+    // Nesting contexts, as in JsonReader
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_OBJECT = 2;
+    private static final int NONEMPTY_OBJECT = 3;
+    private static final int DANGLING_NAME = 4;
+    private static final int EMPTY_ARRAY = 5;
+    private static final int NONEMPTY_ARRAY = 6;
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_POOLED_SIZE = 1 << 20; // larger buffers are left to the GC
+    private static final AtomicReferenceArray<byte[]> POOL =
+            new AtomicReferenceArray<>(Math.min(64, Runtime.getRuntime().availableProcessors() * 2));
+
+    // For ASCII chars: 0 = write as is, 'u' = six-byte unicode escape, otherwise the char after the backslash
+    private static final byte[] ESCAPES = new byte[128];
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    static {
+        for (int c = 0; c < 0x20; c++) ESCAPES[c] = 'u';
+        ESCAPES['"'] = '"';
+        ESCAPES['\\'] = '\\';
+        ESCAPES['\b'] = 'b';
+        ESCAPES['\f'] = 'f';
+        ESCAPES['\n'] = 'n';
+        ESCAPES['\r'] = 'r';
+        ESCAPES['\t'] = 't';
+    }
+
+    private final OutputStream sink; // null: keep the whole document in buf
+    private byte[] buf;
+    private int count;
+
+    private int[] stack = new int[16];
+    private int depth;
+
+    private JsonWriter(OutputStream sink) {
+        this.sink = sink;
+        this.buf = takeBuffer();
+        stack[depth++] = EMPTY_DOCUMENT;
+    }
+
+    /** A writer that keeps the document in a pooled buffer; see {@link #writeTo} and {@link #toByteArray}. */
+    public static JsonWriter pooled() {
+        return new JsonWriter(null);
+    }
+
+    /** A writer that sends the document to `out` in buffer-sized pieces; {@link #close()} sends the rest. */
+    public static JsonWriter streaming(OutputStream out) {
+        return new JsonWriter(out);
+    }
+
+    // ==================== Structure ====================
+
+    public JsonWriter beginObject() {
+        beforeValue();
+        push(EMPTY_OBJECT);
+        return writeByte('{');
+    }
+
+    public JsonWriter endObject() {
+        int ctx = stack[depth - 1];
+        if (ctx != EMPTY_OBJECT && ctx != NONEMPTY_OBJECT) throw new IllegalStateException("Not in an object");
+        depth--;
+        return writeByte('}');
+    }
+
+    public JsonWriter beginArray() {
+        beforeValue();
+        push(EMPTY_ARRAY);
+        return writeByte('[');
+    }
+
+    public JsonWriter endArray() {
+        int ctx = stack[depth - 1];
+        if (ctx != EMPTY_ARRAY && ctx != NONEMPTY_ARRAY) throw new IllegalStateException("Not in an array");
+        depth--;
+        return writeByte(']');
+    }
+
+    public JsonWriter name(String name) {
+        int ctx = stack[depth - 1];
+        if (ctx == NONEMPTY_OBJECT) {
+            writeByte(',');
+        } else if (ctx != EMPTY_OBJECT) {
+            throw new IllegalStateException("Name outside an object");
+        }
+        stack[depth - 1] = DANGLING_NAME;
+        writeString(name);
+        return writeByte(':');
+    }
+
+    // ==================== Values ====================
+
+    /** A string value, or null. */
+    public JsonWriter value(String value) {
+        if (value == null) return nullValue();
+        beforeValue();
+        writeString(value);
+        return this;
+    }
+
+    public JsonWriter value(long value) {
+        beforeValue();
+        writeLong(value);
+        return this;
+    }
+
+    public JsonWriter value(boolean value) {
+        beforeValue();
+        return writeAscii(value ? "true" : "false");
+    }
+
+    public JsonWriter nullValue() {
+        beforeValue();
+        return writeAscii("null");
+    }
+
+    /**
+     * A fixed-point amount in hundredths as a number with exactly two
+     * decimals, e.g. 1250 as 12.50 (the counterpart of JsonReader.nextCents).
+     */
+    public JsonWriter valueCents(long cents) {
+        beforeValue();
+        long whole = cents / 100; // split before negating, so Long.MIN_VALUE does not overflow
+        int frac = (int) (cents % 100);
+        if (cents < 0) {
+            writeByte('-');
+            whole = -whole;
+            frac = -frac;
+        }
+        writeLong(whole);
+        ensure(3);
+        buf[count++] = '.';
+        buf[count++] = (byte) ('0' + frac / 10);
+        buf[count++] = (byte) ('0' + frac % 10);
+        return this;
+    }
+
+    /** A value that is already serialized JSON (e.g. a json column), copied without escaping; null writes null. */
+    public JsonWriter rawValue(String json) {
+        if (json == null) return nullValue();
+        beforeValue();
+        writeUtf8(json, false);
+        return this;
+    }
+
+    // ==================== Output ====================
+
+    /** Bytes written so far (for a streaming writer: not yet sent). */
+    public int size() {
+        return count;
+    }
+
+    /** Copy the buffered bytes to `out`. */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buf, 0, count);
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, count);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buf, 0, count, StandardCharsets.UTF_8);
+    }
+
+    /** Send the buffered bytes of a streaming writer to its stream and flush it. */
+    public void flush() throws IOException {
+        if (sink == null) return;
+        sink.write(buf, 0, count);
+        count = 0;
+        sink.flush();
+    }
+
+    /** Flush a streaming writer and return the buffer to the pool; the writer is unusable afterwards. */
+    @Override
+    public void close() {
+        if (buf == null) return;
+        try {
+            flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            releaseBuffer(buf);
+            buf = null;
+        }
+    }
+
+    /** Return the buffer to the pool without sending what is still buffered; the writer is unusable afterwards. */
+    public void discard() {
+        if (buf == null) return;
+        releaseBuffer(buf);
+        buf = null;
+        count = 0;
+    }
+
+    // ==================== Internals ====================
+
+    private void beforeValue() {
+        int ctx = stack[depth - 1];
+        switch (ctx) {
+            case NONEMPTY_ARRAY:
+                writeByte(',');
+                break;
+            case EMPTY_ARRAY:
+                stack[depth - 1] = NONEMPTY_ARRAY;
+                break;
+            case DANGLING_NAME:
+                stack[depth - 1] = NONEMPTY_OBJECT;
+                break;
+            case EMPTY_DOCUMENT:
+                stack[depth - 1] = NONEMPTY_DOCUMENT;
+                break;
+            case NONEMPTY_DOCUMENT:
+                throw new IllegalStateException("JSON must have only one top-level value");
+            default:
+                throw new IllegalStateException("Value in an object needs a name first");
+        }
+    }
+
+    private void push(int ctx) {
+        if (depth == stack.length) stack = Arrays.copyOf(stack, depth * 2);
+        stack[depth++] = ctx;
+    }
+
+    private void writeString(String s) {
+        writeByte('"');
+        writeUtf8(s, true);
+        writeByte('"');
+    }
+
+    // One pass over the chars: escape (if asked) and encode as UTF-8 straight into buf
+    private void writeUtf8(String s, boolean escape) {
+        int n = s.length();
+        int i = 0;
+        if (count + n <= buf.length) {
+            // Plain ASCII is copied as is up to the first char that needs escaping or encoding
+            byte[] b = buf;
+            int p = count;
+            for (; i < n; i++) {
+                char c = s.charAt(i);
+                if (c >= 0x80 || (escape && ESCAPES[c] != 0)) break;
+                b[p++] = (byte) c;
+            }
+            count = p;
+        }
+        while (i < n) {
+            // A char takes at most 6 bytes (an escaped control char); a surrogate pair 4 bytes for 2 chars
+            int room = (buf.length - count) / 6;
+            if (room == 0) {
+                ensure(6);
+                continue;
+            }
+            int end = Math.min(n, i + room);
+            byte[] b = buf;
+            int p = count;
+            for (; i < end; i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    int e = escape ? ESCAPES[c] : 0;
+                    if (e == 0) {
+                        b[p++] = (byte) c;
+                    } else if (e == 'u') {
+                        b[p++] = '\\';
+                        b[p++] = 'u';
+                        b[p++] = '0';
+                        b[p++] = '0';
+                        b[p++] = HEX[c >> 4];
+                        b[p++] = HEX[c & 0xF];
+                    } else {
+                        b[p++] = '\\';
+                        b[p++] = (byte) e;
+                    }
+                } else if (c < 0x800) {
+                    b[p++] = (byte) (0xC0 | (c >> 6));
+                    b[p++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                        int cp = Character.toCodePoint(c, s.charAt(++i));
+                        b[p++] = (byte) (0xF0 | (cp >> 18));
+                        b[p++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                        b[p++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                        b[p++] = (byte) (0x80 | (cp & 0x3F));
+                    } else {
+                        b[p++] = '?'; // unpaired surrogate, as String.getBytes does
+                    }
+                } else {
+                    b[p++] = (byte) (0xE0 | (c >> 12));
+                    b[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    b[p++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            count = p;
+        }
+    }
+
+    private void writeLong(long v) {
+        if (v == Long.MIN_VALUE) {
+            writeAscii("-9223372036854775808");
+            return;
+        }
+        ensure(20);
+        if (v < 0) {
+            buf[count++] = '-';
+            v = -v;
+        }
+        int digits = 1;
+        for (long t = v; t >= 10; t /= 10) digits++;
+        int p = count + digits;
+        do {
+            buf[--p] = (byte) ('0' + v % 10);
+            v /= 10;
+        } while (v != 0);
+        count += digits;
+    }
+
+    private JsonWriter writeAscii(String s) {
+        ensure(s.length());
+        for (int i = 0; i < s.length(); i++) buf[count++] = (byte) s.charAt(i);
+        return this;
+    }
+
+    private JsonWriter writeByte(char c) {
+        ensure(1);
+        buf[count++] = (byte) c;
+        return this;
+    }
+
+    // Make room for n more bytes: send what we have (streaming) or grow the buffer
+    private void ensure(int n) {
+        if (count + n <= buf.length) return;
+        if (sink != null && count > 0) {
+            try {
+                sink.write(buf, 0, count);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            count = 0;
+            if (n <= buf.length) return;
+        }
+        buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + n));
+    }
+
+    private static byte[] takeBuffer() {
+        for (int i = 0; i < POOL.length(); i++) {
+            byte[] b = POOL.getAndSet(i, null);
+            if (b != null) return b;
+        }
+        return new byte[BUFFER_SIZE];
+    }
+
+    private static void releaseBuffer(byte[] b) {
+        if (b.length > MAX_POOLED_SIZE) return;
+        for (int i = 0; i < POOL.length(); i++) {
+            if (POOL.get(i) == null && POOL.compareAndSet(i, null, b)) return;
+        }
+    }
+}
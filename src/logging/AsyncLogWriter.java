@@ -0,0 +1,170 @@
+package logging;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * AsyncLogWriter - fixed-size ring buffer of log records drained by one
+ * background thread.
+ *
+ * Producers claim a slot with a CAS on the tail counter and never block or
+ * format: the message template and its arguments are stored as-is and turned
+ * into text on the flush thread. When the buffer is full the record is
+ * dropped and counted rather than stalling the request thread; the drop count
+ * is reported in the output. A record that cannot be formatted (an argument's
+ * toString() throws) is reported on stderr in its place; the flush thread
+ * keeps running.
+ */
+final class AsyncLogWriter {
+    private static final DateTimeFormatter TIME =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    private static final class Slot {
+        // Holds claim sequence + 1 once the record is fully written
+        volatile long published;
+        long timeMillis;
+        Level level;
+        String subsystem;
+        String thread;
+        String template;
+        Object[] args;
+        Throwable error;
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+    private final AtomicLong dropped = new AtomicLong();
+    private final PrintStream out;
+    private final PrintStream err;
+    private final StringBuilder line = new StringBuilder(256); // flush thread only
+    private final Thread flusher;
+
+    AsyncLogWriter(int capacity, PrintStream out, PrintStream err) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) slots[i] = new Slot();
+        this.mask = size - 1;
+        this.out = out;
+        this.err = err;
+
+        this.flusher = new Thread(this::runFlusher, "log-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::drain, "log-drain"));
+    }
+
+    /** Queue a record; returns false if it was dropped because the buffer is full. */
+    boolean publish(Level level, String subsystem, String template, Object[] args, Throwable error) {
+        long seq;
+        while (true) {
+            seq = tail.get();
+            if (seq - head >= slots.length) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            if (tail.compareAndSet(seq, seq + 1)) break;
+        }
+
+        Slot slot = slots[(int) (seq & mask)];
+        slot.timeMillis = System.currentTimeMillis();
+        slot.level = level;
+        slot.subsystem = subsystem;
+        slot.thread = Thread.currentThread().getName();
+        slot.template = template;
+        slot.args = args;
+        slot.error = error;
+        slot.published = seq + 1;
+        return true;
+    }
+
+    private void runFlusher() {
+        long idleNanos = 1_000_000L;
+        while (true) {
+            int drained;
+            try {
+                drained = drain();
+            } catch (Throwable t) {
+                // Losing this thread would silently end all logging
+                drained = 0;
+                err.println(TIME.format(Instant.now()) + " ERROR [log] flush failed: " + t);
+            }
+            if (drained > 0) {
+                idleNanos = 1_000_000L;
+            } else {
+                LockSupport.parkNanos(idleNanos);
+                idleNanos = Math.min(idleNanos * 2, 20_000_000L);
+            }
+        }
+    }
+
+    // Write out everything published so far; returns the number of records written
+    private synchronized int drain() {
+        int count = 0;
+        long h = head;
+        while (true) {
+            Slot slot = slots[(int) (h & mask)];
+            if (slot.published != h + 1) break;
+
+            try {
+                write(slot);
+            } catch (Throwable t) {
+                err.println(TIME.format(Instant.ofEpochMilli(slot.timeMillis)) + " ERROR [log] could not format record "
+                        + slot.level + " [" + slot.subsystem + "] \"" + slot.template + "\": " + t);
+            }
+            slot.template = null;
+            slot.args = null;
+            slot.error = null;
+            h++;
+            head = h; // frees the slot for producers
+            count++;
+        }
+
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) err.println(TIME.format(Instant.now()) + " WARN  [log] dropped " + lost + " records (buffer full)");
+        if (count > 0) {
+            out.flush();
+            err.flush();
+        }
+        return count;
+    }
+
+    private void write(Slot slot) {
+        line.setLength(0);
+        line.append(TIME.format(Instant.ofEpochMilli(slot.timeMillis))).append(' ');
+        String lvl = slot.level.name();
+        line.append(lvl);
+        for (int i = lvl.length(); i < 6; i++) line.append(' ');
+        line.append('[').append(slot.subsystem).append("] ");
+        format(line, slot.template, slot.args);
+
+        PrintStream target = slot.level.compareTo(Level.WARN) >= 0 ? err : out;
+        target.println(line);
+        if (slot.error != null) slot.error.printStackTrace(target);
+    }
+
+    // Substitute {} placeholders in order; extra arguments are ignored
+    static void format(StringBuilder sb, String template, Object[] args) {
+        if (template == null) {
+            sb.append("null");
+            return;
+        }
+        if (args == null || args.length == 0) {
+            sb.append(template);
+            return;
+        }
+        int argIndex = 0;
+        int start = 0;
+        int idx;
+        while (argIndex < args.length && (idx = template.indexOf("{}", start)) != -1) {
+            sb.append(template, start, idx).append(args[argIndex++]);
+            start = idx + 2;
+        }
+        sb.append(template, start, template.length());
+    }
+}
@@ -0,0 +1,17 @@
+package logging;
+
+/**
+ * Log levels, most verbose first.
+ */
+public enum Level {
+    DEBUG, INFO, WARN, ERROR, OFF;
+
+    static Level parse(String value, Level fallback) {
+        if (value == null) return fallback;
+        try {
+            return Level.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package logging;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Log - leveled logger for one subsystem ("db", "orders", "menu", ...).
+ *
+ * Records go through a shared {@link AsyncLogWriter}, so calling threads never
+ * write to stdout themselves. Messages use {} placeholders that are filled in
+ * on the flush thread:
+ *
+ *     private static final Log log = Log.get("db");
+ *     log.info("Order created with ID: {} for customer: {}", orderId, name);
+ *
+ * The level is -Dlog.level.<subsystem>, falling back to -Dlog.level (default INFO).
+ */
+public final class Log {
+    private static final AsyncLogWriter WRITER =
+            new AsyncLogWriter(Integer.getInteger("log.bufferSize", 8192), System.out, System.err);
+    private static final ConcurrentHashMap<String, Log> LOGS = new ConcurrentHashMap<>();
+
+    private final String subsystem;
+    private volatile Level level;
+
+    private Log(String subsystem, Level level) {
+        this.subsystem = subsystem;
+        this.level = level;
+    }
+
+    public static Log get(String subsystem) {
+        return LOGS.computeIfAbsent(subsystem, name -> {
+            Level fallback = Level.parse(System.getProperty("log.level"), Level.INFO);
+            return new Log(name, Level.parse(System.getProperty("log.level." + name), fallback));
+        });
+    }
+
+    /** Change the level of this subsystem at runtime. */
+    public void setLevel(Level level) {
+        this.level = level;
+    }
+
+    public boolean isEnabled(Level l) {
+        return l.compareTo(level) >= 0 && l != Level.OFF;
+    }
+
+    public boolean isDebugEnabled() {
+        return isEnabled(Level.DEBUG);
+    }
+
+    public void debug(String template, Object... args) {
+        if (isEnabled(Level.DEBUG)) WRITER.publish(Level.DEBUG, subsystem, template, args, null);
+    }
+
+    public void info(String template, Object... args) {
+        if (isEnabled(Level.INFO)) WRITER.publish(Level.INFO, subsystem, template, args, null);
+    }
+
+    public void warn(String template, Object... args) {
+        if (isEnabled(Level.WARN)) WRITER.publish(Level.WARN, subsystem, template, args, null);
+    }
+
+    public void error(String template, Object... args) {
+        if (isEnabled(Level.ERROR)) WRITER.publish(Level.ERROR, subsystem, template, args, null);
+    }
+
+    /** Log an error together with the stack trace of `cause`. */
+    public void error(String message, Throwable cause) {
+        if (isEnabled(Level.ERROR)) WRITER.publish(Level.ERROR, subsystem, message, null, cause);
+    }
+}
@@ -0,0 +1,109 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram - fixed-memory recorder of non-negative long values (typically
+ * latencies in nanoseconds) with percentile queries.
+ *
+ * Buckets are log-linear, as in HdrHistogram: values below 128 are counted
+ * exactly, and every power of two above that is split into 64 equal
+ * sub-buckets, so a reported percentile is within 1/64 (about 1.6%) of the
+ * recorded value. The whole long range fits in 3712 counters, and recording
+ * is one atomic increment with no allocation, so any number of threads can
+ * record concurrently.
+ *
+ * Queries read the counters without stopping writers; a percentile taken
+ * while values are being recorded reflects some recent moment, not an exact
+ * snapshot.
+ */
+public final class Histogram {
+    private static final int SUB_BITS = 7;
+    private static final int SUB_COUNT = 1 << SUB_BITS;   // values below this are counted exactly
+    private static final int HALF = SUB_COUNT / 2;
+    private static final int BUCKETS = indexOf(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /** Record one value; negative values are counted as 0. */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        counts.incrementAndGet(indexOf(v));
+        count.incrementAndGet();
+        sum.addAndGet(v);
+        long m;
+        while (v > (m = max.get()) && !max.compareAndSet(m, v)) {
+            // retry until our value is stored or a larger one is
+        }
+    }
+
+    /** Add every value recorded in `other` to this histogram. */
+    public void add(Histogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = other.counts.get(i);
+            if (c != 0) counts.addAndGet(i, c);
+        }
+        count.addAndGet(other.count.get());
+        sum.addAndGet(other.sum.get());
+        long m;
+        long v = other.max.get();
+        while (v > (m = max.get()) && !max.compareAndSet(m, v)) {
+            // retry as in record
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /** Sum of all recorded values (negative ones as 0). */
+    public long getSum() {
+        return sum.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * The value below which `percentile` percent of the recorded values fall
+     * (0..100), reported as the top of its bucket and never above the maximum.
+     * Returns 0 for an empty histogram.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long n = count.get();
+        if (n == 0) return 0;
+        double p = Math.min(100, Math.max(0, percentile));
+        long rank = Math.max(1, (long) Math.ceil(p / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(highestInBucket(i), max.get());
+        }
+        return max.get();
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_COUNT) return (int) value;
+        // Shift so the value's top SUB_BITS bits remain: value >>> shift is in [HALF, SUB_COUNT)
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BITS - 1);
+        return shift * HALF + (int) (value >>> shift);
+    }
+
+    private static long highestInBucket(int index) {
+        if (index < SUB_COUNT) return index;
+        int shift = index / HALF - 1;
+        long sub = index - (long) shift * HALF;
+        long next = (sub + 1) << shift;
+        return next <= 0 ? Long.MAX_VALUE : next - 1; // the last bucket ends at Long.MAX_VALUE
+    }
+}
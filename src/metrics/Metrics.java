@@ -0,0 +1,202 @@
+package metrics;
+
+import json.JsonWriter;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Metrics - registry of named series, exported as JSON or in the Prometheus
+ * text format.
+ *
+ * A series is a name plus label pairs, e.g.
+ * `http_request_seconds{route="/api/orders",method="GET",status="200"}`.
+ * Timers and size histograms are {@link Histogram}s, so recording is a few
+ * atomic increments; look a series up once and keep it where the path is
+ * hot. Gauges and counters are read from a supplier at export time.
+ * Histograms are exported as summaries (count, sum and quantiles); timers
+ * record nanoseconds and are exported in seconds.
+ *
+ * Code that talks to the database adds the time it spent to
+ * {@link #addDbNanos}, so a request can split its time between the database
+ * and everything else (see RequestMetrics).
+ */
+public final class Metrics {
+    private static final Metrics GLOBAL = new Metrics();
+    private static final ThreadLocal<long[]> DB_NANOS = ThreadLocal.withInitial(() -> new long[1]);
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String[] QUANTILE_LABELS = {"0.5", "0.9", "0.99", "0.999"};
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p999"};
+
+    private enum Type { SUMMARY, GAUGE, COUNTER }
+
+    // `labels` is the Prometheus form of `labelPairs`
+    private record Series(String name, String[] labelPairs, String labels, Type type, double scale,
+                          Histogram histogram, DoubleSupplier value) {
+    }
+
+    private final Map<String, Series> series = new ConcurrentHashMap<>();
+
+    /** The registry shared by the server, the pool and the JVM gauges. */
+    public static Metrics global() {
+        return GLOBAL;
+    }
+
+    /** Add database time spent by the current thread. */
+    public static void addDbNanos(long nanos) {
+        DB_NANOS.get()[0] += nanos;
+    }
+
+    /** Database time the current thread has spent so far; take the difference around a piece of work. */
+    public static long getDbNanos() {
+        return DB_NANOS.get()[0];
+    }
+
+    /** A histogram of durations in nanoseconds, exported in seconds. `labels` are name, value pairs. */
+    public Histogram timer(String name, String... labels) {
+        return histogram(name, 1e-9, labels);
+    }
+
+    /** A histogram of plain values such as sizes in bytes. */
+    public Histogram histogram(String name, String... labels) {
+        return histogram(name, 1, labels);
+    }
+
+    private Histogram histogram(String name, double scale, String... labels) {
+        String l = labels(labels);
+        return series.computeIfAbsent(name + l,
+                k -> new Series(name, labels.clone(), l, Type.SUMMARY, scale, new Histogram(), null)).histogram();
+    }
+
+    /** A value that can go up and down, read when exported. Registering the same series again replaces it. */
+    public void gauge(String name, DoubleSupplier value, String... labels) {
+        register(name, Type.GAUGE, value, labels);
+    }
+
+    /** A running total, read when exported; by convention the name ends in _total. */
+    public void counter(String name, DoubleSupplier value, String... labels) {
+        register(name, Type.COUNTER, value, labels);
+    }
+
+    private void register(String name, Type type, DoubleSupplier value, String... labels) {
+        String l = labels(labels);
+        series.put(name + l, new Series(name, labels.clone(), l, type, 1, null, value));
+    }
+
+    /** Heap, GC, thread and uptime gauges from the JVM's management beans. */
+    public void registerJvmMetrics() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        gauge("jvm_heap_used_bytes", () -> memory.getHeapMemoryUsage().getUsed());
+        gauge("jvm_heap_committed_bytes", () -> memory.getHeapMemoryUsage().getCommitted());
+        gauge("jvm_heap_max_bytes", () -> memory.getHeapMemoryUsage().getMax());
+        gauge("jvm_nonheap_used_bytes", () -> memory.getNonHeapMemoryUsage().getUsed());
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            counter("jvm_gc_collections_total", gc::getCollectionCount, "gc", gc.getName());
+            counter("jvm_gc_time_seconds_total", () -> gc.getCollectionTime() / 1000.0, "gc", gc.getName());
+        }
+        gauge("jvm_threads", () -> ManagementFactory.getThreadMXBean().getThreadCount());
+        gauge("jvm_uptime_seconds", () -> ManagementFactory.getRuntimeMXBean().getUptime() / 1000.0);
+    }
+
+    /**
+     * All series as {"metrics":[...]}: summaries with count, sum, mean, max and
+     * p50/p90/p99/p999, gauges and counters with value.
+     */
+    public void writeJson(JsonWriter json) {
+        json.beginObject().name("metrics").beginArray();
+        for (Series s : sorted()) {
+            json.beginObject()
+                .name("name").value(s.name())
+                .name("type").value(s.type().name().toLowerCase());
+            if (s.labelPairs().length > 0) {
+                json.name("labels").beginObject();
+                for (int i = 0; i < s.labelPairs().length; i += 2) {
+                    json.name(s.labelPairs()[i]).value(s.labelPairs()[i + 1]);
+                }
+                json.endObject();
+            }
+            if (s.type() == Type.SUMMARY) {
+                Histogram h = s.histogram();
+                json.name("count").value(h.getCount())
+                    .name("sum").rawValue(number(h.getSum() * s.scale()))
+                    .name("mean").rawValue(number(h.getMean() * s.scale()))
+                    .name("max").rawValue(number(h.getMax() * s.scale()));
+                for (int i = 0; i < PERCENTILES.length; i++) {
+                    json.name(PERCENTILE_NAMES[i]).rawValue(number(h.getValueAtPercentile(PERCENTILES[i]) * s.scale()));
+                }
+            } else {
+                json.name("value").rawValue(number(s.value().getAsDouble()));
+            }
+            json.endObject();
+        }
+        json.endArray().endObject();
+    }
+
+    /** All series in the Prometheus text exposition format (version 0.0.4). */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        String lastName = null;
+        for (Series s : sorted()) {
+            if (!s.name().equals(lastName)) {
+                out.append("# TYPE ").append(s.name()).append(' ').append(s.type().name().toLowerCase()).append('\n');
+                lastName = s.name();
+            }
+            if (s.type() == Type.SUMMARY) {
+                Histogram h = s.histogram();
+                for (int i = 0; i < PERCENTILES.length; i++) {
+                    String q = "quantile=\"" + QUANTILE_LABELS[i] + "\"";
+                    line(out, s.name(), s.labels().isEmpty() ? q : s.labels() + "," + q,
+                            number(h.getValueAtPercentile(PERCENTILES[i]) * s.scale()));
+                }
+                line(out, s.name() + "_sum", s.labels(), number(h.getSum() * s.scale()));
+                line(out, s.name() + "_count", s.labels(), Long.toString(h.getCount()));
+            } else {
+                line(out, s.name(), s.labels(), number(s.value().getAsDouble()));
+            }
+        }
+        return out.toString();
+    }
+
+    private List<Series> sorted() {
+        List<Series> all = new ArrayList<>(series.values());
+        all.sort((a, b) -> a.name().equals(b.name()) ? a.labels().compareTo(b.labels()) : a.name().compareTo(b.name()));
+        return all;
+    }
+
+    private static void line(StringBuilder out, String name, String labels, String value) {
+        out.append(name);
+        if (!labels.isEmpty()) out.append('{').append(labels).append('}');
+        out.append(' ').append(value).append('\n');
+    }
+
+    // name="value",... with Prometheus escaping
+    private static String labels(String... pairs) {
+        if (pairs.length % 2 != 0) throw new IllegalArgumentException("Labels must be name, value pairs");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < pairs.length; i += 2) {
+            if (i > 0) sb.append(',');
+            sb.append(pairs[i]).append("=\"");
+            String v = pairs[i + 1];
+            for (int j = 0; j < v.length(); j++) {
+                char c = v.charAt(j);
+                if (c == '\\' || c == '"') sb.append('\\').append(c);
+                else if (c == '\n') sb.append("\\n");
+                else sb.append(c);
+            }
+            sb.append('"');
+        }
+        return sb.toString();
+    }
+
+    private static String number(double v) {
+        if (Double.isNaN(v) || Double.isInfinite(v)) return "0";
+        if (v == Math.rint(v) && Math.abs(v) < 1e15) return Long.toString((long) v);
+        return Double.toString(v);
+    }
+}
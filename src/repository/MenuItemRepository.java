@@ -1,41 +1,67 @@
 package repository;
 
+import domain.MenuIndex;
 import domain.MenuItem;
+import domain.MenuItemInterner;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
 import java.util.List;
 
 /**
- * Minimal MenuItemRepository. Currently uses an in-memory list.
- * The REST API in `RestServer` reads menu items from the database directly,
- * but other code can use this repository if desired.
+ * MenuItemRepository - in-memory menu used by the order handlers to resolve
+ * menu item ids (the REST menu endpoint reads the database directly).
+ *
+ * The menu is held as an immutable {@link MenuIndex} snapshot. Reads go to the
+ * current snapshot without locking; writes are rare (startup seed, admin
+ * edits) and build a new snapshot under the lock, then publish it.
  */
 public class MenuItemRepository {
-    private final List<MenuItem> menu = new ArrayList<>();
+    private volatile MenuIndex index = MenuIndex.empty();
 
     public MenuItemRepository() {
         // Optionally seed with some default items if none in DB
     }
 
     public synchronized void save(MenuItem item) {
-        for (int i = 0; i < menu.size(); i++) {
-            if (menu.get(i).getId() == item.getId()) {
-                menu.set(i, item);
-                return;
-            }
-        }
-        menu.add(item);
+        index = index.with(item);
+        MenuItemInterner.register(item);
     }
 
-    public synchronized List<MenuItem> getAll() {
-        return Collections.unmodifiableList(new ArrayList<>(menu));
+    /** Replace the whole menu in one step, building the indexes once. */
+    public synchronized void saveAll(Collection<? extends MenuItem> items) {
+        index = MenuIndex.of(items);
+        for (MenuItem item : items) MenuItemInterner.register(item);
     }
 
-    public synchronized MenuItem findById(int id) {
-        return menu.stream()
-                .filter(m -> m.getId() == id)
-                .findFirst()
-                .orElse(null);
+    public synchronized boolean deleteById(int id) {
+        MenuIndex current = index;
+        MenuIndex next = current.without(id);
+        index = next;
+        return next != current;
+    }
+
+    public List<MenuItem> getAll() {
+        return index.all();
+    }
+
+    public MenuItem findById(int id) {
+        return index.findById(id);
+    }
+
+    public List<MenuItem> findByCategory(String category) {
+        return index.filterByCategory(category);
+    }
+
+    public List<MenuItem> findByPriceRange(double minPrice, double maxPrice) {
+        return index.priceRange(minPrice, maxPrice);
+    }
+
+    public List<MenuItem> searchByName(String keyword) {
+        return index.searchByName(keyword);
+    }
+
+    /** The current snapshot, for running several queries against one consistent menu. */
+    public MenuIndex snapshot() {
+        return index;
     }
 }
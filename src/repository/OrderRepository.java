@@ -2,58 +2,288 @@ package repository;
 
 import domain.Order;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.IntSupplier;
 
 /**
- * Simple in-memory OrderRepository used by the server.
+ * In-memory OrderRepository used by the server, indexed by order id.
+ *
+ * Orders are spread over a fixed number of stripes by a hash of the id. Each
+ * stripe is an open-addressing table with primitive int keys, so there is no
+ * Integer boxing or per-entry node. Writes take only their stripe's lock;
+ * reads take no lock at all. Slots are written with release semantics and
+ * read with acquire semantics, and a stripe publishes a resized table through
+ * a volatile field, so a reader always sees a consistent slot.
+ *
+ * Iteration walks the live tables without copying them first. It is weakly
+ * consistent: orders saved or deleted during a walk may or may not be seen.
+ *
+ * The repository need not hold every order. With a loader set, findById falls
+ * back to it on a miss and caches the result, so older orders are read from
+ * the database only when asked for. getAllOrders, forEach and size cover the
+ * cached orders only. Ids the loader did not find, and deleted ids, are
+ * remembered for a short while in a small direct-mapped table, so repeated
+ * lookups of unknown orders do not each cost a query. A loader that fails
+ * throws instead, and findById passes that on without remembering anything.
  */
 public class OrderRepository {
-    private final List<Order> orders = new ArrayList<>();
-    private int nextId = 1;
+    private static final int STRIPES = 32;                    // power of two
+    private static final int EMPTY = Integer.MIN_VALUE;       // never-used slot
+    private static final int TOMBSTONE = Integer.MIN_VALUE + 1; // deleted slot, probing continues past it
+
+    private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(Order[].class);
+
+    private static final int MISSING_SLOTS = 1024;            // power of two
+    private static final long MISSING_TTL_SECONDS = 30;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final AtomicInteger localIds = new AtomicInteger(1);
+    private volatile IntSupplier idSource = localIds::getAndIncrement;
+    private volatile IntFunction<Order> loader;
+    // Ids known to be missing: (id << 32) | seconds when seen, one per slot; a collision just evicts
+    private final AtomicLongArray missing = new AtomicLongArray(MISSING_SLOTS);
 
     public OrderRepository() {
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new Stripe();
     }
 
-    public synchronized int getNextOrderId() {
-        return nextId++;
+    /** Id for a new order, taken from the id source. */
+    public int getNextOrderId() {
+        return idSource.getAsInt();
     }
 
-    public synchronized void save(Order order) {
-        // Replace existing order with same id or add
-        for (int i = 0; i < orders.size(); i++) {
-            if (orders.get(i).getOrderId() == order.getOrderId()) {
-                orders.set(i, order);
-                return;
-            }
+    /**
+     * Where new order ids come from (e.g. OrderIdAllocator::next). Without one,
+     * ids are counted up from 1, which only suits a repository with no database.
+     */
+    public void setIdSource(IntSupplier idSource) {
+        this.idSource = idSource;
+    }
+
+    /**
+     * Source for orders that are not cached yet (e.g. DatabaseManager::loadOrder).
+     * It returns null only if the order does not exist, and throws if it could not be read.
+     */
+    public void setLoader(IntFunction<Order> loader) {
+        this.loader = loader;
+    }
+
+    /** Insert the order, replacing any order with the same id. */
+    public void save(Order order) {
+        int id = checkId(order.getOrderId());
+        int h = mix(id);
+        stripeFor(h).put(id, h, order, false);
+        forgetMissing(id);
+    }
+
+    /**
+     * Insert the order unless one with the same id is already cached, and
+     * return the cached one. Background loads use this so they never replace
+     * a newer in-memory version.
+     */
+    public Order saveIfAbsent(Order order) {
+        int id = checkId(order.getOrderId());
+        int h = mix(id);
+        Order existing = stripeFor(h).put(id, h, order, true);
+        forgetMissing(id);
+        return existing != null ? existing : order;
+    }
+
+    /** The order with this id, from the cache or the loader; null if it does not exist. Loader failures are thrown. */
+    public Order findById(int id) {
+        if (id == EMPTY || id == TOMBSTONE) return null;
+        int h = mix(id);
+        Order order = stripeFor(h).get(id, h);
+        if (order != null) return order;
+
+        IntFunction<Order> l = loader;
+        if (l == null || isKnownMissing(id)) return null;
+        Order loaded = l.apply(id);
+        if (loaded == null) {
+            rememberMissing(id);
+            return null;
         }
-        orders.add(order);
+        return saveIfAbsent(loaded);
+    }
+
+    /** The cached order with this id, without falling back to the loader. */
+    public Order findCached(int id) {
+        if (id == EMPTY || id == TOMBSTONE) return null;
+        int h = mix(id);
+        return stripeFor(h).get(id, h);
+    }
+
+    public boolean deleteById(int id) {
+        if (id == EMPTY || id == TOMBSTONE) return false;
+        int h = mix(id);
+        rememberMissing(id);
+        return stripeFor(h).remove(id, h);
+    }
+
+    private boolean isKnownMissing(int id) {
+        long e = missing.get(id & (MISSING_SLOTS - 1));
+        return e != 0 && (int) (e >>> 32) == id && now() - (e & 0xFFFFFFFFL) < MISSING_TTL_SECONDS;
+    }
+
+    private void rememberMissing(int id) {
+        missing.set(id & (MISSING_SLOTS - 1), ((long) id << 32) | now());
     }
 
-    public synchronized List<Order> getAllOrders() {
-        return Collections.unmodifiableList(new ArrayList<>(orders));
+    private void forgetMissing(int id) {
+        int slot = id & (MISSING_SLOTS - 1);
+        long e = missing.get(slot);
+        if (e != 0 && (int) (e >>> 32) == id) missing.compareAndSet(slot, e, 0);
     }
 
-    public synchronized Order findById(int id) {
-        return orders.stream()
-                .filter(o -> o.getOrderId() == id)
-                .findFirst()
-                .orElse(null);
+    private static long now() {
+        return System.currentTimeMillis() / 1000;
     }
 
-    public synchronized boolean deleteById(int id) {
-        for (int i = 0; i < orders.size(); i++) {
-            if (orders.get(i).getOrderId() == id) {
-                orders.remove(i);
-                return true;
+    /** All orders sorted by id. */
+    public List<Order> getAllOrders() {
+        List<Order> all = new ArrayList<>(size());
+        forEach(all::add);
+        all.sort(Comparator.comparingInt(Order::getOrderId));
+        return Collections.unmodifiableList(all);
+    }
+
+    /** Visit every order without copying the repository first (weakly consistent, unordered). */
+    public void forEach(Consumer<Order> action) {
+        for (Stripe stripe : stripes) {
+            Table t = stripe.table;
+            for (int i = 0; i < t.values.length; i++) {
+                Order o = (Order) VALUES.getAcquire(t.values, i);
+                if (o != null) action.accept(o);
             }
         }
-        return false;
     }
 
-    // Allow initializing nextId after loading existing orders from the database
-    public synchronized void setNextId(int nextId) {
-        this.nextId = nextId;
+    public int size() {
+        int n = 0;
+        for (Stripe stripe : stripes) n += stripe.size;
+        return n;
+    }
+
+    private static int checkId(int id) {
+        if (id == EMPTY || id == TOMBSTONE) throw new IllegalArgumentException("Reserved order id: " + id);
+        return id;
+    }
+
+    private Stripe stripeFor(int hash) {
+        // High bits pick the stripe, low bits the slot, so the two stay independent
+        return stripes[(hash >>> 27) & (STRIPES - 1)];
+    }
+
+    // murmur3 finalizer: spreads sequential ids over the table
+    private static int mix(int id) {
+        int h = id;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static final class Table {
+        final int[] keys;
+        final Order[] values;
+
+        Table(int capacity) {
+            keys = new int[capacity];
+            Arrays.fill(keys, EMPTY);
+            values = new Order[capacity];
+        }
+    }
+
+    private static final class Stripe {
+        volatile Table table = new Table(16);
+        volatile int size;   // live entries, written under the lock
+        int used;            // live entries plus tombstones, guarded by the lock
+
+        Order get(int id, int hash) {
+            Table t = table;
+            int mask = t.keys.length - 1;
+            for (int i = hash & mask; ; i = (i + 1) & mask) {
+                int k = (int) KEYS.getAcquire(t.keys, i);
+                if (k == id) {
+                    // The slot may have been removed and reused since the key was read
+                    Order o = (Order) VALUES.getAcquire(t.values, i);
+                    return o != null && o.getOrderId() == id ? o : null;
+                }
+                if (k == EMPTY) return null;
+            }
+        }
+
+        // Returns the order previously stored under id, or null
+        synchronized Order put(int id, int hash, Order order, boolean onlyIfAbsent) {
+            Table t = table;
+            int mask = t.keys.length - 1;
+            int firstTombstone = -1;
+            int i = hash & mask;
+            for (; ; i = (i + 1) & mask) {
+                int k = t.keys[i];
+                if (k == id) {
+                    Order previous = t.values[i];
+                    if (!onlyIfAbsent) VALUES.setRelease(t.values, i, order);
+                    return previous;
+                }
+                if (k == EMPTY) break;
+                if (k == TOMBSTONE && firstTombstone < 0) firstTombstone = i;
+            }
+
+            int slot = firstTombstone >= 0 ? firstTombstone : i;
+            // Value before key: a reader that finds the key also finds the value
+            VALUES.setRelease(t.values, slot, order);
+            KEYS.setRelease(t.keys, slot, id);
+            size = size + 1;
+            if (firstTombstone < 0 && ++used * 2 > t.keys.length) rehash();
+            return null;
+        }
+
+        synchronized boolean remove(int id, int hash) {
+            Table t = table;
+            int mask = t.keys.length - 1;
+            for (int i = hash & mask; ; i = (i + 1) & mask) {
+                int k = t.keys[i];
+                if (k == id) {
+                    VALUES.setRelease(t.values, i, null);
+                    KEYS.setRelease(t.keys, i, TOMBSTONE);
+                    size = size - 1;
+                    return true;
+                }
+                if (k == EMPTY) return false;
+            }
+        }
+
+        // Build a fresh table sized for the live entries (dropping tombstones) and publish it
+        private void rehash() {
+            Table old = table;
+            int capacity = 16;
+            while (capacity < size * 4) capacity <<= 1;
+            Table t = new Table(capacity);
+            int mask = capacity - 1;
+            for (int j = 0; j < old.keys.length; j++) {
+                int k = old.keys[j];
+                if (k == EMPTY || k == TOMBSTONE) continue;
+                int i = mix(k) & mask;
+                while (t.keys[i] != EMPTY) i = (i + 1) & mask;
+                t.keys[i] = k;
+                t.values[i] = old.values[j];
+            }
+            used = size;
+            table = t; // volatile write publishes the filled arrays
+        }
     }
 }
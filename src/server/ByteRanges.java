@@ -0,0 +1,75 @@
+package server;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * ByteRanges - the Range and If-Range request headers, as far as the static
+ * file handler supports them.
+ *
+ * Only a single `bytes=` range is served; several ranges, other units and
+ * malformed headers are ignored, so the client gets the whole file. If-Range
+ * may hold a strong ETag or an HTTP date. A weak ETag never matches, because
+ * If-Range needs the strong comparison: a range of a different but
+ * equivalent file would corrupt the client's copy.
+ */
+public final class ByteRanges {
+
+    private ByteRanges() {
+    }
+
+    /**
+     * The single range of a `bytes=` Range header as {offset, count}, an
+     * empty array if it cannot be satisfied (it starts past the end), or null
+     * if the header is to be ignored (other units, several ranges, malformed).
+     */
+    public static long[] parse(String header, long length) {
+        if (!header.regionMatches(true, 0, "bytes=", 0, 6)) return null;
+        String spec = header.substring(6).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0 || spec.indexOf(',') >= 0) return null;
+        String first = spec.substring(0, dash).trim();
+        String last = spec.substring(dash + 1).trim();
+        long start;
+        long end;
+        try {
+            if (first.isEmpty()) {
+                // bytes=-N: the last N bytes
+                long suffix = Long.parseLong(last);
+                if (suffix < 0) return null;
+                if (suffix == 0) return new long[0];
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+                if (start < 0 || end < start) return null;
+                end = Math.min(end, length - 1);
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (start >= length) return new long[0];
+        return new long[] {start, end - start + 1};
+    }
+
+    /**
+     * True if a range may be served: no If-Range, an If-Range ETag equal to
+     * the (strong) `etag`, or an If-Range date equal to `lastModified` to the
+     * second. With `lastModified` negative (unknown) a date never matches.
+     */
+    public static boolean ifRangeMatches(String ifRange, String etag, long lastModified) {
+        if (ifRange == null) return true;
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("W/")) return false;
+        if (ifRange.startsWith("\"")) return etag != null && !etag.startsWith("W/") && ifRange.equals(etag);
+        if (lastModified < 0) return false;
+        try {
+            long since = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return since / 1000 == lastModified / 1000;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+}
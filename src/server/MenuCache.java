@@ -0,0 +1,76 @@
+package server;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.function.Supplier;
+
+/**
+ * MenuCache - the serialized GET /api/menu response, kept in memory.
+ *
+ * The menu only changes through the admin create/update/delete handlers,
+ * which call {@link #invalidate()}. Between changes a menu request is served
+ * from the cached bytes without touching the database or re-serializing.
+ * Loads and invalidations share one lock, so an invalidation issued while a
+ * load is running always clears whatever that load installs.
+ */
+class MenuCache {
+    /** Immutable cached response: UTF-8 JSON body and its strong ETag. */
+    static final class Entry {
+        final byte[] json;
+        final String etag;
+
+        Entry(byte[] json, String etag) {
+            this.json = json;
+            this.etag = etag;
+        }
+    }
+
+    private final Object loadLock = new Object();
+    private volatile Entry current;
+
+    /**
+     * Return the cached entry, loading it with `loader` on a miss.
+     * The loader returns the UTF-8 JSON body, or null when the menu could
+     * not be read from the database; nothing is cached then and null is
+     * returned.
+     */
+    Entry get(Supplier<byte[]> loader) {
+        Entry entry = current;
+        if (entry != null) return entry;
+
+        synchronized (loadLock) {
+            // Another thread may have loaded it while we waited
+            entry = current;
+            if (entry != null) return entry;
+
+            byte[] bytes = loader.get();
+            if (bytes == null) return null;
+
+            entry = new Entry(bytes, etagFor(bytes));
+            current = entry;
+            return entry;
+        }
+    }
+
+    /** Drop the cached menu; the next request reloads it. */
+    void invalidate() {
+        synchronized (loadLock) {
+            current = null;
+        }
+    }
+
+    // Content hash, so an unchanged menu keeps its ETag across reloads and restarts
+    private static String etagFor(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder sb = new StringBuilder("\"m-");
+            for (int i = 0; i < 12; i++) {
+                sb.append(Character.forDigit((digest[i] >> 4) & 0xF, 16))
+                  .append(Character.forDigit(digest[i] & 0xF, 16));
+            }
+            return sb.append('"').toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,501 @@
+package server;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.Headers;
+import logging.Log;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * NioHttpConnection - one client connection of the NioHttpServer.
+ *
+ * Reading and parsing happen on the connection's selector thread only.
+ * Responses are written by whichever thread runs the handler: {@link #send}
+ * writes straight to the socket while it accepts data and queues the rest
+ * for the selector thread. A handler thread that gets too far ahead of the
+ * client waits, so a slow reader cannot make the server buffer a whole
+ * response. The selector thread itself never waits. A client that takes no
+ * response data for the idle timeout is disconnected, which also releases a
+ * handler thread waiting on it.
+ *
+ * While a request is being answered the connection does not read. Requests
+ * the client pipelined behind it stay in the read buffer and are parsed once
+ * the response is complete.
+ */
+final class NioHttpConnection {
+    private static final Log log = Log.get("nio");
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    private enum State { READING, PROCESSING, CLOSED }
+
+    final NioHttpServer server;
+    final NioHttpServer.SelectorLoop loop;
+    final SocketChannel channel;
+    SelectionKey key;
+
+    // Selector thread only
+    private ByteBuffer in;          // filled up to position(); unread data starts at `start`
+    private int start;
+    private int scanned;            // bytes after `start` already searched for the end of the head
+    private volatile State state = State.READING; // written by other threads only on close
+    private long lastActivity = System.currentTimeMillis();
+    private RequestHead head;       // parsed head while the body is being read
+    private byte[] body;
+    private int bodyFilled;
+    private boolean continueSent;
+
+    // Write side, guarded by `this`
+    private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+    private long pendingBytes;
+    private final long maxPendingBytes;
+    private boolean responseDone;
+    private boolean closeAfterResponse;
+    private boolean closed;
+    private boolean writerWaiting;      // a handler thread waits in sendFile
+    private long lastWriteProgress;     // when the socket last took data, or output started waiting
+
+    NioHttpConnection(NioHttpServer server, NioHttpServer.SelectorLoop loop, SocketChannel channel) {
+        this.server = server;
+        this.loop = loop;
+        this.channel = channel;
+        this.in = server.buffers.acquire();
+        this.maxPendingBytes = 4L * server.bufferSize;
+    }
+
+    record RequestHead(String method, String target, String protocol, Headers headers, boolean keepAlive) {
+    }
+
+    // ==================== Reading (selector thread) ====================
+
+    void onReadable() {
+        if (state != State.READING) return;
+        try {
+            if (!in.hasRemaining()) compact();
+            int n = channel.read(in);
+            if (n < 0) {
+                close();
+                return;
+            }
+            lastActivity = System.currentTimeMillis();
+            processInput();
+        } catch (IOException e) {
+            log.debug("Read failed: {}", e.getMessage());
+            close();
+        }
+    }
+
+    // Parse and dispatch as many requests as the buffer holds, one at a time
+    private void processInput() throws IOException {
+        while (state == State.READING) {
+            if (head == null) {
+                int end = findHeadEnd();
+                if (end < 0) {
+                    if (in.position() - start >= in.capacity()) {
+                        reject(431, "Request header too large");
+                    } else if (!in.hasRemaining()) {
+                        compact();
+                    }
+                    return;
+                }
+                byte[] bytes = new byte[end - start];
+                in.get(start, bytes);
+                start = end + 4;
+                scanned = 0;
+                if (!parseHead(new String(bytes, StandardCharsets.ISO_8859_1))) return;
+            }
+
+            int available = in.position() - start;
+            int take = Math.min(available, body.length - bodyFilled);
+            in.get(start, body, bodyFilled, take);
+            start += take;
+            bodyFilled += take;
+            if (start == in.position()) {
+                in.clear();
+                start = 0;
+            }
+            if (bodyFilled < body.length) {
+                String expect = head.headers().getFirst("Expect");
+                if (!continueSent && expect != null && expect.equalsIgnoreCase("100-continue")) {
+                    continueSent = true;
+                    send(new ByteBuffer[] {ByteBuffer.wrap(CONTINUE)});
+                }
+                if (!in.hasRemaining()) compact();
+                return;
+            }
+            dispatch();
+        }
+    }
+
+    private int findHeadEnd() {
+        int limit = in.position();
+        for (int i = Math.max(start, start + scanned - 3); i + 3 < limit; i++) {
+            if (in.get(i) == '\r' && in.get(i + 1) == '\n' && in.get(i + 2) == '\r' && in.get(i + 3) == '\n') return i;
+        }
+        scanned = limit - start;
+        return -1;
+    }
+
+    private void compact() {
+        if (start == 0) return;
+        in.flip();
+        in.position(start);
+        in.compact();
+        start = 0;
+    }
+
+    // Sets `head` and `body`, or answers with an error and returns false
+    private boolean parseHead(String text) throws IOException {
+        String[] lines = text.split("\r\n");
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+            reject(400, "Bad request line");
+            return false;
+        }
+        Headers headers = new Headers();
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon <= 0) {
+                reject(400, "Bad header line");
+                return false;
+            }
+            headers.add(lines[i].substring(0, colon).trim(), lines[i].substring(colon + 1).trim());
+        }
+
+        String protocol = requestLine[2];
+        String connection = headers.getFirst("Connection");
+        boolean keepAlive = protocol.equals("HTTP/1.1")
+                ? connection == null || !connection.equalsIgnoreCase("close")
+                : connection != null && connection.equalsIgnoreCase("keep-alive");
+
+        if (headers.containsKey("Transfer-Encoding")) {
+            reject(501, "Chunked request bodies are not supported");
+            return false;
+        }
+        long length = 0;
+        String contentLength = headers.getFirst("Content-Length");
+        if (contentLength != null) {
+            try {
+                length = Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException e) {
+                length = -1;
+            }
+            if (length < 0) {
+                reject(400, "Bad Content-Length");
+                return false;
+            }
+            if (length > server.maxBodyBytes) {
+                reject(413, "Request body too large");
+                return false;
+            }
+        }
+
+        head = new RequestHead(requestLine[0], requestLine[1], protocol, headers, keepAlive);
+        body = new byte[(int) length];
+        bodyFilled = 0;
+        continueSent = false;
+        return true;
+    }
+
+    private void dispatch() throws IOException {
+        RequestHead request = head;
+        byte[] requestBody = body;
+        head = null;
+        body = null;
+
+        URI uri;
+        try {
+            uri = new URI(request.target());
+        } catch (java.net.URISyntaxException e) {
+            reject(400, "Bad request target");
+            return;
+        }
+        NioHttpServer.Context context = server.findContext(uri.getPath() == null ? "/" : uri.getPath());
+        if (context == null || context.getHandler() == null) {
+            reject(404, "No context found for request");
+            return;
+        }
+
+        state = State.PROCESSING;
+        key.interestOpsAnd(~SelectionKey.OP_READ);
+        synchronized (this) {
+            responseDone = false;
+            closeAfterResponse = !request.keepAlive();
+        }
+        NioHttpExchange exchange = new NioHttpExchange(this, context, request, uri, requestBody);
+        Runnable task = () -> {
+            try {
+                new Filter.Chain(context.getFilters(), context.getHandler()).doFilter(exchange);
+            } catch (Throwable e) {
+                // As with the JDK server, a failed exchange ends the connection
+                log.debug("Handler failed for {} {}: {}", request.method(), request.target(), e.toString());
+                close();
+            }
+        };
+        Executor executor = server.getExecutor();
+        if (executor == null) {
+            task.run();
+            return;
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            exchange.rejectBusy();
+        }
+    }
+
+    // A response generated here, after which the connection is closed
+    private void reject(int code, String message) throws IOException {
+        state = State.PROCESSING;
+        key.interestOpsAnd(~SelectionKey.OP_READ);
+        byte[] text = message.getBytes(StandardCharsets.UTF_8);
+        String headText = "HTTP/1.1 " + code + " " + NioHttpExchange.reason(code) + "\r\n"
+                + "Date: " + NioHttpExchange.date() + "\r\n"
+                + "Content-Type: text/plain; charset=UTF-8\r\n"
+                + "Content-Length: " + text.length + "\r\n"
+                + "Connection: close\r\n\r\n";
+        synchronized (this) {
+            closeAfterResponse = true;
+        }
+        send(new ByteBuffer[] {ByteBuffer.wrap(headText.getBytes(StandardCharsets.ISO_8859_1)), ByteBuffer.wrap(text)});
+        responseComplete();
+    }
+
+    void closeIfIdle(long now) {
+        if (state == State.READING && now - lastActivity > server.idleMillis) {
+            close();
+            return;
+        }
+        synchronized (this) {
+            if ((!pending.isEmpty() || writerWaiting) && now - lastWriteProgress > server.idleMillis) {
+                log.debug("Closing a connection that took no response data for {} ms", now - lastWriteProgress);
+                closeLocked();
+            }
+        }
+    }
+
+    // Caller holds `this`: give up on a client that has not taken data for the idle timeout
+    private void checkWriteStalled() throws IOException {
+        if (System.currentTimeMillis() - lastWriteProgress > server.idleMillis) {
+            closeLocked();
+            throw new IOException("Client took no response data for " + server.idleMillis + " ms");
+        }
+    }
+
+    /** Whether a response is being produced (used to let them finish on stop). */
+    boolean isBusy() {
+        return state == State.PROCESSING;
+    }
+
+    // ==================== Writing (any thread) ====================
+
+    /**
+     * Write `buffers` in order, queueing what the socket does not take now.
+     * Direct buffers from the pool are returned to it once written. Blocks
+     * while too much is queued, unless called on the selector thread.
+     */
+    void send(ByteBuffer[] buffers) throws IOException {
+        synchronized (this) {
+            if (closed) {
+                for (ByteBuffer b : buffers) server.buffers.release(b);
+                throw new IOException("Connection closed");
+            }
+            int first = 0;
+            if (pending.isEmpty()) {
+                lastWriteProgress = System.currentTimeMillis();
+                try {
+                    while (first < buffers.length) {
+                        long written = channel.write(buffers, first, buffers.length - first);
+                        while (first < buffers.length && !buffers[first].hasRemaining()) {
+                            server.buffers.release(buffers[first++]);
+                        }
+                        if (written == 0) break;
+                    }
+                } catch (IOException e) {
+                    for (int i = first; i < buffers.length; i++) server.buffers.release(buffers[i]);
+                    closeLocked();
+                    throw e;
+                }
+            }
+            if (first == buffers.length) return;
+            for (int i = first; i < buffers.length; i++) {
+                pending.add(buffers[i]);
+                pendingBytes += buffers[i].remaining();
+            }
+            key.interestOpsOr(SelectionKey.OP_WRITE);
+            loop.wakeup();
+            if (loop.inLoop()) return;
+            try {
+                while (pendingBytes > maxPendingBytes && !closed) {
+                    checkWriteStalled();
+                    wait(server.idleMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new java.io.InterruptedIOException("Interrupted while sending");
+            }
+            if (closed) throw new IOException("Connection closed");
+        }
+    }
+
+    /**
+     * Write `count` bytes of `file` from `position`, after anything queued,
+     * with FileChannel.transferTo: the data goes from the page cache to the
+     * socket without a copy in the JVM. Waits for the socket like
+     * {@link #send}. The selector thread cannot wait, so there the region is
+     * mapped and queued instead.
+     */
+    void sendFile(FileChannel file, long position, long count) throws IOException {
+        if (loop.inLoop()) {
+            send(new ByteBuffer[] {file.map(FileChannel.MapMode.READ_ONLY, position, count)});
+            return;
+        }
+        long end = position + count;
+        synchronized (this) {
+            lastWriteProgress = System.currentTimeMillis();
+            while (position < end) {
+                if (closed) throw new IOException("Connection closed");
+                if (pending.isEmpty()) {
+                    long n;
+                    try {
+                        n = file.transferTo(position, end - position, channel);
+                    } catch (IOException e) {
+                        closeLocked();
+                        throw e;
+                    }
+                    position += n;
+                    if (n > 0) {
+                        lastWriteProgress = System.currentTimeMillis();
+                        continue;
+                    }
+                    if (position >= file.size()) throw new IOException("File ended before the response body did");
+                }
+                // Socket full, or queued data ahead of us: wait for onWritable
+                checkWriteStalled();
+                key.interestOpsOr(SelectionKey.OP_WRITE);
+                loop.wakeup();
+                writerWaiting = true;
+                try {
+                    wait(server.idleMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new java.io.InterruptedIOException("Interrupted while sending");
+                } finally {
+                    writerWaiting = false;
+                }
+            }
+        }
+    }
+
+    void onWritable() {
+        boolean drained;
+        synchronized (this) {
+            try {
+                while (!pending.isEmpty()) {
+                    ByteBuffer b = pending.peek();
+                    int n = channel.write(b);
+                    pendingBytes -= n;
+                    if (n > 0) lastWriteProgress = System.currentTimeMillis();
+                    if (b.hasRemaining()) break;
+                    server.buffers.release(pending.poll());
+                }
+            } catch (IOException e) {
+                log.debug("Write failed: {}", e.getMessage());
+                closeLocked();
+                return;
+            }
+            notifyAll();
+            drained = pending.isEmpty();
+            if (drained) key.interestOpsAnd(~SelectionKey.OP_WRITE);
+        }
+        if (drained) afterResponse();
+    }
+
+    /** The current response has been handed to {@link #send} completely. */
+    void responseComplete() {
+        synchronized (this) {
+            responseDone = true;
+        }
+        if (loop.inLoop()) {
+            afterResponse();
+        } else {
+            loop.execute(this::afterResponse);
+        }
+    }
+
+    /** The response cannot be completed (e.g. shorter than announced); drop the connection. */
+    void abort() {
+        close();
+    }
+
+    // Selector thread: once a complete response is fully written, go on with the next request
+    private void afterResponse() {
+        synchronized (this) {
+            if (closed || !responseDone || !pending.isEmpty()) return;
+            if (closeAfterResponse) {
+                closeLocked();
+                return;
+            }
+            responseDone = false;
+        }
+        if (state != State.PROCESSING) return;
+        state = State.READING;
+        lastActivity = System.currentTimeMillis();
+        try {
+            processInput();
+            if (state == State.READING) key.interestOpsOr(SelectionKey.OP_READ);
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    synchronized void markCloseAfterResponse() {
+        closeAfterResponse = true;
+    }
+
+    synchronized boolean isCloseAfterResponse() {
+        return closeAfterResponse;
+    }
+
+    void close() {
+        synchronized (this) {
+            closeLocked();
+        }
+    }
+
+    private void closeLocked() {
+        if (closed) return;
+        closed = true;
+        state = State.CLOSED;
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+        for (ByteBuffer b : pending) server.buffers.release(b);
+        pending.clear();
+        pendingBytes = 0;
+        notifyAll();
+        // The read buffer belongs to the selector thread
+        if (loop.inLoop()) {
+            releaseReadBuffer();
+        } else {
+            loop.execute(this::releaseReadBuffer);
+        }
+    }
+
+    private void releaseReadBuffer() {
+        if (in != null) {
+            server.buffers.release(in);
+            in = null;
+        }
+    }
+}
@@ -0,0 +1,402 @@
+package server;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * NioHttpExchange - one request and its response on a NioHttpConnection,
+ * with the semantics of the JDK server's exchanges:
+ *
+ * - sendResponseHeaders(code, n): n > 0 sends Content-Length n, 0 streams
+ *   the body (chunked, or until the connection closes for HTTP/1.0) and -1
+ *   sends no body and completes the exchange.
+ * - The exchange is complete when the response body is closed (directly or
+ *   through {@link #close}); the connection then goes on with the next
+ *   request.
+ *
+ * The request body has been read completely before the handler runs.
+ * Response bodies are collected in pooled direct buffers and passed to the
+ * connection a buffer at a time and on flush. The body is also a
+ * {@link ZeroCopyBody}: file regions and mapped buffers bypass the pooled
+ * buffers and go to the socket directly.
+ */
+final class NioHttpExchange extends HttpExchange {
+    private static final int CHUNK_HEADROOM = 10;  // up to 8 hex digits and CRLF before each chunk
+    private static final int CHUNK_TRAILER = 2;    // CRLF after each chunk
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME;
+    private static volatile String cachedDate = "";
+    private static volatile long cachedDateSecond;
+
+    private final NioHttpConnection connection;
+    private final NioHttpServer.Context context;
+    private final NioHttpConnection.RequestHead request;
+    private final URI uri;
+    private final Headers responseHeaders = new Headers();
+    private final Map<String, Object> attributes = new HashMap<>();
+    private final BodyOut body = new BodyOut();
+    private InputStream requestBody;
+    private OutputStream responseBody = body;
+    private int responseCode = -1;
+
+    NioHttpExchange(NioHttpConnection connection, NioHttpServer.Context context,
+                    NioHttpConnection.RequestHead request, URI uri, byte[] requestBody) {
+        this.connection = connection;
+        this.context = context;
+        this.request = request;
+        this.uri = uri;
+        this.requestBody = new ByteArrayInputStream(requestBody);
+    }
+
+    @Override
+    public Headers getRequestHeaders() {
+        return request.headers();
+    }
+
+    @Override
+    public Headers getResponseHeaders() {
+        return responseHeaders;
+    }
+
+    @Override
+    public URI getRequestURI() {
+        return uri;
+    }
+
+    @Override
+    public String getRequestMethod() {
+        return request.method();
+    }
+
+    @Override
+    public HttpContext getHttpContext() {
+        return context;
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (responseCode < 0) {
+                // Nothing was sent, so there is no way to end the response but to drop the connection
+                connection.abort();
+                return;
+            }
+            responseBody.close();
+        } catch (IOException e) {
+            connection.abort();
+        }
+    }
+
+    @Override
+    public InputStream getRequestBody() {
+        return requestBody;
+    }
+
+    @Override
+    public OutputStream getResponseBody() {
+        return responseBody;
+    }
+
+    @Override
+    public void sendResponseHeaders(int rCode, long responseLength) throws IOException {
+        if (responseCode >= 0) throw new IOException("Headers already sent");
+        responseCode = rCode;
+
+        boolean noBody = responseLength < 0 || request.method().equals("HEAD")
+                || rCode == 204 || rCode == 304 || rCode < 200;
+        boolean http11 = request.protocol().equals("HTTP/1.1");
+        if (!noBody && responseLength == 0 && !http11) {
+            connection.markCloseAfterResponse();  // HTTP/1.0 streaming: the end of the body is the end of the connection
+        }
+
+        StringBuilder head = new StringBuilder(256);
+        head.append(http11 ? "HTTP/1.1 " : "HTTP/1.0 ").append(rCode).append(' ').append(reason(rCode)).append("\r\n");
+        head.append("Date: ").append(date()).append("\r\n");
+        for (Map.Entry<String, List<String>> e : responseHeaders.entrySet()) {
+            if (e.getKey().equalsIgnoreCase("Content-Length") || e.getKey().equalsIgnoreCase("Transfer-Encoding")) continue;
+            for (String v : e.getValue()) head.append(e.getKey()).append(": ").append(v).append("\r\n");
+        }
+        if (rCode != 204 && rCode != 304 && rCode >= 200) {
+            if (responseLength > 0) {
+                head.append("Content-Length: ").append(responseLength).append("\r\n");
+            } else if (responseLength < 0) {
+                head.append("Content-Length: 0\r\n");
+            } else if (http11 && !noBody) {
+                head.append("Transfer-Encoding: chunked\r\n");
+            }
+        }
+        if (connection.isCloseAfterResponse()) {
+            head.append("Connection: close\r\n");
+        } else if (!http11) {
+            head.append("Connection: keep-alive\r\n");
+        }
+        head.append("\r\n");
+
+        byte[] headBytes = head.toString().getBytes(StandardCharsets.ISO_8859_1);
+        if (noBody) {
+            connection.send(new ByteBuffer[] {ByteBuffer.wrap(headBytes)});
+            body.finished = true;
+            connection.responseComplete();
+            return;
+        }
+        body.start(headBytes, responseLength > 0 ? responseLength : -1, responseLength == 0 && http11);
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        try {
+            return (InetSocketAddress) connection.channel.getRemoteAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        try {
+            return (InetSocketAddress) connection.channel.getLocalAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String getProtocol() {
+        return request.protocol();
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        if (value == null) {
+            attributes.remove(name);
+        } else {
+            attributes.put(name, value);
+        }
+    }
+
+    @Override
+    public void setStreams(InputStream i, OutputStream o) {
+        if (i != null) requestBody = i;
+        if (o != null) responseBody = o;
+    }
+
+    @Override
+    public HttpPrincipal getPrincipal() {
+        return null;
+    }
+
+    /** 503 for a request the executor refused, written without running the handler. */
+    void rejectBusy() throws IOException {
+        byte[] text = "{\"error\":\"Server busy, retry shortly\"}".getBytes(StandardCharsets.UTF_8);
+        responseHeaders.set("Content-Type", "application/json; charset=UTF-8");
+        responseHeaders.set("Retry-After", "1");
+        sendResponseHeaders(503, text.length);
+        body.write(text, 0, text.length);
+        body.close();
+    }
+
+    static String reason(int code) {
+        return switch (code) {
+            case 100 -> "Continue";
+            case 200 -> "OK";
+            case 201 -> "Created";
+            case 204 -> "No Content";
+            case 206 -> "Partial Content";
+            case 304 -> "Not Modified";
+            case 400 -> "Bad Request";
+            case 403 -> "Forbidden";
+            case 404 -> "Not Found";
+            case 405 -> "Method Not Allowed";
+            case 412 -> "Precondition Failed";
+            case 413 -> "Content Too Large";
+            case 416 -> "Range Not Satisfiable";
+            case 431 -> "Request Header Fields Too Large";
+            case 500 -> "Internal Server Error";
+            case 501 -> "Not Implemented";
+            case 503 -> "Service Unavailable";
+            default -> "";
+        };
+    }
+
+    // RFC 1123 date, formatted at most once a second
+    static String date() {
+        long second = System.currentTimeMillis() / 1000;
+        if (second != cachedDateSecond) {
+            cachedDate = HTTP_DATE.format(ZonedDateTime.now(ZoneOffset.UTC));
+            cachedDateSecond = second;
+        }
+        return cachedDate;
+    }
+
+    /**
+     * The response body. Data goes into a pooled buffer that is passed to the
+     * connection when full, on flush and on close. In chunked mode each
+     * buffer becomes one chunk, framed in place: room for the size line is
+     * kept in front of the data and for the CRLF behind it.
+     */
+    private final class BodyOut extends OutputStream implements ZeroCopyBody {
+        private byte[] head;            // not sent yet
+        private ByteBuffer buf;
+        private long remaining = -1;    // bytes still due with Content-Length, or -1
+        private boolean chunked;
+        private boolean started;
+        private boolean finished;
+
+        void start(byte[] head, long contentLength, boolean chunked) {
+            this.head = head;
+            this.remaining = contentLength;
+            this.chunked = chunked;
+            this.started = true;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            reserve(len);
+            while (len > 0) {
+                if (buf == null) {
+                    buf = connection.server.buffers.acquire();
+                    if (chunked) buf.position(CHUNK_HEADROOM);
+                }
+                int room = buf.remaining() - (chunked ? CHUNK_TRAILER : 0);
+                int n = Math.min(room, len);
+                buf.put(b, off, n);
+                off += n;
+                len -= n;
+                if (n == room) emit(false);
+            }
+        }
+
+        @Override
+        public void transferFrom(FileChannel file, long position, long count) throws IOException {
+            if (count == 0) return;
+            reserve(count);
+            emit(false);
+            if (chunked) connection.send(new ByteBuffer[] {chunkHeader(count)});
+            connection.sendFile(file, position, count);
+            if (chunked) connection.send(new ByteBuffer[] {ByteBuffer.wrap(CRLF)});
+        }
+
+        @Override
+        public void write(ByteBuffer data) throws IOException {
+            int len = data.remaining();
+            if (len == 0) return;
+            reserve(len);
+            if (buf != null) emit(false);
+            // Head, chunk framing and data in one gathering write; a read-only view keeps it out of the pool
+            ByteBuffer[] out = new ByteBuffer[4];
+            int n = 0;
+            if (head != null) out[n++] = ByteBuffer.wrap(head);
+            if (chunked) out[n++] = chunkHeader(len);
+            out[n++] = data.asReadOnlyBuffer();
+            if (chunked) out[n++] = ByteBuffer.wrap(CRLF);
+            head = null;
+            connection.send(java.util.Arrays.copyOf(out, n));
+            data.position(data.limit());
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (started && !finished && (buf != null || head != null)) emit(false);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!started || finished) return;
+            if (remaining > 0) {
+                finished = true;
+                release();
+                connection.abort();
+                throw new IOException("Response body shorter than its Content-Length");
+            }
+            emit(true);
+            finished = true;
+            connection.responseComplete();
+        }
+
+        private void reserve(long len) throws IOException {
+            if (!started) throw new IOException("Response headers not sent");
+            if (finished) throw new IOException("Response already complete");
+            if (remaining >= 0) {
+                if (len > remaining) throw new IOException("Response body longer than its Content-Length");
+                remaining -= len;
+            }
+        }
+
+        private ByteBuffer chunkHeader(long size) {
+            return ByteBuffer.wrap((Long.toHexString(size) + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        }
+
+        // Hand the head (if still here), the buffered data and, when last, the final chunk to the connection
+        private void emit(boolean last) throws IOException {
+            ByteBuffer data = null;
+            if (buf != null) {
+                if (chunked) {
+                    int size = buf.position() - CHUNK_HEADROOM;
+                    if (size > 0) {
+                        byte[] sizeLine = (Integer.toHexString(size) + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+                        int from = CHUNK_HEADROOM - sizeLine.length;
+                        buf.put(from, sizeLine);
+                        buf.put((byte) '\r').put((byte) '\n');
+                        buf.limit(buf.position()).position(from);
+                        data = buf;
+                    } else {
+                        connection.server.buffers.release(buf);
+                    }
+                } else {
+                    buf.flip();
+                    data = buf;
+                }
+                buf = null;
+            }
+
+            ByteBuffer[] out = new ByteBuffer[3];
+            int n = 0;
+            if (head != null) out[n++] = ByteBuffer.wrap(head);
+            if (data != null) out[n++] = data;
+            if (last && chunked) out[n++] = ByteBuffer.wrap(LAST_CHUNK);
+            head = null;
+            if (n > 0) connection.send(n == out.length ? out : java.util.Arrays.copyOf(out, n));
+        }
+
+        private void release() {
+            if (buf != null) {
+                connection.server.buffers.release(buf);
+                buf = null;
+            }
+        }
+    }
+}
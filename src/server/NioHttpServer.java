@@ -0,0 +1,416 @@
+package server;
+
+import com.sun.net.httpserver.Authenticator;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import logging.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * NioHttpServer - HTTP/1.1 engine on java.nio selectors that can stand in for
+ * the JDK's com.sun.net.httpserver.HttpServer. It implements the same
+ * HttpServer, HttpContext and HttpExchange API, so the existing handlers and
+ * filters run on it unchanged.
+ *
+ * One acceptor thread hands new connections round-robin to
+ * -Dserver.nio.selectors selector threads (default: one per two cpus). A
+ * selector thread reads and parses requests and writes responses that
+ * fit the socket buffer. Handlers run on the executor given to
+ * {@link #setExecutor}, as with the JDK server. Without an executor they run
+ * on the selector thread, so they must not block.
+ *
+ * Connections are kept alive unless the client asks otherwise. Pipelined
+ * requests are read ahead and answered one at a time, in order. Reads and
+ * response bodies use direct buffers of -Dserver.nio.bufferSize bytes
+ * (default 16384) from a shared pool. A request head must fit in one buffer.
+ * Bodies of up to -Dserver.nio.maxBodyBytes (default 1 MiB) are accepted,
+ * sent with Content-Length. Connections idle for -Dserver.nio.idleSeconds
+ * (default 30) between requests are closed.
+ *
+ * Selected with -Dserver.engine=nio (see {@link #fromSystemProperties}).
+ */
+public class NioHttpServer extends HttpServer {
+    private static final Log log = Log.get("nio");
+
+    final int bufferSize;
+    final int maxBodyBytes;
+    final long idleMillis;
+    final BufferPool buffers;
+    private final int selectorCount;
+    private final List<Context> contexts = new CopyOnWriteArrayList<>();
+    private volatile Executor executor;
+    private InetSocketAddress address;
+    private ServerSocketChannel serverChannel;
+    private SelectorLoop[] loops;
+    private Thread acceptor;
+    private volatile boolean running;
+
+    public NioHttpServer(int selectors, int bufferSize, int maxBodyBytes, long idleMillis) {
+        this.selectorCount = Math.max(1, selectors);
+        this.bufferSize = Math.max(1024, bufferSize);
+        this.maxBodyBytes = Math.max(0, maxBodyBytes);
+        this.idleMillis = idleMillis;
+        this.buffers = new BufferPool(this.bufferSize, Integer.getInteger("server.nio.pooledBuffers", 1024));
+    }
+
+    /** An unbound server with the -Dserver.nio.* settings. */
+    public static NioHttpServer create() {
+        return new NioHttpServer(
+                Integer.getInteger("server.nio.selectors", Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+                Integer.getInteger("server.nio.bufferSize", 16 * 1024),
+                Integer.getInteger("server.nio.maxBodyBytes", 1024 * 1024),
+                Long.getLong("server.nio.idleSeconds", 30) * 1000);
+    }
+
+    public static String engineFromSystemProperties() {
+        return System.getProperty("server.engine", "jdk").trim().toLowerCase();
+    }
+
+    /** The JDK server, or this one with -Dserver.engine=nio, bound to `address`. */
+    public static HttpServer fromSystemProperties(InetSocketAddress address, int backlog) throws IOException {
+        String engine = engineFromSystemProperties();
+        if (engine.equals("nio")) {
+            NioHttpServer server = create();
+            server.bind(address, backlog);
+            return server;
+        }
+        if (!engine.equals("jdk")) log.warn("Unknown server.engine '{}', using jdk", engine);
+        return HttpServer.create(address, backlog);
+    }
+
+    // ==================== HttpServer ====================
+
+    @Override
+    public synchronized void bind(InetSocketAddress addr, int backlog) throws IOException {
+        if (serverChannel != null) throw new IllegalStateException("Already bound");
+        this.address = addr;
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(addr, backlog);
+    }
+
+    @Override
+    public synchronized void start() {
+        if (serverChannel == null) throw new IllegalStateException("Not bound");
+        if (running) throw new IllegalStateException("Already started");
+        running = true;
+        loops = new SelectorLoop[selectorCount];
+        try {
+            for (int i = 0; i < loops.length; i++) {
+                loops[i] = new SelectorLoop(Selector.open());
+                // Not daemons: like the JDK dispatcher, a started server keeps the JVM running
+                Thread t = new Thread(loops[i], "nio-selector-" + (i + 1));
+                loops[i].thread = t;
+                t.start();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open selector", e);
+        }
+        acceptor = new Thread(this::acceptLoop, "nio-acceptor");
+        acceptor.start();
+    }
+
+    @Override
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /** Stop accepting, give running exchanges up to `delay` seconds, then close every connection. */
+    @Override
+    public void stop(int delay) {
+        if (!running) return;
+        running = false;
+        try {
+            serverChannel.close();
+        } catch (IOException ignored) {
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(Math.max(0, delay));
+        for (SelectorLoop loop : loops) {
+            loop.stop(deadline);
+        }
+    }
+
+    @Override
+    public HttpContext createContext(String path, HttpHandler handler) {
+        HttpContext context = createContext(path);
+        context.setHandler(handler);
+        return context;
+    }
+
+    @Override
+    public synchronized HttpContext createContext(String path) {
+        if (path == null || !path.startsWith("/")) throw new IllegalArgumentException("Invalid context path: " + path);
+        for (Context c : contexts) {
+            if (c.path.equals(path)) throw new IllegalArgumentException("Context already exists: " + path);
+        }
+        Context context = new Context(path);
+        contexts.add(context);
+        return context;
+    }
+
+    @Override
+    public synchronized void removeContext(String path) {
+        if (!contexts.removeIf(c -> c.path.equals(path))) throw new IllegalArgumentException("No context " + path);
+    }
+
+    @Override
+    public void removeContext(HttpContext context) {
+        removeContext(context.getPath());
+    }
+
+    @Override
+    public InetSocketAddress getAddress() {
+        try {
+            return serverChannel == null ? address : (InetSocketAddress) serverChannel.getLocalAddress();
+        } catch (IOException e) {
+            return address;
+        }
+    }
+
+    /** The context with the longest path that `path` starts with, as in the JDK server. */
+    Context findContext(String path) {
+        Context best = null;
+        for (Context c : contexts) {
+            if (path.startsWith(c.path) && (best == null || c.path.length() > best.path.length())) best = c;
+        }
+        return best;
+    }
+
+    // ==================== Threads ====================
+
+    private void acceptLoop() {
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                SelectorLoop loop = loops[next];
+                next = (next + 1) % loops.length;
+                loop.execute(() -> loop.register(channel));
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                if (running) log.warn("Accept failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    /** One selector thread and the connections registered with it. */
+    final class SelectorLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final CountDownLatch stopped = new CountDownLatch(1);
+        private volatile long stopDeadline = Long.MAX_VALUE;
+        Thread thread;
+
+        SelectorLoop(Selector selector) {
+            this.selector = selector;
+        }
+
+        /** Run `task` on this selector thread. */
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void wakeup() {
+            selector.wakeup();
+        }
+
+        boolean inLoop() {
+            return Thread.currentThread() == thread;
+        }
+
+        private void register(SocketChannel channel) {
+            try {
+                channel.configureBlocking(false);
+                NioHttpConnection connection = new NioHttpConnection(NioHttpServer.this, this, channel);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            } catch (IOException e) {
+                log.debug("Registering connection failed: {}", e.getMessage());
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            long nextIdleCheck = System.currentTimeMillis() + 1000;
+            try {
+                while (running || System.nanoTime() < stopDeadline && hasBusyConnections()) {
+                    selector.select(1000);
+                    for (Runnable task; (task = tasks.poll()) != null; ) {
+                        task.run();
+                    }
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        NioHttpConnection connection = (NioHttpConnection) key.attachment();
+                        if (key.isValid() && key.isWritable()) connection.onWritable();
+                        if (key.isValid() && key.isReadable()) connection.onReadable();
+                    }
+                    selector.selectedKeys().clear();
+
+                    long now = System.currentTimeMillis();
+                    if (now >= nextIdleCheck) {
+                        nextIdleCheck = now + 1000;
+                        for (SelectionKey key : selector.keys()) {
+                            ((NioHttpConnection) key.attachment()).closeIfIdle(now);
+                        }
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                log.error("Selector loop failed", e);
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    ((NioHttpConnection) key.attachment()).close();
+                }
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                }
+                stopped.countDown();
+            }
+        }
+
+        private boolean hasBusyConnections() {
+            for (SelectionKey key : selector.keys()) {
+                if (((NioHttpConnection) key.attachment()).isBusy()) return true;
+            }
+            return false;
+        }
+
+        void stop(long deadline) {
+            stopDeadline = deadline;
+            selector.wakeup();
+            try {
+                stopped.await(Math.max(0, deadline - System.nanoTime()) + TimeUnit.SECONDS.toNanos(1), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // ==================== Context ====================
+
+    final class Context extends HttpContext {
+        final String path;
+        private volatile HttpHandler handler;
+        private final Map<String, Object> attributes = new HashMap<>();
+        private final List<com.sun.net.httpserver.Filter> filters = new CopyOnWriteArrayList<>();
+        private Authenticator authenticator;
+
+        Context(String path) {
+            this.path = path;
+        }
+
+        @Override
+        public HttpHandler getHandler() {
+            return handler;
+        }
+
+        @Override
+        public void setHandler(HttpHandler handler) {
+            if (this.handler != null) throw new IllegalArgumentException("Handler already set");
+            this.handler = handler;
+        }
+
+        @Override
+        public String getPath() {
+            return path;
+        }
+
+        @Override
+        public HttpServer getServer() {
+            return NioHttpServer.this;
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public List<com.sun.net.httpserver.Filter> getFilters() {
+            return filters;
+        }
+
+        @Override
+        public Authenticator setAuthenticator(Authenticator auth) {
+            // Not supported: no handler here uses HTTP authentication
+            Authenticator old = authenticator;
+            authenticator = auth;
+            return old;
+        }
+
+        @Override
+        public Authenticator getAuthenticator() {
+            return authenticator;
+        }
+    }
+
+    // ==================== Buffers ====================
+
+    /**
+     * Direct buffers of one size, reused across connections. At most
+     * `maxPooled` idle buffers are kept; more are left to the GC.
+     */
+    static final class BufferPool {
+        private final int size;
+        private final int maxPooled;
+        private final Queue<ByteBuffer> idle = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger idleCount = new AtomicInteger();
+
+        BufferPool(int size, int maxPooled) {
+            this.size = size;
+            this.maxPooled = maxPooled;
+        }
+
+        ByteBuffer acquire() {
+            ByteBuffer b = idle.poll();
+            if (b == null) return ByteBuffer.allocateDirect(size);
+            idleCount.decrementAndGet();
+            return b;
+        }
+
+        /** Return a buffer from {@link #acquire}; other buffers (wrapped arrays, mapped files) are ignored. */
+        void release(ByteBuffer b) {
+            if (!b.isDirect() || b.isReadOnly() || b.capacity() != size) return;
+            if (idleCount.incrementAndGet() > maxPooled) {
+                idleCount.decrementAndGet();
+                return;
+            }
+            b.clear();
+            idle.add(b);
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
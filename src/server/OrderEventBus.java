@@ -0,0 +1,154 @@
+package server;
+
+import logging.Log;
+import service.OrderChangeLog;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * OrderEventBus - order changes fanned out to the Server-Sent Events
+ * subscribers of GET /api/orders/stream.
+ *
+ * Events are the OrderChangeLog's changes, and an event's id is the change's
+ * version, so a client that reconnects with the id of the last event it saw
+ * gets what it missed from the change log, also across restarts. If those
+ * changes were compacted away the client is told to reload instead.
+ *
+ * Each subscriber has a queue of -Dorders.events.buffer events (default 256).
+ * Publishing never waits for a subscriber: one whose queue is full is
+ * dropped. Its client then reconnects and resumes from its last id.
+ */
+class OrderEventBus {
+    private static final Log log = Log.get("events");
+
+    record Event(long id, String type, byte[] data) {
+    }
+
+    /** One connected client; events arrive in version order. */
+    final class Subscriber implements AutoCloseable {
+        private final ArrayDeque<Event> backlog = new ArrayDeque<>();  // missed events, served before the queue
+        private final BlockingQueue<Event> queue;
+        private volatile boolean closed;
+
+        private Subscriber(int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        /** Next event, or null after `timeout` without one or once closed. */
+        Event poll(long timeout, TimeUnit unit) throws InterruptedException {
+            if (closed) return null;
+            return backlog.isEmpty() ? queue.poll(timeout, unit) : backlog.poll();
+        }
+
+        /** Next event if one is already queued. */
+        Event poll() {
+            if (closed) return null;
+            return backlog.isEmpty() ? queue.poll() : backlog.poll();
+        }
+
+        boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            subscribers.remove(this);
+        }
+    }
+
+    private final OrderChangeLog changeLog;
+    private final Function<OrderChangeLog.Change, byte[]> rows;
+    private final Function<OrderChangeLog.Change, byte[]> liveRows;
+    private final int bufferSize;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * `rows` gives the event data for a change, or null to skip it. `liveRows`
+     * does the same for changes published while the change log is locked, so
+     * it must not block (no database reads).
+     */
+    OrderEventBus(OrderChangeLog changeLog, Function<OrderChangeLog.Change, byte[]> rows,
+                  Function<OrderChangeLog.Change, byte[]> liveRows, int bufferSize) {
+        this.changeLog = changeLog;
+        this.rows = rows;
+        this.liveRows = liveRows;
+        this.bufferSize = Math.max(1, bufferSize);
+        changeLog.setListener(this::publish);
+    }
+
+    static OrderEventBus fromSystemProperties(OrderChangeLog changeLog, Function<OrderChangeLog.Change, byte[]> rows,
+                                              Function<OrderChangeLog.Change, byte[]> liveRows) {
+        return new OrderEventBus(changeLog, rows, liveRows, Integer.getInteger("orders.events.buffer", 256));
+    }
+
+    /** Id of the newest event; a client that has seen everything up to now resumes from here. */
+    long lastEventId() {
+        return changeLog.latestVersion();
+    }
+
+    // Called by the change log, in version order, while it is locked
+    private void publish(OrderChangeLog.Change change) {
+        if (subscribers.isEmpty()) return;
+        Event event = toEvent(change, liveRows);
+        if (event == null) return;
+        for (Subscriber s : subscribers) {
+            if (!s.queue.offer(event)) {
+                log.debug("Dropping a slow order event subscriber at event {}", event.id());
+                s.close();
+            }
+        }
+    }
+
+    private Event toEvent(OrderChangeLog.Change change, Function<OrderChangeLog.Change, byte[]> rows) {
+        byte[] data = rows.apply(change);
+        if (data == null) return null;
+        String type = switch (change.op()) {
+            case INSERT -> "order-created";
+            case UPDATE -> "order-updated";
+            case DELETE -> "order-deleted";
+        };
+        return new Event(change.version(), type, data);
+    }
+
+    /**
+     * Subscribe to the events after `lastEventId`, or to new events only if it
+     * is negative. Returns null if the missed events can no longer be replayed
+     * (compacted away, unknown id, or more than fit in the buffer); the client
+     * must then reload the full order list.
+     */
+    Subscriber subscribe(long lastEventId) {
+        // The change log holds back new changes while we copy the backlog and register, so nothing
+        // falls between backlog and live events. Rows can need a database read: build them after.
+        Subscriber s = new Subscriber(bufferSize);
+        List<OrderChangeLog.Change> missed = changeLog.withChangesSince(
+                lastEventId < 0 ? changeLog.latestVersion() : lastEventId, changes -> {
+            if (changes == null || changes.size() > bufferSize) return null;
+            subscribers.add(s);
+            return changes;
+        });
+        if (missed == null) return null;
+        try {
+            for (OrderChangeLog.Change change : missed) {
+                Event event = toEvent(change, rows);
+                if (event != null) s.backlog.add(event);
+            }
+        } catch (RuntimeException e) {
+            // A row could not be read: the subscription fails rather than skip the event
+            s.close();
+            throw e;
+        }
+        return s;
+    }
+
+    int subscriberCount() {
+        return subscribers.size();
+    }
+}
@@ -0,0 +1,57 @@
+package server;
+
+import domain.Order;
+import logging.Log;
+import repository.OrderRepository;
+import service.DatabaseManager;
+
+import java.util.List;
+
+/**
+ * OrderWarmer - loads the most recent orders into the OrderRepository in the
+ * background after the server has started.
+ *
+ * Orders are read newest first in keyset pages (-Dorders.warm.pageSize,
+ * default 200) up to -Dorders.warm.count orders (default 1000). Anything older
+ * is loaded on demand by the repository's loader. Warmed orders never replace
+ * an order that a request has already put in the repository.
+ */
+class OrderWarmer implements Runnable {
+    private static final Log log = Log.get("orders");
+
+    private final DatabaseManager databaseManager;
+    private final OrderRepository orderRepository;
+    private final int maxOrders;
+    private final int pageSize;
+
+    OrderWarmer(DatabaseManager databaseManager, OrderRepository orderRepository, int maxOrders, int pageSize) {
+        this.databaseManager = databaseManager;
+        this.orderRepository = orderRepository;
+        this.maxOrders = maxOrders;
+        this.pageSize = Math.max(1, pageSize);
+    }
+
+    static OrderWarmer fromSystemProperties(DatabaseManager databaseManager, OrderRepository orderRepository) {
+        return new OrderWarmer(databaseManager, orderRepository,
+                Integer.getInteger("orders.warm.count", 1000),
+                Integer.getInteger("orders.warm.pageSize", 200));
+    }
+
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        int loaded = 0;
+        Integer before = null;
+        while (loaded < maxOrders) {
+            List<Order> page = databaseManager.loadOrdersPage(before, Math.min(pageSize, maxOrders - loaded));
+            if (page.isEmpty()) break;
+            for (Order order : page) {
+                orderRepository.saveIfAbsent(order);
+            }
+            loaded += page.size();
+            before = page.get(page.size() - 1).getOrderId();
+            log.debug("Warmed {} orders (down to id {})", loaded, before);
+        }
+        log.info("Warmed {} recent orders in {} ms", loaded, (System.nanoTime() - start) / 1_000_000);
+    }
+}
@@ -0,0 +1,160 @@
+package server;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import metrics.Histogram;
+import metrics.Metrics;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * RequestMetrics - filter recording, for every exchange of one context:
+ *
+ * - http_request_seconds{route,method,status}: time until the handler returns
+ * - http_db_seconds / http_handler_seconds{route,method}: that time split into
+ *   database time (connection wait and use, see ConnectionPool) and the rest
+ * - http_request_bytes / http_response_bytes{route,method}: body sizes
+ * - http_requests_in_flight{route}
+ *
+ * The route is the context path, so /api/orders/42 counts as /api/orders and
+ * the number of series stays bounded. A streaming response that goes on
+ * after the handler returns (the order event stream) is counted up to that
+ * point. The filter is added ahead of the overload filter, so rejected
+ * exchanges show up as 503s.
+ */
+class RequestMetrics extends Filter {
+    private static final int MAX_STATUS = 600;
+
+    // Series of one method on this route
+    private final class MethodSeries {
+        final String method;
+        final Histogram db;
+        final Histogram handler;
+        final Histogram requestBytes;
+        final Histogram responseBytes;
+        final AtomicReferenceArray<Histogram> byStatus = new AtomicReferenceArray<>(MAX_STATUS);
+
+        MethodSeries(String method) {
+            this.method = method;
+            this.db = metrics.timer("http_db_seconds", "route", route, "method", method);
+            this.handler = metrics.timer("http_handler_seconds", "route", route, "method", method);
+            this.requestBytes = metrics.histogram("http_request_bytes", "route", route, "method", method);
+            this.responseBytes = metrics.histogram("http_response_bytes", "route", route, "method", method);
+        }
+
+        Histogram latency(int status) {
+            int i = status > 0 && status < MAX_STATUS ? status : 0;
+            Histogram h = byStatus.get(i);
+            if (h == null) {
+                h = metrics.timer("http_request_seconds", "route", route, "method", method,
+                        "status", i == 0 ? "none" : Integer.toString(i));
+                byStatus.set(i, h);
+            }
+            return h;
+        }
+    }
+
+    private final Metrics metrics;
+    private final String route;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Map<String, MethodSeries> methods = new ConcurrentHashMap<>();
+
+    RequestMetrics(Metrics metrics, String route) {
+        this.metrics = metrics;
+        this.route = route;
+        metrics.gauge("http_requests_in_flight", inFlight::get, "route", route);
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        long start = System.nanoTime();
+        long dbBefore = Metrics.getDbNanos();
+        CountingInputStream in = new CountingInputStream(exchange.getRequestBody());
+        CountingOutputStream out = new CountingOutputStream(exchange.getResponseBody());
+        exchange.setStreams(in, out);
+        inFlight.incrementAndGet();
+        try {
+            chain.doFilter(exchange);
+        } finally {
+            inFlight.decrementAndGet();
+            long total = System.nanoTime() - start;
+            long db = Math.min(total, Metrics.getDbNanos() - dbBefore);
+            MethodSeries series = methods.computeIfAbsent(exchange.getRequestMethod(), MethodSeries::new);
+            series.latency(exchange.getResponseCode()).record(total);
+            series.db.record(db);
+            series.handler.record(total - db);
+            series.requestBytes.record(in.count);
+            series.responseBytes.record(out.count);
+        }
+    }
+
+    @Override
+    public String description() {
+        return "Records latency, database time and body sizes for " + route;
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream implements ZeroCopyBody {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void transferFrom(FileChannel file, long position, long length) throws IOException {
+            ZeroCopyBody.transfer(out, file, position, length);
+            count += length;
+        }
+
+        @Override
+        public void write(ByteBuffer data) throws IOException {
+            int length = data.remaining();
+            ZeroCopyBody.write(out, data);
+            count += length;
+        }
+    }
+}
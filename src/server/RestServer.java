@@ -6,12 +6,24 @@ import com.sun.net.httpserver.HttpExchange;
 
 import domain.MenuItem;
 import domain.MenuItemFactory;
+import domain.Money;
 import domain.Order;
+import domain.OrderLine;
 import exceptions.InvalidOrderException;
+import exceptions.JsonParseException;
+import json.JsonReader;
+import json.JsonWriter;
 import repository.MenuItemRepository;
 import repository.OrderRepository;
 import controller.OrderController;
 import service.DatabaseManager;
+import service.OrderChangeLog;
+import service.OrderIdAllocator;
+import service.OrderJournal;
+import service.OrderQuery;
+import service.OrderWriteBehind;
+import logging.Log;
+import metrics.Metrics;
 
 import java.io.*;
 import java.net.InetSocketAddress;
@@ -24,47 +36,64 @@ import java.util.List;
  * RestServer - HTTP Server with REST API endpoints and static file serving
  */
 public class RestServer {
+    private static final Log log = Log.get("server");
     private static OrderRepository orderRepository;
     private static MenuItemRepository menuRepository;
     private static DatabaseManager databaseManager;
+    private static OrderWriteBehind writeBehind;   // null unless -Dorders.writeBehind=true
+    private static OrderChangeLog orderChanges;
+    private static OrderEventBus orderEvents;
     private static final int PORT = 8080;
     private static final String ADMIN_KEY = "meowadmin";
-    
-    // Database credentials
-    private static final String DB_URL = "jdbc:postgresql://localhost:5432/restaurant_db";
-    private static final String DB_USER = "postgres";
-    private static final String DB_PASSWORD = "soyarud";
 
     public static void main(String[] args) throws IOException {
+        long startNanos = System.nanoTime();
+
         // Initialize repositories and controller
         orderRepository = new OrderRepository();
         menuRepository = new MenuItemRepository();
         new OrderController(orderRepository, menuRepository);
         databaseManager = new DatabaseManager();
 
-        // Load existing orders from database into in-memory repository
-        try {
-            List<Order> dbOrders = databaseManager.loadOrders();
-            int maxId = 0;
-            for (Order o : dbOrders) {
-                orderRepository.save(o);
-                if (o.getOrderId() > maxId) maxId = o.getOrderId();
-            }
-            if (maxId > 0) {
-                orderRepository.setNextId(maxId + 1);
-            }
-            System.out.println("[Startup] Loaded " + dbOrders.size() + " orders from DB into repository");
-        } catch (Exception e) {
-            System.err.println("[Startup] Failed to load orders from DB: " + e.getMessage());
-        }
+        // Orders are not loaded up front: recent ones are warmed after the server
+        // starts, older ones are read from the database when first asked for
+        orderRepository.setLoader(databaseManager::loadOrder);
+
+        // All new order ids are leased in blocks from the orders sequence
+        orderRepository.setIdSource(OrderIdAllocator.fromSystemProperties(databaseManager)::next);
 
         // Ensure DB sequence for orders.id is in sync with max(id)
         try {
             databaseManager.syncOrderSequence();
         } catch (Exception e) {
-            System.err.println("[Startup] Failed to sync order sequence: " + e.getMessage());
+            log.warn("Failed to sync order sequence: {}", e.getMessage());
+        }
+
+        // Write-behind mode: orders are acknowledged once journaled and reach the database
+        // in the background; orders left in the journal by the last run are served again
+        List<OrderJournal.Entry> replayed = List.of();
+        writeBehind = OrderWriteBehind.fromSystemProperties(databaseManager);
+        if (writeBehind != null) {
+            replayed = writeBehind.start();
+            for (OrderJournal.Entry entry : replayed) {
+                orderRepository.save(entry.order());
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    writeBehind.close();
+                } catch (IOException e) {
+                    log.warn("Closing order journal failed: {}", e.getMessage());
+                }
+            }, "order-journal-close"));
         }
 
+        // The change log continues from the newest recorded changes, including
+        // journaled orders whose change rows are not in the database yet
+        databaseManager.ensureOrderChangesTable();
+        orderChanges = loadOrderChangeLog(replayed);
+        orderEvents = OrderEventBus.fromSystemProperties(orderChanges, OrderApiHandler::changeRow,
+                OrderApiHandler::cachedChangeRow);
+
         // Optional: Recreate tables with merged schema (uncomment to reset database)
         // databaseManager.recreateTables();
 
@@ -81,34 +110,100 @@ public class RestServer {
         menuRepository.save(MenuItemFactory.create(10, "Red Wine", "100 years wine", 1000.00, "Drink"));
         menuRepository.save(MenuItemFactory.create(11, "Botol of Water", "Water", 1.00, "Drink"));
 
-        // Create HTTP server
-        HttpServer server = HttpServer.create(new InetSocketAddress(PORT), 0);
+        // Create HTTP server: the JDK one, or the NIO engine with -Dserver.engine=nio
+        HttpServer server = NioHttpServer.fromSystemProperties(new InetSocketAddress(PORT), 0);
 
         // API endpoints
-        server.createContext("/api/menu", new MenuApiHandler());
-        server.createContext("/api/orders", new OrderApiHandler());
-        server.createContext("/api/admin/sync-sequence", new SyncSequenceHandler());
+        createContext(server, "/api/menu", new MenuApiHandler());
+        createContext(server, "/api/orders", new OrderApiHandler());
+        createContext(server, "/api/admin/sync-sequence", new SyncSequenceHandler());
+        createContext(server, "/api/admin/pool", new PoolStatsHandler());
+        createContext(server, "/api/admin/metrics", new MetricsHandler());
+        registerMetrics(Metrics.global());
+
+        // Static file serving from memory; the known asset folders are loaded up front
+        StaticAssetCache staticAssets = StaticAssetCache.fromSystemProperties();
+        staticAssets.preload("index.html", "styles.css", "scripts", "images");
+        createContext(server, "/", new StaticFileHandler(staticAssets));
+
+        // Handlers block on JDBC, so they run on a worker executor rather than the dispatcher thread
+        server.setExecutor(ServerExecutors.fromSystemProperties());
+        server.start();
 
-        // Static file serving
-        server.createContext("/", new StaticFileHandler());
+        log.info("Server ready in {} ms ({} ms since JVM start)",
+                (System.nanoTime() - startNanos) / 1_000_000,
+                java.lang.management.ManagementFactory.getRuntimeMXBean().getUptime());
+
+        // Index creation can take a while on a large table, so it runs with the warm-up
+        Thread warmer = new Thread(() -> {
+            databaseManager.ensureOrderIndexes();
+            databaseManager.pruneOrderChanges(Math.max(Integer.getInteger("orders.changes.retain", 100_000),
+                    OrderChangeLog.historySizeFromSystemProperties()));
+            OrderWarmer.fromSystemProperties(databaseManager, orderRepository).run();
+        }, "order-warmer");
+        warmer.setDaemon(true);
+        warmer.start();
+
+        log.info("meow meow restaurant");
+        log.info("Server running on port: {} (engine: {}, executor: {})", PORT,
+                NioHttpServer.engineFromSystemProperties(), ServerExecutors.modeFromSystemProperties());
+        log.info("Open in browser: http://localhost:{}", PORT);
+        log.info("Database: restaurant_db on localhost:5432 (schema: {})", databaseManager.getSchemaMode());
+        if (writeBehind != null) {
+            log.info("Orders: write-behind, journal {}", System.getProperty("orders.journal", "orders.journal"));
+        }
+        log.info("API Endpoints:");
+        log.info("GET  /api/menu         - Get all menu items");
+        log.info("POST /api/orders       - Create new order");
+        log.info("GET  /api/orders       - Get all orders");
+        log.info("GET  /api/orders?after=&limit=&from=&to=&customer= - Get one page of orders");
+        log.info("GET  /api/orders?sinceVersion=N - Order changes since version N");
+        log.info("GET  /api/orders/stream - Order changes as Server-Sent Events");
+        log.info("PUT  /api/orders/{id}/status - Change an order's status (admin)");
+        log.info("GET  /api/admin/pool   - Connection pool stats (admin)");
+        log.info("GET  /api/admin/metrics[?format=prometheus] - Latency, DB time and JVM metrics (admin)");
+    }
 
-        server.setExecutor(null);
-        server.start();
+    // Gauges read from the components when metrics are exported
+    private static void registerMetrics(Metrics metrics) {
+        metrics.registerJvmMetrics();
+        metrics.gauge("db_pool_active", () -> databaseManager.getPoolStats().active);
+        metrics.gauge("db_pool_idle", () -> databaseManager.getPoolStats().idle);
+        metrics.gauge("db_pool_waiting", () -> databaseManager.getPoolStats().waiting);
+        metrics.counter("db_pool_timeouts_total", () -> databaseManager.getPoolStats().timeouts);
+        metrics.counter("http_rejected_total", ServerExecutors::getRejectedCount);
+        metrics.gauge("orders_change_version", orderChanges::latestVersion);
+        metrics.gauge("orders_event_subscribers", orderEvents::subscriberCount);
+        if (writeBehind != null) {
+            metrics.gauge("orders_write_behind_pending", writeBehind::getPendingCount);
+        }
+    }
 
-        System.out.println("meow meow restaurant");
-        System.out.println("Server running on port: " + PORT);
-        System.out.println("Open in browser: http://localhost:" + PORT);
-        System.out.println("Database: restaurant_db on localhost:5432");
-        System.out.println("API Endpoints:");
-        System.out.println("GET  /api/menu         - Get all menu items");
-        System.out.println("POST /api/orders       - Create new order");
-        System.out.println("GET  /api/orders       - Get all orders");
+    private static OrderChangeLog loadOrderChangeLog(List<OrderJournal.Entry> replayed) {
+        int historySize = OrderChangeLog.historySizeFromSystemProperties();
+        java.util.TreeMap<Long, OrderChangeLog.Change> recent = new java.util.TreeMap<>();
+        for (OrderChangeLog.Change change : databaseManager.loadRecentOrderChanges(historySize)) {
+            recent.put(change.version(), change);
+        }
+        for (OrderJournal.Entry entry : replayed) {
+            if (entry.version() > 0) {
+                recent.putIfAbsent(entry.version(), new OrderChangeLog.Change(entry.version(),
+                        entry.order().getOrderId(), OrderChangeLog.Op.INSERT, null));
+            }
+        }
+        // Changes before the oldest one loaded may exist but are not known
+        long floor = recent.isEmpty() ? 0 : recent.firstKey() - 1;
+        return new OrderChangeLog(historySize, new java.util.ArrayList<>(recent.values()), floor);
     }
 
     /**
      * Handler for menu API endpoints - queries PostgreSQL database
      */
     static class MenuApiHandler implements HttpHandler {
+        private static final Log log = Log.get("menu");
+        // Serialized menu, invalidated by the admin create/update/delete handlers
+        private final MenuCache menuCache = new MenuCache();
+
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             addCORSHeaders(exchange);
@@ -116,7 +211,7 @@ public class RestServer {
             String method = exchange.getRequestMethod();
             String path = exchange.getRequestURI().getPath();
 
-            System.out.println("[MenuAPI] " + method + " " + path);
+            log.debug("{} {}", method, path);
 
             try {
                 if ("GET".equals(method)) {
@@ -133,38 +228,37 @@ public class RestServer {
                     sendErrorResponse(exchange, 405, "Method not allowed");
                 }
             } catch (Exception e) {
-                System.err.println("[MenuAPI] Error: " + e.getMessage());
-                e.printStackTrace();
+                log.error("Error: " + e.getMessage(), e);
                 sendErrorResponse(exchange, 500, "Internal server error: " + e.getMessage());
             }
         }
 
-        private boolean isAdmin(HttpExchange exchange) {
-            java.util.List<String> vals = exchange.getRequestHeaders().get("X-Admin-Key");
-            if (vals == null || vals.isEmpty()) return false;
-            return ADMIN_KEY.equals(vals.get(0));
-        }
-
         private void handleCreateMenuItem(HttpExchange exchange) throws IOException {
             if (!isAdmin(exchange)) {
                 sendErrorResponse(exchange, 403, "Admin key required");
                 return;
             }
 
-            String body = readRequestBody(exchange);
-            String name = extractJsonString(body, "name");
-            String description = extractJsonString(body, "description");
-            String category = extractJsonString(body, "category");
-            double price = extractJsonNumber(body, "price");
+            MenuItemBody body;
+            try {
+                body = parseMenuItemBody(exchange.getRequestBody());
+            } catch (JsonParseException e) {
+                sendErrorResponse(exchange, 400, "Invalid JSON: " + e.getMessage());
+                return;
+            }
+            String name = body.name;
 
-            int id = databaseManager.createMenuItem(name, description, price, category);
+            int id = databaseManager.createMenuItem(name, body.description, body.priceCents, body.category);
             if (id == -1) {
                 sendErrorResponse(exchange, 500, "Failed to create menu item");
                 return;
             }
+            menuCache.invalidate();
 
-            String json = String.format("{\"id\":%d,\"name\":\"%s\"}", id, escapeJson(name));
-            sendJsonResponse(exchange, json, 201);
+            try (JsonWriter json = JsonWriter.pooled()) {
+                json.beginObject().name("id").value(id).name("name").value(name).endObject();
+                sendJson(exchange, json, 201);
+            }
         }
 
         private void handleUpdateMenuItem(HttpExchange exchange, String path) throws IOException {
@@ -181,20 +275,19 @@ public class RestServer {
             String idPart = parts[parts.length - 1];
             try {
                 int id = Integer.parseInt(idPart);
-                String body = readRequestBody(exchange);
-                String name = extractJsonString(body, "name");
-                String description = extractJsonString(body, "description");
-                String category = extractJsonString(body, "category");
-                double price = extractJsonNumber(body, "price");
+                MenuItemBody body = parseMenuItemBody(exchange.getRequestBody());
 
-                boolean ok = databaseManager.updateMenuItem(id, name, description, price, category);
+                boolean ok = databaseManager.updateMenuItem(id, body.name, body.description, body.priceCents, body.category);
                 if (ok) {
+                    menuCache.invalidate();
                     sendJsonResponse(exchange, "{\"updated\":true}", 200);
                 } else {
                     sendErrorResponse(exchange, 404, "Menu item not found");
                 }
             } catch (NumberFormatException e) {
                 sendErrorResponse(exchange, 400, "Invalid id");
+            } catch (JsonParseException e) {
+                sendErrorResponse(exchange, 400, "Invalid JSON: " + e.getMessage());
             }
         }
 
@@ -212,77 +305,96 @@ public class RestServer {
             try {
                 int id = Integer.parseInt(idPart);
                 boolean ok = databaseManager.deleteMenuItem(id);
-                if (ok) sendJsonResponse(exchange, String.format("{\"deleted\":%d}", id), 200);
-                else sendErrorResponse(exchange, 404, "Menu item not found");
+                if (ok) {
+                    menuCache.invalidate();
+                    sendJsonResponse(exchange, "{\"deleted\":" + id + "}", 200);
+                } else {
+                    sendErrorResponse(exchange, 404, "Menu item not found");
+                }
             } catch (NumberFormatException e) {
                 sendErrorResponse(exchange, 400, "Invalid id");
             }
         }
 
         private void handleGetMenu(HttpExchange exchange) throws IOException {
-            String json = getMenuFromDatabase();
-            System.out.println("[MenuAPI] Returning menu data from database");
-            sendJsonResponse(exchange, json, 200);
+            MenuCache.Entry entry = menuCache.get(this::getMenuFromDatabase);
+            if (entry == null) {
+                // Database unavailable: serve the in-memory menu, uncached so we retry the DB next time
+                sendJsonBytes(exchange, getMenuFromRepository(), 200);
+                return;
+            }
+
+            exchange.getResponseHeaders().set("ETag", entry.etag);
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            if (etagMatches(exchange.getRequestHeaders().getFirst("If-None-Match"), entry.etag)) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            sendJsonBytes(exchange, entry.json, 200);
         }
 
-        private String getMenuFromDatabase() {
-            StringBuilder json = new StringBuilder("[");
+        // Returns null if the database cannot be read
+        private byte[] getMenuFromDatabase() {
+            int count = 0;
             
-            try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD)) {
+            try (Connection conn = databaseManager.getConnection();
+                 JsonWriter json = JsonWriter.pooled()) {
                 String query = "SELECT id, name, description, price, category FROM menu_items ORDER BY id";
                 PreparedStatement stmt = conn.prepareStatement(query);
                 ResultSet rs = stmt.executeQuery();
                 
-                boolean first = true;
+                json.beginArray();
                 while (rs.next()) {
-                    if (!first) json.append(",");
-                    
                     int id = rs.getInt("id");
                     String name = rs.getString("name");
                     String description = rs.getString("description");
-                    double price = rs.getDouble("price");
+                    long price = Money.fromBigDecimal(rs.getBigDecimal("price"));
                     String category = rs.getString("category");
                     
-                    json.append("{")
-                        .append("\"id\":").append(id).append(",")
-                        .append("\"name\":\"").append(escapeJson(name)).append("\",")
-                        .append("\"description\":\"").append(escapeJson(description)).append("\",")
-                        .append("\"price\":").append(String.format(java.util.Locale.US, "%.2f", price)).append(",")
-                        .append("\"category\":\"").append(escapeJson(category)).append("\"")
-                        .append("}");
-                    
-                    first = false;
-                    System.out.println("[MenuAPI] Loaded: " + id + " | " + name + " | Category: " + category + " | Price: $" + price);
+                    writeMenuItemJson(json, id, name, description, price, category);
+                    count++;
+                    if (log.isDebugEnabled()) {
+                        log.debug("Loaded: {} | {} | Category: {} | Price: ${}", id, name, category, Money.format(price));
+                    }
                 }
+                json.endArray();
                 
                 rs.close();
                 stmt.close();
+                log.info("Menu cached, total items: {}", count);
+                return json.toByteArray();
             } catch (SQLException e) {
-                System.err.println("[MenuAPI] Database error: " + e.getMessage());
-                System.err.println("[MenuAPI] Falling back to in-memory menu repository");
-                
-                // Fallback to in-memory repository
-                boolean first = true;
+                log.warn("Database error: {}", e.getMessage());
+                return null;
+            }
+        }
+
+        private byte[] getMenuFromRepository() {
+            log.warn("Falling back to in-memory menu repository");
+            try (JsonWriter json = JsonWriter.pooled()) {
+                json.beginArray();
                 for (MenuItem item : menuRepository.getAll()) {
-                    if (!first) json.append(",");
-                    
-                    json.append("{")
-                        .append("\"id\":").append(item.getId()).append(",")
-                        .append("\"name\":\"").append(escapeJson(item.getName())).append("\",")
-                        .append("\"description\":\"").append(escapeJson(item.getDescription())).append("\",")
-                        .append("\"price\":").append(String.format(java.util.Locale.US, "%.2f", item.getPrice())).append(",")
-                        .append("\"category\":\"").append(escapeJson(item.getCategory())).append("\"")
-                        .append("}");
-                    
-                    first = false;
-                    System.out.println("[MenuAPI] Loaded (from memory): " + item.getId() + " | " + item.getName() + " | Category: " + item.getCategory() + " | Price: $" + item.getPrice());
+                    writeMenuItemJson(json, item.getId(), item.getName(), item.getDescription(),
+                            item.getPriceCents(), item.getCategory());
+                    if (log.isDebugEnabled()) {
+                        log.debug("Loaded (from memory): {} | {} | Category: {} | Price: ${}", item.getId(), item.getName(), item.getCategory(), Money.format(item.getPriceCents()));
+                    }
                 }
+                return json.endArray().toByteArray();
             }
-            
-            json.append("]");
-            String result = json.toString();
-            System.out.println("[MenuAPI] Total items returned: " + (result.split("\"id\":").length - 1));
-            return result;
+        }
+
+        // Missing text fields are sent as "" rather than null, as clients expect
+        private static void writeMenuItemJson(JsonWriter json, int id, String name, String description,
+                                              long priceCents, String category) {
+            json.beginObject()
+                .name("id").value(id)
+                .name("name").value(name == null ? "" : name)
+                .name("description").value(description == null ? "" : description)
+                .name("price").valueCents(priceCents)
+                .name("category").value(category == null ? "" : category)
+                .endObject();
         }
     }
 
@@ -290,6 +402,11 @@ public class RestServer {
      * Handler for order API endpoints
      */
     static class OrderApiHandler implements HttpHandler {
+        private static final Log log = Log.get("orders");
+        private static final java.util.Set<String> ORDER_STATUSES = java.util.Set.of("NEW", "IN PROGRESS", "COMPLETED");
+        private static final long EVENT_HEARTBEAT_MILLIS = Long.getLong("orders.events.heartbeatSeconds", 15) * 1000;
+        private static final byte[] HEARTBEAT = ": ping\n\n".getBytes(StandardCharsets.UTF_8);
+        private static final byte[] EVENT_END = "\n\n".getBytes(StandardCharsets.UTF_8);
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             addCORSHeaders(exchange);
@@ -298,10 +415,14 @@ public class RestServer {
             String path = exchange.getRequestURI().getPath();
 
             try {
-                if ("GET".equals(method)) {
+                if ("GET".equals(method) && path.endsWith("/stream")) {
+                    handleOrderStream(exchange);
+                } else if ("GET".equals(method)) {
                     handleGetOrders(exchange, path);
                 } else if ("POST".equals(method)) {
                     handleCreateOrder(exchange);
+                } else if ("PUT".equals(method) && path.endsWith("/status")) {
+                    handleSetStatus(exchange, path);
                 } else if ("DELETE".equals(method)) {
                     handleDeleteOrder(exchange, path);
                 } else if ("OPTIONS".equals(method)) {
@@ -309,11 +430,212 @@ public class RestServer {
                 } else {
                     sendErrorResponse(exchange, 405, "Method not allowed");
                 }
+            } catch (ResponseAbortedException e) {
+                throw e; // headers are already sent: only dropping the connection tells the client
             } catch (Exception e) {
                 sendErrorResponse(exchange, 500, "Internal server error: " + e.getMessage());
             }
         }
 
+        /**
+         * GET /api/orders/stream: order changes as Server-Sent Events
+         * (order-created, order-updated, order-deleted), with the change
+         * version as the event id. Resumes after the id in
+         * the Last-Event-ID header or the lastEventId parameter; if that is not
+         * possible, a single `reset` event tells the client to reload the list.
+         */
+        private void handleOrderStream(HttpExchange exchange) throws IOException {
+            String resume = exchange.getRequestHeaders().getFirst("Last-Event-ID");
+            if (resume == null) resume = parseQueryParams(exchange.getRequestURI().getRawQuery()).get("lastEventId");
+            long lastEventId = -1;
+            if (resume != null && !resume.isBlank()) {
+                try {
+                    lastEventId = Long.parseLong(resume.trim());
+                } catch (NumberFormatException e) {
+                    sendErrorResponse(exchange, 400, "Invalid lastEventId");
+                    return;
+                }
+            }
+
+            // Before the headers, so a backlog row that cannot be read still gets an error response
+            OrderEventBus.Subscriber subscriber = orderEvents.subscribe(lastEventId);
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=UTF-8");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            try {
+                exchange.sendResponseHeaders(200, 0);
+            } catch (IOException e) {
+                if (subscriber != null) subscriber.close();
+                throw e;
+            }
+            // A virtual thread writes the stream, so an open connection does not hold a handler thread
+            Thread.ofVirtual().name("order-stream").start(() -> streamOrderEvents(exchange, subscriber));
+        }
+
+        private static void streamOrderEvents(HttpExchange exchange, OrderEventBus.Subscriber subscriber) {
+            OutputStream os = exchange.getResponseBody();
+            try (os) {
+                if (subscriber == null) {
+                    os.write(("retry: 3000\nid: " + orderEvents.lastEventId() + "\nevent: reset\ndata: {}\n\n")
+                            .getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+                try (subscriber) {
+                    os.write("retry: 3000\n\n".getBytes(StandardCharsets.UTF_8));
+                    os.flush();
+                    while (true) {
+                        OrderEventBus.Event event = subscriber.poll(EVENT_HEARTBEAT_MILLIS, java.util.concurrent.TimeUnit.MILLISECONDS);
+                        if (event == null) {
+                            if (subscriber.isClosed()) return; // dropped as too slow; the client reconnects and resumes
+                            os.write(HEARTBEAT);
+                        }
+                        for (; event != null; event = subscriber.poll()) {
+                            os.write(("id: " + event.id() + "\nevent: " + event.type() + "\ndata: ")
+                                    .getBytes(StandardCharsets.UTF_8));
+                            os.write(event.data());
+                            os.write(EVENT_END);
+                        }
+                        os.flush();
+                    }
+                }
+            } catch (IOException e) {
+                log.debug("Order stream closed: {}", e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /** PUT /api/orders/{id}/status with {"status":"IN PROGRESS"}; admin only. */
+        private void handleSetStatus(HttpExchange exchange, String path) throws IOException {
+            if (!isAdmin(exchange)) {
+                sendErrorResponse(exchange, 403, "Admin key required");
+                return;
+            }
+            String[] parts = path.split("/");
+            int id;
+            try {
+                id = Integer.parseInt(parts[parts.length - 2]);
+            } catch (NumberFormatException e) {
+                sendErrorResponse(exchange, 400, "Invalid order id");
+                return;
+            }
+
+            String status = null;
+            try {
+                JsonReader reader = new JsonReader(exchange.getRequestBody());
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (reader.nextName().equals("status")) {
+                        status = reader.nextString().trim().toUpperCase();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } catch (JsonParseException e) {
+                sendErrorResponse(exchange, 400, "Invalid JSON: " + e.getMessage());
+                return;
+            }
+            if (status == null || !ORDER_STATUSES.contains(status)) {
+                sendErrorResponse(exchange, 400, "Status must be one of " + ORDER_STATUSES);
+                return;
+            }
+
+            Order order = orderRepository.findById(id);
+            if (order == null) {
+                sendErrorResponse(exchange, 404, "Order not found");
+                return;
+            }
+            // Status lives in memory only; without its change row a restart just forgets the update
+            long version = orderChanges.reserve();
+            databaseManager.recordOrderChange(version, id, OrderChangeLog.Op.UPDATE);
+            order.setStatus(status);
+            // An update carries only the fields that changed
+            try (JsonWriter json = JsonWriter.pooled()) {
+                json.beginObject().name("id").value(id).name("status").value(status).endObject();
+                orderChanges.commit(version, id, OrderChangeLog.Op.UPDATE, json.toByteArray());
+            }
+            try (JsonWriter json = JsonWriter.pooled()) {
+                writeOrderJson(json, order);
+                sendJson(exchange, json, 200);
+            }
+        }
+
+        // Same shape as the rows of GET /api/orders, so clients can add it to the list as is;
+        // orderDate is left out when not known
+        private static String now() {
+            return String.valueOf(new Timestamp(System.currentTimeMillis()));
+        }
+
+        private static byte[] orderRow(Order order, String orderDate) {
+            try (JsonWriter json = JsonWriter.pooled()) {
+                json.beginObject()
+                    .name("id").value(order.getOrderId())
+                    .name("customer").value(order.getCustomerName());
+                if (orderDate != null) json.name("orderDate").value(orderDate);
+                json.name("items").beginArray();
+                for (OrderLine line : order.getLines()) {
+                    json.beginObject()
+                        .name("id").value(line.getMenuItemId())
+                        .name("name").value(line.getName() == null ? "" : line.getName())
+                        .name("quantity").value(line.getQuantity())
+                        .name("price").valueCents(line.getUnitPriceCents())
+                        .endObject();
+                }
+                json.endArray()
+                    .name("price").valueCents(order.getTotalCents())
+                    .name("itemCount").value(order.getItemCount())
+                    .name("status").value(order.getStatus())
+                    .endObject();
+                return json.toByteArray();
+            }
+        }
+
+        /**
+         * The newest version whose changes are all in the database, for
+         * labelling a read of it. Write-behind orders that are accepted but
+         * not flushed hold it back, so a client resuming from it still gets
+         * their inserts from the change log.
+         */
+        private static long flushedVersion() {
+            // Latest first: an order is pending before its version is committed
+            long version = orderChanges.latestVersion();
+            if (writeBehind != null) version = Math.min(version, writeBehind.oldestPendingVersion() - 1);
+            return version;
+        }
+
+        // Statuses live in memory only; an order that was never loaded still has the initial one
+        private static String currentStatus(int orderId) {
+            Order order = orderRepository.findCached(orderId);
+            return order == null ? "NEW" : order.getStatus();
+        }
+
+        /**
+         * The JSON of a change: its own row, `{"id":N}` for a delete, or for a
+         * change loaded from the database the order as it is now (null if it
+         * is gone, in which case a later delete covers it).
+         */
+        static byte[] changeRow(OrderChangeLog.Change change) {
+            return changeRow(change, true);
+        }
+
+        /**
+         * As changeRow, for a change published while the change log is locked:
+         * an order that is not cached is skipped rather than read from the
+         * database, so a slow query never holds up every order write.
+         */
+        static byte[] cachedChangeRow(OrderChangeLog.Change change) {
+            return changeRow(change, false);
+        }
+
+        private static byte[] changeRow(OrderChangeLog.Change change, boolean load) {
+            if (change.row() != null) return change.row();
+            if (change.op() == OrderChangeLog.Op.DELETE) {
+                return ("{\"id\":" + change.orderId() + "}").getBytes(StandardCharsets.UTF_8);
+            }
+            Order order = load ? orderRepository.findById(change.orderId()) : orderRepository.findCached(change.orderId());
+            return order == null ? null : orderRow(order, null);
+        }
+
         private void handleDeleteOrder(HttpExchange exchange, String path) throws IOException {
             // Expecting path like /api/orders/{id}
             String[] parts = path.split("/");
@@ -326,13 +648,27 @@ public class RestServer {
             try {
                 int id = Integer.parseInt(idPart);
 
-                boolean dbDeleted = databaseManager.deleteOrder(id);
+                long version = orderChanges.reserve();
+                // A journaled order still waiting for the flusher must never reach the database
+                try {
+                    if (writeBehind != null) writeBehind.cancel(id, version);
+                } catch (IOException e) {
+                    orderChanges.abort(version);
+                    sendErrorResponse(exchange, 500, "Failed to record delete: " + e.getMessage());
+                    return;
+                }
+                boolean dbDeleted = databaseManager.deleteOrder(id, version);
                 boolean memDeleted = orderRepository.deleteById(id);
+                // An order only in memory (not flushed yet) still needs its change row
+                if (!dbDeleted && memDeleted) {
+                    databaseManager.recordOrderChange(version, id, OrderChangeLog.Op.DELETE);
+                }
 
                 if (dbDeleted || memDeleted) {
-                    String json = String.format("{\"deleted\":%d}", id);
-                    sendJsonResponse(exchange, json, 200);
+                    orderChanges.commit(version, id, OrderChangeLog.Op.DELETE, null);
+                    sendJsonResponse(exchange, "{\"deleted\":" + id + "}", 200);
                 } else {
+                    orderChanges.abort(version);
                     sendErrorResponse(exchange, 404, "Order not found");
                 }
             } catch (NumberFormatException e) {
@@ -340,85 +676,212 @@ public class RestServer {
             }
         }
 
+        /**
+         * GET /api/orders returns the full history as an array (legacy form).
+         * With any of after, limit, from, to (yyyy-MM-dd) or customer it returns
+         * one keyset page: {"orders":[...],"limit":N,"nextAfter":id|null};
+         * pass nextAfter back as `after` to fetch the next page. With from or
+         * to the page is ordered by order date, so the date index serves it,
+         * and also has "nextAfterDate", to pass back as `afterDate`.
+         * With sinceVersion it returns the changes after that version instead
+         * (see handleOrderChanges).
+         */
         private void handleGetOrders(HttpExchange exchange, String path) throws IOException {
-            String json = databaseManager.getAllOrdersAsJson();
-            sendJsonResponse(exchange, json, 200);
+            java.util.Map<String, String> params = parseQueryParams(exchange.getRequestURI().getRawQuery());
+            if (params.containsKey("sinceVersion")) {
+                handleOrderChanges(exchange, params.get("sinceVersion"));
+                return;
+            }
+            if (!params.containsKey("after") && !params.containsKey("limit") && !params.containsKey("from")
+                    && !params.containsKey("to") && !params.containsKey("customer")) {
+                // Taken before the read: events after this id may already be in the list, none are missing
+                exchange.getResponseHeaders().set("X-Last-Event-Id", Long.toString(flushedVersion()));
+                sendStreamingJsonResponse(exchange, 200,
+                        out -> databaseManager.writeAllOrdersJson(out, OrderApiHandler::currentStatus));
+                return;
+            }
+
+            OrderQuery query;
+            try {
+                query = new OrderQuery(
+                    params.containsKey("after") ? Integer.valueOf(params.get("after")) : null,
+                    params.containsKey("afterDate") ? java.time.LocalDateTime.parse(params.get("afterDate")) : null,
+                    params.containsKey("limit") ? Integer.parseInt(params.get("limit")) : OrderQuery.DEFAULT_LIMIT,
+                    params.containsKey("from") ? java.time.LocalDate.parse(params.get("from")) : null,
+                    params.containsKey("to") ? java.time.LocalDate.parse(params.get("to")) : null,
+                    params.get("customer"));
+            } catch (IllegalArgumentException | java.time.format.DateTimeParseException e) {
+                sendErrorResponse(exchange, 400, "Invalid query parameter: " + e.getMessage());
+                return;
+            }
+
+            sendStreamingJsonResponse(exchange, 200,
+                    out -> databaseManager.writeOrdersPageJson(query, out, OrderApiHandler::currentStatus));
+        }
+
+        /**
+         * GET /api/orders?sinceVersion=N: the order changes after version N,
+         * oldest first, as
+         * {"version":V,"full":false,"changes":[{"version":..,"op":"insert"|"update","order":{..}} | {"version":..,"op":"delete","id":..}]}.
+         * An update carries only the fields that changed. If N is older than
+         * the change log keeps (or unknown) the reply is a full snapshot
+         * instead: {"version":V,"full":true,"orders":[...]}. Either way the
+         * client continues from V.
+         */
+        private void handleOrderChanges(HttpExchange exchange, String sinceParam) throws IOException {
+            long since;
+            try {
+                since = Long.parseLong(sinceParam.trim());
+            } catch (NumberFormatException e) {
+                sendErrorResponse(exchange, 400, "Invalid sinceVersion");
+                return;
+            }
+
+            List<OrderChangeLog.Change> changes = orderChanges.changesSince(since);
+            if (changes == null) {
+                // Taken before the read: changes after it may already be in the snapshot, none are missing
+                long version = flushedVersion();
+                sendStreamingJsonResponse(exchange, 200, out -> {
+                    out.beginObject()
+                        .name("version").value(version)
+                        .name("full").value(true)
+                        .name("orders");
+                    databaseManager.writeAllOrdersJson(out, OrderApiHandler::currentStatus);
+                    out.endObject();
+                });
+                return;
+            }
+
+            long version = changes.isEmpty() ? since : changes.get(changes.size() - 1).version();
+            try (JsonWriter json = JsonWriter.pooled()) {
+                json.beginObject()
+                    .name("version").value(version)
+                    .name("full").value(false)
+                    .name("changes").beginArray();
+                for (OrderChangeLog.Change change : changes) {
+                    byte[] row = changeRow(change);
+                    if (row == null) continue;
+                    json.beginObject()
+                        .name("version").value(change.version())
+                        .name("op").value(change.op().name().toLowerCase());
+                    if (change.op() == OrderChangeLog.Op.DELETE) {
+                        json.name("id").value(change.orderId());
+                    } else {
+                        json.name("order").rawValue(new String(row, StandardCharsets.UTF_8));
+                    }
+                    json.endObject();
+                }
+                json.endArray().endObject();
+                sendJson(exchange, json, 200);
+            }
         }
 
         private void handleCreateOrder(HttpExchange exchange) throws IOException {
-            String body = readRequestBody(exchange);
-            System.out.println("[OrderAPI] Received order request: " + body);
-            
             try {
-                String customerName = extractJsonString(body, "customerName");
-                List<OrderController.OrderItemRequest> items = parseOrderItems(body);
+                OrderBody body = parseOrderBody(exchange.getRequestBody());
+                String customerName = body.customerName;
+                List<OrderController.OrderItemRequest> items = body.items;
                 
-                System.out.println("[OrderAPI] Customer: " + customerName + ", Items: " + items.size());
+                log.debug("Customer: {}, Items: {}", customerName, items.size());
                 
                 // Validate customer name
                 if (customerName == null || customerName.trim().isEmpty()) {
-                    System.err.println("[OrderAPI] ERROR: Customer name is empty");
+                    log.warn("Rejected order: customer name is empty");
                     sendErrorResponse(exchange, 400, "Customer name is required");
                     return;
                 }
                 
                 if (items == null || items.isEmpty()) {
-                    System.err.println("[OrderAPI] ERROR: Items list is empty");
+                    log.warn("Rejected order: items list is empty");
                     sendErrorResponse(exchange, 400, "Order must contain at least one item");
                     return;
                 }
 
                 // Create order with menu items from repository
                 Order order = createOrderFromDatabase(customerName, items);
-                String json = convertOrderToJson(order);
-                System.out.println("[OrderAPI] SUCCESS: Order created - " + json);
-                sendJsonResponse(exchange, json, 201);
+                try (JsonWriter json = JsonWriter.pooled()) {
+                    writeOrderJson(json, order);
+                    if (log.isDebugEnabled()) log.debug("Order created - {}", json.toString());
+                    sendJson(exchange, json, 201);
+                }
             } catch (InvalidOrderException e) {
-                System.err.println("[OrderAPI] ERROR: Invalid order - " + e.getMessage());
+                log.warn("Invalid order - {}", e.getMessage());
                 sendErrorResponse(exchange, 400, "Invalid order: " + e.getMessage());
+            } catch (JsonParseException e) {
+                log.warn("Rejected order: malformed JSON - {}", e.getMessage());
+                sendErrorResponse(exchange, 400, "Invalid JSON: " + e.getMessage());
             } catch (Exception e) {
-                System.err.println("[OrderAPI] ERROR creating order: " + e.getMessage());
-                e.printStackTrace();
+                log.error("Error creating order: " + e.getMessage(), e);
                 sendErrorResponse(exchange, 400, "Error creating order: " + e.getMessage());
             }
         }
         
         private Order createOrderFromDatabase(String customerName, List<OrderController.OrderItemRequest> items)
         throws InvalidOrderException {
-            // First create order in database to obtain canonical ID
-            int dbOrderId = databaseManager.createOrder(customerName);
-            if (dbOrderId == -1) {
-                throw new InvalidOrderException("Failed to create order in database");
-            }
-
-            Order order = new Order(dbOrderId, customerName);
-            double totalPrice = 0;
-
+            // Resolve every line first so the whole order is written in a single statement
+            List<OrderLine> lines = new java.util.ArrayList<>(items.size());
             for (OrderController.OrderItemRequest itemReq : items) {
+                if (itemReq.quantity <= 0) {
+                    throw new InvalidOrderException("Quantity must be positive for item #" + itemReq.menuItemId);
+                }
                 // Get item from repository
                 MenuItem item = menuRepository.findById(itemReq.menuItemId);
 
                 // If not found in repository, create a placeholder item
                 if (item == null) {
-                    System.out.println("[OrderAPI] Item #" + itemReq.menuItemId + " not in repository, creating placeholder");
+                    log.warn("Item #{} not in repository, creating placeholder", itemReq.menuItemId);
                     item = new MenuItem(itemReq.menuItemId, "Item #" + itemReq.menuItemId, "Menu item", 0.0, "Other");
                 }
+                lines.add(new OrderLine(item, itemReq.quantity));
+            }
 
-                // Add item to order based on quantity
-                for (int i = 0; i < itemReq.quantity; i++) {
-                    order.addItem(item);
-                    totalPrice += item.getPrice();
-                }
+            if (writeBehind != null) {
+                return createJournaledOrder(customerName, lines);
+            }
+
+            // Header, all lines and the change row are created atomically under an id leased from the sequence
+            long version = orderChanges.reserve();
+            int dbOrderId;
+            try {
+                dbOrderId = databaseManager.createOrderWithItems(orderRepository.getNextOrderId(), version, customerName, lines);
+            } catch (RuntimeException e) {
+                // A reserved version must always be resolved, or later changes are held back
+                orderChanges.abort(version);
+                throw e;
+            }
+            if (dbOrderId == -1) {
+                orderChanges.abort(version);
+                throw new InvalidOrderException("Failed to create order in database");
+            }
+
+            Order order = new Order(dbOrderId, customerName);
+            for (OrderLine line : lines) {
+                order.addItem(line.getItem(), line.getQuantity());
+            }
 
-                // Save item to database with item details
-                databaseManager.addItemToOrder(dbOrderId, itemReq.menuItemId, itemReq.quantity, item.getName(), item.getPrice());
+            orderRepository.save(order);
+            orderChanges.commit(version, dbOrderId, OrderChangeLog.Op.INSERT, orderRow(order, now()));
+            log.info("Order created: #{} for {} - Total: ${}", dbOrderId, customerName, Money.format(order.getTotalCents()));
+            return order;
+        }
 
-                System.out.println("[OrderAPI] Added to order: " + item.getName() + " x" + itemReq.quantity);
+        // Write-behind: id from a reserved block, durable in the journal, inserted by the flusher
+        private Order createJournaledOrder(String customerName, List<OrderLine> lines) throws InvalidOrderException {
+            Order order = new Order(orderRepository.getNextOrderId(), customerName);
+            for (OrderLine line : lines) {
+                order.addItem(line.getItem(), line.getQuantity());
+            }
+            long version = orderChanges.reserve();
+            try {
+                writeBehind.persist(order, version);
+            } catch (IOException | RuntimeException e) {
+                orderChanges.abort(version);
+                throw new InvalidOrderException("Failed to record order: " + e.getMessage());
             }
 
-            order.setTotalPrice(totalPrice);
             orderRepository.save(order);
-            System.out.println("[OrderAPI] Order created: #" + dbOrderId + " for " + customerName + " - Total: $" + totalPrice);
+            orderChanges.commit(version, order.getOrderId(), OrderChangeLog.Op.INSERT, orderRow(order, now()));
+            log.info("Order accepted: #{} for {} - Total: ${}", order.getOrderId(), customerName, Money.format(order.getTotalCents()));
             return order;
         }
     }
@@ -454,86 +917,270 @@ public class RestServer {
     }
 
     /**
-     * Handler for static files (HTML, CSS, JS)
+     * Admin endpoint exposing connection pool counters for sizing the pool.
+     * Use with header `X-Admin-Key: meowadmin`.
      */
-    static class StaticFileHandler implements HttpHandler {
+    static class PoolStatsHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             addCORSHeaders(exchange);
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendErrorResponse(exchange, 405, "Method not allowed");
+                return;
+            }
 
-            String path = exchange.getRequestURI().getPath();
+            java.util.List<String> vals = exchange.getRequestHeaders().get("X-Admin-Key");
+            if (vals == null || vals.isEmpty() || !ADMIN_KEY.equals(vals.get(0))) {
+                sendErrorResponse(exchange, 403, "Admin key required");
+                return;
+            }
 
-            if ("/".equals(path)) {
-                serveFile(exchange, "index.html", "text/html");
-            } else {
-                serveFile(exchange, path.substring(1), getMimeType(path));
+            sendJsonResponse(exchange, databaseManager.getPoolStats().toJson(), 200);
+        }
+    }
+
+    /**
+     * Admin endpoint with the Metrics registry: JSON by default, the
+     * Prometheus text format with ?format=prometheus.
+     * Use with header `X-Admin-Key: meowadmin`.
+     */
+    static class MetricsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            addCORSHeaders(exchange);
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendErrorResponse(exchange, 405, "Method not allowed");
+                return;
             }
+            if (!isAdmin(exchange)) {
+                sendErrorResponse(exchange, 403, "Admin key required");
+                return;
+            }
+
+            if ("prometheus".equals(parseQueryParams(exchange.getRequestURI().getRawQuery()).get("format"))) {
+                byte[] body = Metrics.global().toPrometheus().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(body);
+                }
+                return;
+            }
+            try (JsonWriter json = JsonWriter.pooled()) {
+                Metrics.global().writeJson(json);
+                sendJson(exchange, json, 200);
+            }
+        }
+    }
+
+    /**
+     * Handler for static files (HTML, CSS, JS, images)
+     *
+     * A single byte range is answered with 206 Partial Content, honouring
+     * If-Range. Images are sent with a long-lived immutable Cache-Control
+     * (-Dstatic.imageMaxAgeSeconds, default a year), so a changed photo should
+     * be saved under a new name and mapped in images/manifest.json.
+     */
+    static class StaticFileHandler implements HttpHandler {
+        private static final Log log = Log.get("static");
+        private static final long IMAGE_MAX_AGE = Long.getLong("static.imageMaxAgeSeconds", 365L * 24 * 3600);
+        private final StaticAssetCache assets;
+
+        StaticFileHandler(StaticAssetCache assets) {
+            this.assets = assets;
         }
 
-        private void serveFile(HttpExchange exchange, String filePath, String contentType) throws IOException {
-            String projectRoot = System.getProperty("user.dir");
-            java.io.File file = new java.io.File(projectRoot, filePath);
-            String fullPath = file.getAbsolutePath();
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            addCORSHeaders(exchange);
+
+            String method = exchange.getRequestMethod();
+            if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                sendErrorResponse(exchange, 405, "Method not allowed");
+                return;
+            }
 
-            System.out.println("[StaticFile] Serving: " + filePath + " from " + fullPath);
+            String path = exchange.getRequestURI().getPath();
+            serveFile(exchange, "/".equals(path) ? "index.html" : path.substring(1));
+        }
 
+        private void serveFile(HttpExchange exchange, String filePath) throws IOException {
+            java.nio.file.Path file = assets.resolve(filePath);
+            if (file == null) {
+                log.warn("Rejected path outside the web root: {}", filePath);
+                sendErrorResponse(exchange, 404, "File not found");
+                return;
+            }
+
+            StaticAssetCache.Asset asset;
             try {
-                if (!file.exists()) {
-                    System.err.println("[StaticFile] File not found: " + fullPath);
-                    sendErrorResponse(exchange, 404, "File not found");
-                    return;
-                }
-                
-                byte[] fileContent = Files.readAllBytes(file.toPath());
-                exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=UTF-8");
-                exchange.getResponseHeaders().set("Cache-Control", "no-cache");
-                exchange.sendResponseHeaders(200, fileContent.length);
-                OutputStream os = exchange.getResponseBody();
-                os.write(fileContent);
-                os.close();
-                System.out.println("[StaticFile] Successfully served: " + filePath);
+                asset = assets.get(file);
             } catch (IOException e) {
-                System.err.println("[StaticFile] Error reading file: " + e.getMessage());
+                log.error("Error reading file: {}", e.getMessage());
                 sendErrorResponse(exchange, 500, "Error reading file: " + e.getMessage());
+                return;
+            }
+            if (asset == null) {
+                if (Files.isRegularFile(file)) {
+                    serveUncached(exchange, file);
+                } else {
+                    log.debug("File not found: {}", filePath);
+                    sendErrorResponse(exchange, 404, "File not found");
+                }
+                return;
+            }
+
+            boolean gzip = asset.gzip != null && acceptsGzip(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+            String etag = gzip ? asset.gzipEtag : asset.etag;
+
+            com.sun.net.httpserver.Headers headers = exchange.getResponseHeaders();
+            headers.set("Content-Type", asset.contentType);
+            headers.set("Cache-Control", cacheControl(asset.contentType));
+            headers.set("ETag", etag);
+            if (asset.gzip != null) headers.set("Vary", "Accept-Encoding");
+            if (gzip) headers.set("Content-Encoding", "gzip");
+
+            if (etagMatches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            if (asset.identity == null) {
+                // Large binary file: from the page cache to the socket
+                try (java.nio.channels.FileChannel channel = java.nio.channels.FileChannel.open(file)) {
+                    long[] range = startBody(exchange, asset.length, etag, -1);
+                    if (range == null) return;
+                    try (OutputStream os = exchange.getResponseBody()) {
+                        ZeroCopyBody.transfer(os, channel, range[0], range[1]);
+                    }
+                }
+                return;
+            }
+            byte[] body = gzip ? asset.gzip : asset.identity;
+            long[] range = startBody(exchange, body.length, etag, -1);
+            if (range == null) return;
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body, (int) range[0], (int) range[1]);
+            }
+        }
+
+        // Files above the cache size limit are sent from disk, validated by their modification time
+        private void serveUncached(HttpExchange exchange, java.nio.file.Path file) throws IOException {
+            String contentType = StaticAssetCache.contentTypeFor(file.getFileName().toString());
+            long lastModified = Files.getLastModifiedTime(file).toMillis();
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.getResponseHeaders().set("Cache-Control", cacheControl(contentType));
+            exchange.getResponseHeaders().set("Last-Modified", java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME
+                    .format(java.time.Instant.ofEpochMilli(lastModified).atZone(java.time.ZoneOffset.UTC)));
+            try (java.nio.channels.FileChannel channel = java.nio.channels.FileChannel.open(file)) {
+                long[] range = startBody(exchange, channel.size(), null, lastModified);
+                if (range == null) return;
+                try (OutputStream os = exchange.getResponseBody()) {
+                    ZeroCopyBody.transfer(os, channel, range[0], range[1]);
+                }
+            }
+        }
+
+        private static String cacheControl(String contentType) {
+            return contentType.startsWith("image/") ? "public, max-age=" + IMAGE_MAX_AGE + ", immutable" : "no-cache";
+        }
+
+        /**
+         * Send the status line and headers for a body of `length` bytes: 206
+         * for a satisfiable single range (when If-Range, if sent, still names
+         * this version), 416 for an unsatisfiable one, 200 otherwise. Returns
+         * {offset, count} of the bytes to write, or null once the response is
+         * complete (HEAD, 416, empty body).
+         */
+        private static long[] startBody(HttpExchange exchange, long length, String etag, long lastModified)
+                throws IOException {
+            com.sun.net.httpserver.Headers request = exchange.getRequestHeaders();
+            com.sun.net.httpserver.Headers headers = exchange.getResponseHeaders();
+            headers.set("Accept-Ranges", "bytes");
+            int status = 200;
+            long[] range = {0, length};
+            String rangeHeader = request.getFirst("Range");
+            if (rangeHeader != null && "GET".equals(exchange.getRequestMethod())
+                    && ByteRanges.ifRangeMatches(request.getFirst("If-Range"), etag, lastModified)) {
+                long[] requested = ByteRanges.parse(rangeHeader, length);
+                if (requested != null && requested.length == 0) {
+                    headers.set("Content-Range", "bytes */" + length);
+                    exchange.sendResponseHeaders(416, -1);
+                    exchange.close();
+                    return null;
+                }
+                if (requested != null) {
+                    range = requested;
+                    status = 206;
+                    headers.set("Content-Range", "bytes " + range[0] + "-" + (range[0] + range[1] - 1) + "/" + length);
+                }
             }
+            if ("HEAD".equals(exchange.getRequestMethod()) || range[1] == 0) {
+                exchange.sendResponseHeaders(status, -1);
+                exchange.close();
+                return null;
+            }
+            exchange.sendResponseHeaders(status, range[1]);
+            return range;
         }
 
-        private String getMimeType(String path) {
-            if (path.endsWith(".html")) return "text/html";
-            if (path.endsWith(".css")) return "text/css";
-            if (path.endsWith(".js")) return "text/javascript";
-            if (path.endsWith(".json")) return "application/json";
-            if (path.endsWith(".png")) return "image/png";
-            if (path.endsWith(".jpg") || path.endsWith(".jpeg")) return "image/jpeg";
-            if (path.endsWith(".gif")) return "image/gif";
-            if (path.endsWith(".svg")) return "image/svg+xml";
-            if (path.endsWith(".webp")) return "image/webp";
-            if (path.endsWith(".ico")) return "image/x-icon";
-            return "application/octet-stream";
+        // True unless gzip is absent from Accept-Encoding or explicitly refused with q=0
+        static boolean acceptsGzip(String acceptEncoding) {
+            if (acceptEncoding == null) return false;
+            for (String part : acceptEncoding.split(",")) {
+                String[] params = part.trim().split(";");
+                String coding = params[0].trim();
+                if (!coding.equalsIgnoreCase("gzip") && !coding.equals("*")) continue;
+                for (int i = 1; i < params.length; i++) {
+                    String p = params[i].trim();
+                    if (p.startsWith("q=")) {
+                        try {
+                            return Double.parseDouble(p.substring(2)) > 0;
+                        } catch (NumberFormatException e) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            }
+            return false;
         }
     }
 
     // ==================== Helper Methods ====================
 
+    private static void createContext(HttpServer server, String path, HttpHandler handler) {
+        List<com.sun.net.httpserver.Filter> filters = server.createContext(path, handler).getFilters();
+        filters.add(new RequestMetrics(Metrics.global(), path));
+        filters.add(ServerExecutors.overloadFilter());
+    }
+
+    private static boolean isAdmin(HttpExchange exchange) {
+        java.util.List<String> vals = exchange.getRequestHeaders().get("X-Admin-Key");
+        if (vals == null || vals.isEmpty()) return false;
+        return ADMIN_KEY.equals(vals.get(0));
+    }
+
     private static void addCORSHeaders(HttpExchange exchange) {
         exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
         exchange.getResponseHeaders().set("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
         exchange.getResponseHeaders().set("Access-Control-Allow-Headers", "Content-Type, Authorization, X-Admin-Key");
+        exchange.getResponseHeaders().set("Access-Control-Expose-Headers", "X-Last-Event-Id");
     }
 
     private static void sendJsonResponse(HttpExchange exchange, String json, int statusCode) throws IOException {
-        byte[] response = json.getBytes(StandardCharsets.UTF_8);
+        sendJsonBytes(exchange, json.getBytes(StandardCharsets.UTF_8), statusCode);
+    }
+
+    private static void sendJson(HttpExchange exchange, JsonWriter json, int statusCode) throws IOException {
         exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
-        exchange.sendResponseHeaders(statusCode, response.length);
-        OutputStream os = exchange.getResponseBody();
-        os.write(response);
-        os.close();
+        exchange.sendResponseHeaders(statusCode, json.size());
+        try (OutputStream os = exchange.getResponseBody()) {
+            json.writeTo(os);
+        }
     }
 
-    private static void sendErrorResponse(HttpExchange exchange, int statusCode, String message)
-    throws IOException {
-        String json = String.format("{\"error\":\"%s\"}", escapeJson(message));
-        byte[] response = json.getBytes(StandardCharsets.UTF_8);
+    private static void sendJsonBytes(HttpExchange exchange, byte[] response, int statusCode) throws IOException {
         exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
         exchange.sendResponseHeaders(statusCode, response.length);
         OutputStream os = exchange.getResponseBody();
@@ -541,182 +1188,237 @@ public class RestServer {
         os.close();
     }
 
-    private static String readRequestBody(HttpExchange exchange) throws IOException {
-        InputStream is = exchange.getRequestBody();
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        byte[] data = new byte[1024];
-        int nRead;
-        while ((nRead = is.read(data, 0, data.length)) != -1) {
-            buffer.write(data, 0, nRead);
-        }
-        return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+    /** Writes a JSON body incrementally to the response. */
+    interface JsonStreamBody {
+        void writeTo(JsonWriter out) throws IOException, SQLException;
     }
 
-    private static String convertOrderToJson(Order order) {
-        StringBuilder items = new StringBuilder("[");
-        List<MenuItem> orderItems = order.getItems();
-        for (int i = 0; i < orderItems.size(); i++) {
-            MenuItem item = orderItems.get(i);
-            items.append(String.format(java.util.Locale.US, "{\"id\":%d,\"name\":\"%s\",\"price\":%.2f}",
-                item.getId(), escapeJson(item.getName()), item.getPrice()));
-            if (i < orderItems.size() - 1) items.append(",");
-        }
-        items.append("]");
-
-        return String.format(java.util.Locale.US,
-            "{\"orderId\":%d,\"customerName\":\"%s\",\"items\":%s,\"totalPrice\":%.2f,\"status\":\"%s\",\"itemCount\":%d}",
-            order.getOrderId(),
-            escapeJson(order.getCustomerName()),
-            items.toString(),
-            order.getTotalPrice(),
-            order.getStatus(),
-            order.getItems().size()
-        );
+    /** Thrown when a streamed response fails after part of it was sent; the connection is dropped. */
+    static class ResponseAbortedException extends IOException {
+        ResponseAbortedException(String message, Throwable cause) {
+            super(message, cause);
+        }
     }
 
-    private static List<OrderController.OrderItemRequest> parseOrderItems(String json) {
-        List<OrderController.OrderItemRequest> items = new java.util.ArrayList<>();
-        
-        // Extract items array
-        int itemsStart = json.indexOf("\"items\":");
-        if (itemsStart == -1) return items;
-        
-        int arrayStart = json.indexOf("[", itemsStart);
-        int arrayEnd = json.lastIndexOf("]");
-        if (arrayStart == -1 || arrayEnd == -1) return items;
-        
-        String itemsArray = json.substring(arrayStart + 1, arrayEnd);
-        
-        // Split by }, { to separate items
-        String[] itemStrings = itemsArray.split("\\}\\s*,\\s*\\{");
-        
-        for (String itemStr : itemStrings) {
-            itemStr = itemStr.replaceAll("[\\{\\}]", "").trim();
-            if (itemStr.isEmpty()) continue;
-            
-            try {
-                int menuItemId = extractJsonIntSafe(itemStr, "menuItemId");
-                int quantity = extractJsonIntSafe(itemStr, "quantity");
-                items.add(new OrderController.OrderItemRequest(menuItemId, quantity));
-                System.out.println("[OrderAPI] Parsed item: menuItemId=" + menuItemId + ", quantity=" + quantity);
-            } catch (Exception e) {
-                System.err.println("[OrderAPI] Error parsing item: " + itemStr + " - " + e.getMessage());
+    /**
+     * Send a JSON response using chunked transfer encoding: the body is
+     * written while it is produced, so large results are never held in memory
+     * as a whole and the client starts receiving data with the first full
+     * buffer. The headers go out with that buffer, so if the body fails before
+     * then (a pool timeout, a failed query) the reply is a 500 instead. A
+     * failure after that throws ResponseAbortedException without ending the
+     * chunked body, so the client sees a broken transfer, never a short list
+     * that looks complete.
+     */
+    private static void sendStreamingJsonResponse(HttpExchange exchange, int statusCode, JsonStreamBody body)
+    throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        DeferredHeadersStream os = new DeferredHeadersStream(exchange, statusCode);
+        JsonWriter out = JsonWriter.streaming(os);
+        try {
+            body.writeTo(out);
+            out.close();
+        } catch (UncheckedIOException e) {
+            out.discard();
+            throw e.getCause(); // the client went away mid-stream
+        } catch (SQLException e) {
+            out.discard();
+            if (!os.started()) {
+                log.warn("Streaming response failed before it started: {}", e.getMessage());
+                exchange.getResponseHeaders().remove("X-Last-Event-Id"); // it labels the body that was not sent
+                sendErrorResponse(exchange, 500, "Database error: " + e.getMessage());
+                return;
             }
+            log.warn("Streaming response failed part-way, dropping the connection: {}", e.getMessage());
+            throw new ResponseAbortedException("Response aborted: " + e.getMessage(), e);
         }
-        return items;
+        os.close();
     }
 
-    private static int extractJsonIntSafe(String json, String key) {
-        String pattern = "\"" + key + "\":";
-        int start = json.indexOf(pattern);
-        if (start == -1) return 0;
-        
-        start += pattern.length();
-        
-        // Skip whitespace
-        while (start < json.length() && Character.isWhitespace(json.charAt(start))) {
-            start++;
+    // Sends the response headers (chunked) with the first body bytes instead of up front
+    private static final class DeferredHeadersStream extends OutputStream {
+        private final HttpExchange exchange;
+        private final int statusCode;
+        private OutputStream body;
+
+        DeferredHeadersStream(HttpExchange exchange, int statusCode) {
+            this.exchange = exchange;
+            this.statusCode = statusCode;
         }
-        
-        // Find end of number (comma, }, or ])
-        int end = start;
-        while (end < json.length() && Character.isDigit(json.charAt(end))) {
-            end++;
+
+        boolean started() {
+            return body != null;
         }
-        
-        if (end <= start) return 0;
-        
-        try {
-            String numStr = json.substring(start, end).trim();
-            return Integer.parseInt(numStr);
-        } catch (NumberFormatException e) {
-            System.err.println("[OrderAPI] Failed to parse number: " + json.substring(start, Math.min(end + 5, json.length())));
-            return 0;
+
+        private OutputStream body() throws IOException {
+            if (body == null) {
+                exchange.sendResponseHeaders(statusCode, 0); // 0 = chunked
+                body = exchange.getResponseBody();
+            }
+            return body;
         }
-    }
 
-    private static double extractJsonNumber(String json, String key) {
-        String pattern = "\"" + key + "\":";
-        int start = json.indexOf(pattern);
-        if (start == -1) return 0.0;
+        @Override
+        public void write(int b) throws IOException {
+            body().write(b);
+        }
 
-        start += pattern.length();
-        while (start < json.length() && Character.isWhitespace(json.charAt(start))) start++;
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            body().write(b, off, len);
+        }
 
-        int end = start;
-        while (end < json.length()) {
-            char c = json.charAt(end);
-            if ((c >= '0' && c <= '9') || c == '.' || c == '-') end++; else break;
+        @Override
+        public void flush() throws IOException {
+            body().flush();
         }
 
-        if (end <= start) return 0.0;
+        @Override
+        public void close() throws IOException {
+            body().close();
+        }
+    }
 
-        try {
-            String numStr = json.substring(start, end).trim();
-            return Double.parseDouble(numStr);
-        } catch (Exception e) {
-            return 0.0;
+    private static void sendErrorResponse(HttpExchange exchange, int statusCode, String message)
+    throws IOException {
+        try (JsonWriter json = JsonWriter.pooled()) {
+            json.beginObject().name("error").value(message).endObject();
+            sendJson(exchange, json, statusCode);
         }
     }
 
-    private static String extractJsonString(String json, String key) {
-        // More robust parsing that handles whitespace variations
-        String pattern = "\"" + key + "\"";
-        int start = json.indexOf(pattern);
-        System.out.println("[Debug] Extracting '" + key + "': pattern='" + pattern + "', start=" + start);
-        if (start == -1) {
-            System.out.println("[Debug] Pattern not found, returning empty string");
-            return "";
+    // True if an If-None-Match header value matches the given strong ETag
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String c = candidate.trim();
+            if (c.startsWith("W/")) c = c.substring(2);
+            if (c.equals("*") || c.equals(etag)) return true;
         }
-        
-        // Move past the key name
-        start += pattern.length();
-        
-        // Skip whitespace and colon
-        while (start < json.length() && (Character.isWhitespace(json.charAt(start)) || json.charAt(start) == ':')) {
-            start++;
+        return false;
+    }
+
+    // Decode a raw query string (a=1&b=x%20y) into a map; later duplicates win
+    private static java.util.Map<String, String> parseQueryParams(String rawQuery) {
+        java.util.Map<String, String> params = new java.util.HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) return params;
+        for (String pair : rawQuery.split("&")) {
+            if (pair.isEmpty()) continue;
+            int eq = pair.indexOf('=');
+            String key = eq == -1 ? pair : pair.substring(0, eq);
+            String value = eq == -1 ? "" : pair.substring(eq + 1);
+            params.put(java.net.URLDecoder.decode(key, StandardCharsets.UTF_8),
+                       java.net.URLDecoder.decode(value, StandardCharsets.UTF_8));
         }
-        
-        // Skip opening quote
-        if (start < json.length() && json.charAt(start) == '"') {
-            start++;
-        } else {
-            System.out.println("[Debug] No opening quote found after key");
-            return "";
+        return params;
+    }
+
+    private static void writeOrderJson(JsonWriter json, Order order) {
+        json.beginObject()
+            .name("orderId").value(order.getOrderId())
+            .name("customerName").value(order.getCustomerName() == null ? "" : order.getCustomerName())
+            .name("items").beginArray();
+        // One entry per unit, as clients expect, written from the compact lines
+        for (OrderLine line : order.getLines()) {
+            for (int q = 0; q < line.getQuantity(); q++) {
+                json.beginObject()
+                    .name("id").value(line.getMenuItemId())
+                    .name("name").value(line.getName() == null ? "" : line.getName())
+                    .name("price").valueCents(line.getUnitPriceCents())
+                    .endObject();
+            }
         }
-        
-        // Find closing quote
-        int end = start;
-        while (end < json.length() && json.charAt(end) != '"') {
-            if (json.charAt(end) == '\\' && end + 1 < json.length()) {
-                end += 2; // Skip escaped characters
+        json.endArray()
+            .name("totalPrice").valueCents(order.getTotalCents())
+            .name("status").value(order.getStatus())
+            .name("itemCount").value(order.getItemCount())
+            .endObject();
+    }
+
+    // Fields of a POST /api/orders body
+    static final class OrderBody {
+        String customerName = "";
+        List<OrderController.OrderItemRequest> items = new java.util.ArrayList<>();
+    }
+
+    // Fields of a menu item create/update body; missing fields keep their defaults
+    static final class MenuItemBody {
+        String name = "";
+        String description = "";
+        String category = "";
+        long priceCents;
+    }
+
+    /**
+     * Parse {"customerName":"...","items":[{"menuItemId":1,"quantity":2}, ...]}
+     * straight from the request stream. Unknown fields are skipped, so field
+     * order and extra nested values do not matter.
+     */
+    static OrderBody parseOrderBody(InputStream in) throws IOException {
+        OrderBody body = new OrderBody();
+        JsonReader reader = new JsonReader(in);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            if (reader.peek() == JsonReader.Token.NULL) {
+                reader.skipValue();
+            } else if (key.equals("customerName")) {
+                body.customerName = reader.nextString();
+            } else if (key.equals("items")) {
+                parseOrderItems(reader, body.items);
             } else {
-                end++;
+                reader.skipValue();
             }
         }
-        
-        System.out.println("[Debug] After pattern, start=" + start + ", end=" + end);
-        if (end == -1 || end >= json.length()) {
-            System.out.println("[Debug] Closing quote not found, returning empty string");
-            return "";
-        }
-        
-        if (start > end) {
-            System.out.println("[Debug] start > end: returning empty string");
-            return "";
+        reader.endObject();
+        return body;
+    }
+
+    private static void parseOrderItems(JsonReader reader, List<OrderController.OrderItemRequest> items)
+            throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            int menuItemId = 0;
+            int quantity = 0;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName();
+                if (reader.peek() == JsonReader.Token.NULL) {
+                    reader.skipValue();
+                } else if (key.equals("menuItemId")) {
+                    menuItemId = reader.nextInt();
+                } else if (key.equals("quantity")) {
+                    quantity = reader.nextInt();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            items.add(new OrderController.OrderItemRequest(menuItemId, quantity));
+            log.debug("Parsed item: menuItemId={}, quantity={}", menuItemId, quantity);
         }
-        
-        String result = json.substring(start, end);
-        System.out.println("[Debug] Extracted '" + key + "': '" + result + "'");
-        return result;
+        reader.endArray();
     }
 
-    private static String escapeJson(String text) {
-        if (text == null) return "";
-        return text.replace("\\", "\\\\")
-                   .replace("\"", "\\\"")
-                   .replace("\n", "\\n")
-                   .replace("\r", "\\r")
-                   .replace("\t", "\\t");
+    static MenuItemBody parseMenuItemBody(InputStream in) throws IOException {
+        MenuItemBody body = new MenuItemBody();
+        JsonReader reader = new JsonReader(in);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            if (reader.peek() == JsonReader.Token.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            switch (key) {
+                case "name": body.name = reader.nextString(); break;
+                case "description": body.description = reader.nextString(); break;
+                case "category": body.category = reader.nextString(); break;
+                case "price": body.priceCents = reader.nextCents(); break;
+                default: reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return body;
     }
 }
@@ -0,0 +1,159 @@
+package server;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import logging.Log;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ServerExecutors - executors for the HttpServer, so blocking handlers (JDBC)
+ * no longer run on the single dispatcher thread.
+ *
+ * Selected with -Dserver.executor:
+ * - pool (default): bounded platform thread pool (-Dserver.threads, default 32)
+ *   with a bounded queue (-Dserver.queue, default 256). When both are full the
+ *   exchange is answered with 503 instead of queueing without limit.
+ * - virtual: one virtual thread per request, with at most -Dserver.maxInFlight
+ *   (default 10000) requests in flight before answering 503.
+ * - direct: the JDK default, everything on the dispatcher thread.
+ *
+ * Overload is signalled through {@link #overloadFilter()}, which must be added
+ * to every context.
+ */
+public class ServerExecutors {
+    private static final Log log = Log.get("server");
+
+    public enum Mode { POOL, VIRTUAL, DIRECT }
+
+    // Set while a rejected exchange runs on the dispatcher thread
+    private static final ThreadLocal<Boolean> SHEDDING = ThreadLocal.withInitial(() -> Boolean.FALSE);
+    private static final AtomicLong rejectedCount = new AtomicLong();
+    private static volatile Semaphore inFlightLimit;
+
+    private ServerExecutors() {
+    }
+
+    public static Mode modeFromSystemProperties() {
+        String mode = System.getProperty("server.executor", "pool").trim().toUpperCase();
+        try {
+            return Mode.valueOf(mode);
+        } catch (IllegalArgumentException e) {
+            log.warn("Unknown server.executor '{}', using POOL", mode);
+            return Mode.POOL;
+        }
+    }
+
+    public static Executor fromSystemProperties() {
+        return create(modeFromSystemProperties(),
+                Integer.getInteger("server.threads", 32),
+                Integer.getInteger("server.queue", 256),
+                Integer.getInteger("server.maxInFlight", 10_000));
+    }
+
+    /**
+     * @return the executor to pass to HttpServer.setExecutor (null for DIRECT)
+     */
+    public static Executor create(Mode mode, int threads, int queueCapacity, int maxInFlight) {
+        switch (mode) {
+            case VIRTUAL:
+                inFlightLimit = new Semaphore(maxInFlight);
+                return Executors.newVirtualThreadPerTaskExecutor();
+            case DIRECT:
+                inFlightLimit = null;
+                return null;
+            case POOL:
+            default:
+                inFlightLimit = null;
+                return newBoundedPool(threads, queueCapacity);
+        }
+    }
+
+    private static ThreadPoolExecutor newBoundedPool(int threads, int queueCapacity) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "http-worker-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                shedOnDispatcher());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /*
+     * The JDK server gives us no hook to reject an exchange itself, so a
+     * rejected task runs on the dispatcher thread with SHEDDING set, and
+     * overloadFilter answers 503 without calling the handler. That keeps the
+     * dispatcher busy only for the time it takes to write a short response.
+     */
+    private static RejectedExecutionHandler shedOnDispatcher() {
+        return (task, executor) -> {
+            rejectedCount.incrementAndGet();
+            SHEDDING.set(Boolean.TRUE);
+            try {
+                task.run();
+            } finally {
+                SHEDDING.set(Boolean.FALSE);
+            }
+        };
+    }
+
+    public static long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /** Filter answering 503 for exchanges the executor could not accept. */
+    public static Filter overloadFilter() {
+        return new Filter() {
+            @Override
+            public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+                if (SHEDDING.get()) {
+                    reject(exchange);
+                    return;
+                }
+                Semaphore limit = inFlightLimit;
+                if (limit == null) {
+                    chain.doFilter(exchange);
+                    return;
+                }
+                if (!limit.tryAcquire()) {
+                    rejectedCount.incrementAndGet();
+                    reject(exchange);
+                    return;
+                }
+                try {
+                    chain.doFilter(exchange);
+                } finally {
+                    limit.release();
+                }
+            }
+
+            @Override
+            public String description() {
+                return "Answers 503 when the server executor is saturated";
+            }
+        };
+    }
+
+    private static void reject(HttpExchange exchange) throws IOException {
+        byte[] body = "{\"error\":\"Server busy, retry shortly\"}".getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        exchange.sendResponseHeaders(503, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+}
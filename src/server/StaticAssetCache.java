@@ -0,0 +1,271 @@
+package server;
+
+import logging.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * StaticAssetCache - static files held in memory, ready to send.
+ *
+ * A file is read from disk once, on first request or by {@link #preload}.
+ * Text types also get a gzip variant computed up front, and each variant has a
+ * strong ETag derived from its bytes. After that a request costs no disk I/O.
+ *
+ * The directories of cached files are registered with a WatchService. When a
+ * file changes, its entry is dropped and the next request reads it again, so
+ * editing index.html or app.js needs no restart. Files larger than
+ * -Dstatic.maxCachedBytes (default 8 MB) are not cached.
+ *
+ * Binary files of FILE_BACKED_MIN_BYTES or more (the menu photos) keep only
+ * their length and ETag here. Their bytes stay in the page cache and are
+ * sent from disk with FileChannel.transferTo, so image traffic does not go
+ * through the heap.
+ */
+class StaticAssetCache {
+    private static final Log log = Log.get("static");
+
+    static final int FILE_BACKED_MIN_BYTES = 16 * 1024;
+
+    /** One file: identity bytes, optional gzip bytes, and their ETags. */
+    static final class Asset {
+        final String contentType;
+        final byte[] identity;  // null when the file is served from disk
+        final long length;
+        final String etag;
+        final byte[] gzip;      // null when the type is not compressible or gzip does not help
+        final String gzipEtag;
+
+        Asset(String contentType, byte[] identity, byte[] gzip) {
+            this.contentType = contentType;
+            this.identity = identity;
+            this.length = identity.length;
+            byte[] digest = sha256().digest(identity);
+            this.etag = etagFor(digest, "");
+            this.gzip = gzip;
+            this.gzipEtag = gzip == null ? null : etagFor(digest, "-gz");
+        }
+
+        // A file served from disk
+        Asset(String contentType, long length, byte[] digest) {
+            this.contentType = contentType;
+            this.identity = null;
+            this.length = length;
+            this.etag = etagFor(digest, "");
+            this.gzip = null;
+            this.gzipEtag = null;
+        }
+    }
+
+    private final Path root;
+    private final long maxCachedBytes;
+    private final ConcurrentHashMap<String, Asset> assets = new ConcurrentHashMap<>();
+    private final Set<Path> watchedDirs = ConcurrentHashMap.newKeySet();
+    private final WatchService watcher;
+
+    StaticAssetCache(Path root, long maxCachedBytes) {
+        this.root = root.toAbsolutePath().normalize();
+        this.maxCachedBytes = maxCachedBytes;
+        this.watcher = startWatcher();
+    }
+
+    static StaticAssetCache fromSystemProperties() {
+        return new StaticAssetCache(Path.of(System.getProperty("user.dir")),
+                Long.getLong("static.maxCachedBytes", 8L * 1024 * 1024));
+    }
+
+    /**
+     * Resolve a request path ("styles.css", "images/olive.jpg") to a file
+     * under the root. Returns null for anything that would leave the root or
+     * names a hidden file or directory.
+     */
+    Path resolve(String relativePath) {
+        Path file = root.resolve(relativePath).normalize();
+        if (!file.startsWith(root) || file.equals(root)) return null;
+        for (Path part : root.relativize(file)) {
+            if (part.toString().startsWith(".")) return null;
+        }
+        return file;
+    }
+
+    /**
+     * Return the cached asset for a resolved path, reading it on a miss.
+     * Returns null if the file does not exist or is too large to cache.
+     */
+    Asset get(Path file) throws IOException {
+        String key = file.toString();
+        Asset asset = assets.get(key);
+        if (asset != null) return asset;
+
+        if (!Files.isRegularFile(file) || Files.size(file) > maxCachedBytes) return null;
+        // Register before reading, so a change made during the read still invalidates
+        watch(file.getParent());
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        asset = load(file);
+        Asset raced = assets.putIfAbsent(key, asset);
+        if (raced != null) return raced;
+        // The watcher may have fired before our entry was in the map
+        if (Files.getLastModifiedTime(file).toMillis() != modified) assets.remove(key, asset);
+        return asset;
+    }
+
+    /** Load the given files, and every file inside the given directories, ahead of the first request. */
+    void preload(String... relativePaths) {
+        int count = 0;
+        for (String rel : relativePaths) {
+            Path start = resolve(rel);
+            if (start == null || !Files.exists(start)) continue;
+            try (Stream<Path> files = Files.walk(start)) {
+                for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                    if (resolve(root.relativize(file).toString()) != null && get(file) != null) count++;
+                }
+            } catch (IOException e) {
+                log.warn("Preloading {} failed: {}", rel, e.getMessage());
+            }
+        }
+        log.info("Static assets cached: {} files", count);
+    }
+
+    private Asset load(Path file) throws IOException {
+        String type = contentTypeFor(file.getFileName().toString());
+        if (!isCompressible(type) && Files.size(file) >= FILE_BACKED_MIN_BYTES) {
+            // Only the digest is kept; it is read through a small buffer
+            MessageDigest digest = sha256();
+            long length = 0;
+            try (InputStream in = Files.newInputStream(file)) {
+                byte[] chunk = new byte[8192];
+                int n;
+                while ((n = in.read(chunk)) > 0) {
+                    digest.update(chunk, 0, n);
+                    length += n;
+                }
+            }
+            log.debug("Indexed {} ({} bytes, served from disk)", file, length);
+            return new Asset(type, length, digest.digest());
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        byte[] gzip = isCompressible(type) ? gzip(bytes) : null;
+        if (gzip != null && gzip.length >= bytes.length) gzip = null;
+        log.debug("Cached {} ({} bytes, gzip {})", file, bytes.length, gzip == null ? "-" : gzip.length);
+        return new Asset(type, bytes, gzip);
+    }
+
+    // ==================== File watching ====================
+
+    private WatchService startWatcher() {
+        if (!Boolean.parseBoolean(System.getProperty("static.watch", "true"))) return null;
+        try {
+            WatchService ws = root.getFileSystem().newWatchService();
+            Thread t = new Thread(() -> runWatcher(ws), "static-watch");
+            t.setDaemon(true);
+            t.start();
+            return ws;
+        } catch (IOException | UnsupportedOperationException e) {
+            log.warn("File watching unavailable, static files are cached until restart: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void watch(Path dir) {
+        if (watcher == null || dir == null || !watchedDirs.add(dir)) return;
+        try {
+            dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            watchedDirs.remove(dir);
+            log.warn("Cannot watch {}: {}", dir, e.getMessage());
+        }
+    }
+
+    private void runWatcher(WatchService ws) {
+        while (true) {
+            WatchKey key;
+            try {
+                key = ws.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path dir = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    // Events were lost; drop everything in this directory
+                    assets.keySet().removeIf(k -> Path.of(k).getParent().equals(dir));
+                    continue;
+                }
+                Path changed = dir.resolve((Path) event.context());
+                if (assets.remove(changed.toString()) != null) {
+                    log.info("Static file changed, reloading on next request: {}", root.relativize(changed));
+                }
+            }
+            if (!key.reset()) watchedDirs.remove(dir);
+        }
+    }
+
+    // ==================== Content ====================
+
+    static String contentTypeFor(String name) {
+        if (name.endsWith(".html")) return "text/html; charset=UTF-8";
+        if (name.endsWith(".css")) return "text/css; charset=UTF-8";
+        if (name.endsWith(".js")) return "text/javascript; charset=UTF-8";
+        if (name.endsWith(".json")) return "application/json; charset=UTF-8";
+        if (name.endsWith(".png")) return "image/png";
+        if (name.endsWith(".jpg") || name.endsWith(".jpeg")) return "image/jpeg";
+        if (name.endsWith(".gif")) return "image/gif";
+        if (name.endsWith(".svg")) return "image/svg+xml";
+        if (name.endsWith(".webp")) return "image/webp";
+        if (name.endsWith(".ico")) return "image/x-icon";
+        return "application/octet-stream";
+    }
+
+    // JPEG/PNG/WebP are already compressed; gzip only helps text
+    private static boolean isCompressible(String type) {
+        return type.startsWith("text/") || type.startsWith("application/json")
+                || type.equals("image/svg+xml") || type.equals("image/x-icon");
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 3 + 64);
+        // Compressed once per file change, so spend the CPU on the best ratio
+        try (GZIPOutputStream gz = new GZIPOutputStream(out) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gz.write(bytes);
+        }
+        return out.toByteArray();
+    }
+
+    // Strong ETag per representation: the gzip variant must not share the identity ETag
+    private static String etagFor(byte[] digest, String suffix) {
+        StringBuilder sb = new StringBuilder("\"s-");
+        for (int i = 0; i < 12; i++) {
+            sb.append(Character.forDigit((digest[i] >> 4) & 0xF, 16))
+              .append(Character.forDigit(digest[i] & 0xF, 16));
+        }
+        return sb.append(suffix).append('"').toString();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
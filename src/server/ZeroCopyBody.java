@@ -0,0 +1,51 @@
+package server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * ZeroCopyBody - a response body stream that takes file data without copying
+ * it onto the heap.
+ *
+ * The NioHttpServer's response bodies implement it: a file region goes from
+ * the page cache to the socket with FileChannel.transferTo, and a direct or
+ * mapped buffer is written to the socket as it is. Streams that wrap a body
+ * (RequestMetrics' counters) implement it by passing the call through. For
+ * any other stream, such as the JDK server's, the static helpers copy through
+ * a small buffer, so a large file is still never held in memory whole.
+ */
+interface ZeroCopyBody {
+
+    /** Write `count` bytes of `file`, starting at `position`, to the body. */
+    void transferFrom(FileChannel file, long position, long count) throws IOException;
+
+    /** Write the remaining bytes of `data` to the body, advancing its position to its limit. */
+    void write(ByteBuffer data) throws IOException;
+
+    static void transfer(OutputStream out, FileChannel file, long position, long count) throws IOException {
+        if (out instanceof ZeroCopyBody body) {
+            body.transferFrom(file, position, count);
+            return;
+        }
+        WritableByteChannel target = Channels.newChannel(out);
+        long end = position + count;
+        while (position < end) {
+            long n = file.transferTo(position, end - position, target);
+            if (n <= 0) throw new IOException("File ended before the response body did");
+            position += n;
+        }
+    }
+
+    static void write(OutputStream out, ByteBuffer data) throws IOException {
+        if (out instanceof ZeroCopyBody body) {
+            body.write(data);
+            return;
+        }
+        WritableByteChannel target = Channels.newChannel(out);
+        while (data.hasRemaining()) target.write(data);
+    }
+}
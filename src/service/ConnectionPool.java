@@ -0,0 +1,446 @@
+package service;
+
+import logging.Log;
+import metrics.Histogram;
+import metrics.Metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ConnectionPool - bounded pool of physical JDBC connections shared by
+ * DatabaseManager and RestServer.
+ *
+ * Borrowed connections are proxies: close() hands the physical connection
+ * back to the pool (closing any statements the borrower left open) instead of
+ * tearing down the TCP session. A background housekeeper evicts idle
+ * connections above the minimum size, tops the pool back up, and reports
+ * connections that have been borrowed for longer than the leak threshold.
+ * A report names the borrowing thread; the borrower's stack trace is only
+ * captured with -Ddb.pool.leakStackTraces=true, as it costs every borrow.
+ *
+ * Time spent waiting for and holding a connection is the database time of
+ * the borrowing thread (Metrics.addDbNanos) and feeds the
+ * db_connection_wait_seconds and db_connection_held_seconds timers.
+ *
+ * Settings are read from system properties (see {@link #fromSystemProperties()}).
+ */
+public class ConnectionPool {
+    private static final Log log = Log.get("pool");
+    private static final String DEFAULT_URL = "jdbc:postgresql://localhost:5432/restaurant_db";
+    private static final String DEFAULT_USER = "postgres";
+    private static final String DEFAULT_PASSWORD = "soyarud";
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long borrowTimeoutMillis;
+    private final long leakThresholdMillis;
+    private final boolean captureBorrowStacks;
+    private final long validationIntervalMillis;
+
+    // One permit per borrowed connection or refill in progress; new connections are
+    // only opened under a permit when no idle one is available, so the total never
+    // exceeds maxSize
+    private final Semaphore permits;
+    // Most recently returned connection first, so hot connections stay hot
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private final Set<Lease> leases = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong borrowWaitNanos = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong destroyedCount = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong leakCount = new AtomicLong();
+    private final Histogram waitTimer = Metrics.global().timer("db_connection_wait_seconds");
+    private final Histogram heldTimer = Metrics.global().timer("db_connection_held_seconds");
+
+    public ConnectionPool(String url, String user, String password, int minSize, int maxSize,
+                          long idleTimeoutMillis, long borrowTimeoutMillis, long leakThresholdMillis,
+                          boolean captureBorrowStacks, long validationIntervalMillis) {
+        if (maxSize < 1) throw new IllegalArgumentException("maxSize must be >= 1");
+        if (minSize < 0 || minSize > maxSize) throw new IllegalArgumentException("minSize must be in [0, maxSize]");
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.captureBorrowStacks = captureBorrowStacks;
+        this.validationIntervalMillis = validationIntervalMillis;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, Math.min(30_000, idleTimeoutMillis / 2));
+        housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Builds a pool from system properties, falling back to the local
+     * restaurant_db defaults: db.url, db.user, db.password, db.pool.min,
+     * db.pool.max, db.pool.idleTimeoutMs, db.pool.borrowTimeoutMs,
+     * db.pool.leakThresholdMs (0 disables leak detection), db.pool.leakStackTraces,
+     * db.pool.validationIntervalMs.
+     */
+    public static ConnectionPool fromSystemProperties() {
+        return new ConnectionPool(
+                System.getProperty("db.url", DEFAULT_URL),
+                System.getProperty("db.user", DEFAULT_USER),
+                System.getProperty("db.password", DEFAULT_PASSWORD),
+                Integer.getInteger("db.pool.min", 2),
+                Integer.getInteger("db.pool.max", 10),
+                Long.getLong("db.pool.idleTimeoutMs", 300_000L),
+                Long.getLong("db.pool.borrowTimeoutMs", 5_000L),
+                Long.getLong("db.pool.leakThresholdMs", 30_000L),
+                Boolean.getBoolean("db.pool.leakStackTraces"),
+                Long.getLong("db.pool.validationIntervalMs", 5_000L));
+    }
+
+    private static class SharedHolder {
+        static final ConnectionPool INSTANCE = fromSystemProperties();
+    }
+
+    /** Process-wide pool used by default DatabaseManager instances. */
+    public static ConnectionPool shared() {
+        return SharedHolder.INSTANCE;
+    }
+
+    /**
+     * Borrow a connection, waiting up to the borrow timeout for one to become
+     * available. Closing the returned connection returns it to the pool.
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) throw new SQLException("Connection pool is closed");
+
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeoutCount.incrementAndGet();
+                Metrics.addDbNanos(System.nanoTime() - start);
+                throw new SQLException("Timed out after " + borrowTimeoutMillis + "ms waiting for a connection ("
+                        + leases.size() + "/" + maxSize + " in use)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+        long acquired = System.nanoTime();
+        borrowWaitNanos.addAndGet(acquired - start);
+        waitTimer.record(acquired - start);
+        Metrics.addDbNanos(acquired - start);
+
+        try {
+            PooledConnection pc = takeIdleValidated();
+            if (pc == null) pc = createConnection();
+            borrowCount.incrementAndGet();
+            // Held time starts at the permit, so validating or opening a connection counts too
+            Lease lease = new Lease(pc, acquired,
+                    leakThresholdMillis > 0 && captureBorrowStacks ? new Throwable("Connection borrowed here") : null);
+            leases.add(lease);
+            return lease.proxy;
+        } catch (SQLException | RuntimeException e) {
+            Metrics.addDbNanos(System.nanoTime() - acquired);
+            permits.release();
+            throw e;
+        }
+    }
+
+    private PooledConnection takeIdleValidated() {
+        while (true) {
+            PooledConnection pc;
+            synchronized (idle) {
+                pc = idle.pollFirst();
+            }
+            if (pc == null) return null;
+            if (System.currentTimeMillis() - pc.lastReturnedAt < validationIntervalMillis) return pc;
+            if (isUsable(pc)) return pc;
+            validationFailures.incrementAndGet();
+            destroy(pc);
+        }
+    }
+
+    private static boolean isUsable(PooledConnection pc) {
+        try {
+            return pc.raw.isValid(2);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledConnection createConnection() throws SQLException {
+        Connection raw = DriverManager.getConnection(url, user, password);
+        createdCount.incrementAndGet();
+        return new PooledConnection(raw);
+    }
+
+    private void release(Lease lease) {
+        if (!leases.remove(lease)) return;
+        long held = System.nanoTime() - lease.borrowedNanos;
+        heldTimer.record(held);
+        Metrics.addDbNanos(held);
+        PooledConnection pc = lease.pc;
+        boolean reusable = !closed;
+        try {
+            lease.closeStatements();
+            if (pc.raw.isClosed()) {
+                reusable = false;
+            } else if (!pc.raw.getAutoCommit()) {
+                // Never hand a half-finished transaction to the next borrower
+                pc.raw.rollback();
+                pc.raw.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            reusable = false;
+        }
+
+        if (reusable) {
+            pc.lastReturnedAt = System.currentTimeMillis();
+            synchronized (idle) {
+                idle.addFirst(pc);
+            }
+        } else {
+            destroy(pc);
+        }
+        permits.release();
+    }
+
+    private void destroy(PooledConnection pc) {
+        destroyedCount.incrementAndGet();
+        try {
+            pc.raw.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    // Evict idle connections, refill to minSize and report suspected leaks
+    private void housekeep() {
+        if (closed) return;
+        long now = System.currentTimeMillis();
+
+        List<PooledConnection> evicted = new ArrayList<>();
+        synchronized (idle) {
+            int removable = Math.max(0, idle.size() + leases.size() - minSize);
+            // Oldest connections sit at the tail
+            Iterator<PooledConnection> it = idle.descendingIterator();
+            while (it.hasNext() && removable > 0) {
+                PooledConnection pc = it.next();
+                if (now - pc.lastReturnedAt >= idleTimeoutMillis) {
+                    it.remove();
+                    evicted.add(pc);
+                    removable--;
+                }
+            }
+        }
+        for (PooledConnection pc : evicted) destroy(pc);
+
+        // Each new connection is opened under a permit, like a borrower's, so refills never push the pool past maxSize
+        while (idleCount() + leases.size() < minSize && permits.tryAcquire()) {
+            try {
+                PooledConnection pc = createConnection();
+                synchronized (idle) {
+                    idle.addLast(pc);
+                }
+            } catch (SQLException e) {
+                log.warn("Could not refill pool: {}", e.getMessage());
+                break;
+            } finally {
+                permits.release();
+            }
+        }
+
+        if (leakThresholdMillis > 0) {
+            for (Lease lease : leases) {
+                if (!lease.leakReported && now - lease.borrowedAt > leakThresholdMillis) {
+                    lease.leakReported = true;
+                    leakCount.incrementAndGet();
+                    String message = "Possible connection leak: borrowed " + (now - lease.borrowedAt)
+                            + "ms ago by " + lease.thread;
+                    if (lease.borrowSite != null) log.error(message, lease.borrowSite);
+                    else log.error(message);
+                }
+            }
+        }
+    }
+
+    /** Close all idle connections; borrowed connections are closed when returned. */
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        List<PooledConnection> toClose;
+        synchronized (idle) {
+            toClose = new ArrayList<>(idle);
+            idle.clear();
+        }
+        for (PooledConnection pc : toClose) destroy(pc);
+    }
+
+    private int idleCount() {
+        synchronized (idle) {
+            return idle.size();
+        }
+    }
+
+    public Stats getStats() {
+        int idleCount = idleCount();
+        long borrows = borrowCount.get();
+        return new Stats(minSize, maxSize, leases.size(), idleCount, permits.getQueueLength(),
+                borrows, timeoutCount.get(), createdCount.get(), destroyedCount.get(),
+                validationFailures.get(), leakCount.get(),
+                borrows == 0 ? 0.0 : borrowWaitNanos.get() / 1_000_000.0 / borrows);
+    }
+
+    /** Point-in-time pool counters, used for sizing the pool. */
+    public static class Stats {
+        public final int minSize;
+        public final int maxSize;
+        public final int active;
+        public final int idle;
+        public final int waiting;
+        public final long borrows;
+        public final long timeouts;
+        public final long created;
+        public final long destroyed;
+        public final long validationFailures;
+        public final long leaks;
+        public final double avgBorrowWaitMillis;
+
+        Stats(int minSize, int maxSize, int active, int idle, int waiting, long borrows, long timeouts,
+              long created, long destroyed, long validationFailures, long leaks, double avgBorrowWaitMillis) {
+            this.minSize = minSize;
+            this.maxSize = maxSize;
+            this.active = active;
+            this.idle = idle;
+            this.waiting = waiting;
+            this.borrows = borrows;
+            this.timeouts = timeouts;
+            this.created = created;
+            this.destroyed = destroyed;
+            this.validationFailures = validationFailures;
+            this.leaks = leaks;
+            this.avgBorrowWaitMillis = avgBorrowWaitMillis;
+        }
+
+        public String toJson() {
+            return "{\"minSize\":" + minSize + ",\"maxSize\":" + maxSize
+                    + ",\"active\":" + active + ",\"idle\":" + idle + ",\"waiting\":" + waiting
+                    + ",\"borrows\":" + borrows + ",\"timeouts\":" + timeouts
+                    + ",\"created\":" + created + ",\"destroyed\":" + destroyed
+                    + ",\"validationFailures\":" + validationFailures + ",\"leaks\":" + leaks
+                    + ",\"avgBorrowWaitMs\":" + String.format(java.util.Locale.US, "%.3f", avgBorrowWaitMillis) + "}";
+        }
+    }
+
+    private static class PooledConnection {
+        final Connection raw;
+        volatile long lastReturnedAt = System.currentTimeMillis();
+
+        PooledConnection(Connection raw) {
+            this.raw = raw;
+        }
+    }
+
+    /**
+     * One borrow of a pooled connection. The proxy stops working once the
+     * lease has been returned, so a stale reference cannot use a connection
+     * that now belongs to another borrower.
+     */
+    private class Lease implements InvocationHandler {
+        final PooledConnection pc;
+        final Throwable borrowSite;
+        final String thread = Thread.currentThread().getName();
+        final long borrowedAt = System.currentTimeMillis();
+        final long borrowedNanos;
+        final Connection proxy;
+        final List<Statement> statements = new ArrayList<>();
+        volatile boolean returned;
+        volatile boolean leakReported;
+
+        Lease(PooledConnection pc, long borrowedNanos, Throwable borrowSite) {
+            this.pc = pc;
+            this.borrowedNanos = borrowedNanos;
+            this.borrowSite = borrowSite;
+            this.proxy = (Connection) Proxy.newProxyInstance(
+                    ConnectionPool.class.getClassLoader(), new Class<?>[]{Connection.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        release(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || pc.raw.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + pc.raw + "]";
+                default:
+                    break;
+            }
+            if (returned) throw new SQLException("Connection has already been returned to the pool");
+
+            Object result;
+            try {
+                result = method.invoke(pc.raw, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result instanceof Statement) {
+                synchronized (statements) {
+                    statements.add((Statement) result);
+                }
+            }
+            return result;
+        }
+
+        void closeStatements() {
+            synchronized (statements) {
+                for (Statement st : statements) {
+                    try {
+                        st.close();
+                    } catch (SQLException ignored) {
+                    }
+                }
+                statements.clear();
+            }
+        }
+    }
+}
@@ -1,25 +1,81 @@
 package service;
 
+import java.io.IOException;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.IntFunction;
 
 import domain.MenuItem;
+import domain.MenuItemInterner;
+import domain.Money;
 import domain.Order;
+import domain.OrderLine;
+import exceptions.DataAccessException;
+import json.JsonReader;
+import json.JsonWriter;
+import logging.Log;
 
 /**
  * DatabaseManager - Handles database operations for orders
  */
 public class DatabaseManager {
-    private static final String URL = "jdbc:postgresql://localhost:5432/restaurant_db";
-    private static final String USER = "postgres";
-    private static final String PASSWORD = "soyarud";
+    private static final Log log = Log.get("db");
+
+    /**
+     * Where order lines live: JSON text in orders.items (the original schema),
+     * or one row per line in the order_items table.
+     * Selected with -Ddb.schema=json|normalized; use OrderItemsMigration to
+     * move an existing database from JSON to NORMALIZED.
+     */
+    public enum SchemaMode { JSON, NORMALIZED }
+
+    // Rows per round trip when streaming large result sets (-Ddb.fetchSize)
+    private static final int FETCH_SIZE = Integer.getInteger("db.fetchSize", 500);
+
+    private final ConnectionPool pool;
+    private final SchemaMode schemaMode;
+
+    public DatabaseManager() {
+        this(ConnectionPool.shared(), schemaModeFromSystemProperties());
+    }
+
+    public DatabaseManager(ConnectionPool pool) {
+        this(pool, schemaModeFromSystemProperties());
+    }
+
+    public DatabaseManager(ConnectionPool pool, SchemaMode schemaMode) {
+        this.pool = pool;
+        this.schemaMode = schemaMode;
+    }
+
+    public static SchemaMode schemaModeFromSystemProperties() {
+        String mode = System.getProperty("db.schema", "json");
+        return "normalized".equalsIgnoreCase(mode) ? SchemaMode.NORMALIZED : SchemaMode.JSON;
+    }
+
+    public SchemaMode getSchemaMode() {
+        return schemaMode;
+    }
+
+    /**
+     * Borrow a pooled connection; closing it returns it to the pool.
+     * Shared with RestServer so every query goes through the same pool.
+     */
+    public Connection getConnection() throws SQLException {
+        return pool.getConnection();
+    }
+
+    public ConnectionPool.Stats getPoolStats() {
+        return pool.getStats();
+    }
 
     private Connection connect() {
         try {
-            return DriverManager.getConnection(URL, USER, PASSWORD);
+            return pool.getConnection();
         } catch (SQLException e) {
-            System.out.println("Connection failed: " + e.getMessage());
+            log.warn("Connection failed: {}", e.getMessage());
             return null;
         }
     }
@@ -37,130 +93,523 @@ public class DatabaseManager {
 
             if (rs.next()) {
                 int orderId = rs.getInt(1);
-                System.out.println("[DB] Order created with ID: " + orderId + " for customer: " + customerName);
+                log.info("Order created with ID: {} for customer: {}", orderId, customerName);
                 return orderId;
             }
 
         } catch (SQLException e) {
-            System.out.println("Order creation failed: " + e.getMessage());
+            log.warn("Order creation failed: {}", e.getMessage());
+        }
+        return -1;
+    }
+
+    /**
+     * CREATE an order together with all of its lines and return its ID.
+     * The header, items, total and item count are written by a single INSERT,
+     * so the order is created atomically in one round trip. The id comes from
+     * OrderIdAllocator, which leases it from the orders sequence; the same
+     * statement records the insert in order_changes under `version`.
+     */
+    public int createOrderWithItems(int orderId, long version, String customerName, List<OrderLine> lines) {
+        if (schemaMode == SchemaMode.NORMALIZED) {
+            return createNormalizedOrder(orderId, version, customerName, lines);
+        }
+
+        long total = 0;
+        int count = 0;
+        for (OrderLine line : lines) {
+            total += line.getLineTotalCents();
+            count += line.getQuantity();
+        }
+
+        String sql = "WITH o AS (" +
+                     "  INSERT INTO orders (id, customer_name, order_date, items, total_price, item_count) " +
+                     "  VALUES (?, ?, NOW(), ?, ?, ?) RETURNING id), " +
+                     "c AS (INSERT INTO order_changes (version, order_id, op) SELECT ?, id, 'insert' FROM o) " +
+                     "SELECT id FROM o";
+
+        try (Connection conn = connect();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, orderId);
+            pstmt.setString(2, customerName);
+            pstmt.setString(3, lineItemsJson(lines));
+            pstmt.setBigDecimal(4, Money.toBigDecimal(total));
+            pstmt.setInt(5, count);
+            pstmt.setLong(6, version);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    log.info("Order created with ID: {} ({} lines) for customer: {}", orderId, lines.size(), customerName);
+                    return orderId;
+                }
+            }
+
+        } catch (SQLException e) {
+            log.warn("Order creation failed: {}", e.getMessage());
         }
         return -1;
     }
 
+    // Normalized mode: header and lines go in one statement, lines unnested from array parameters
+    private int createNormalizedOrder(int orderId, long version, String customerName, List<OrderLine> lines) {
+        String sql = "WITH o AS (" +
+                     "  INSERT INTO orders (id, customer_name, order_date, total_price, item_count) " +
+                     "  VALUES (?, ?, NOW(), ?, ?) RETURNING id), " +
+                     "l AS (" +
+                     "  INSERT INTO order_items (order_id, menu_item_id, item_name, quantity, unit_price) " +
+                     "  SELECT o.id, t.menu_item_id, t.item_name, t.quantity, t.unit_price " +
+                     "  FROM o, unnest(?::int[], ?::text[], ?::int[], ?::numeric[]) " +
+                     "       WITH ORDINALITY AS t(menu_item_id, item_name, quantity, unit_price, n) " +
+                     "  ORDER BY t.n), " +
+                     "c AS (INSERT INTO order_changes (version, order_id, op) SELECT ?, id, 'insert' FROM o) " +
+                     "SELECT id FROM o";
+
+        Integer[] ids = new Integer[lines.size()];
+        String[] names = new String[lines.size()];
+        Integer[] quantities = new Integer[lines.size()];
+        java.math.BigDecimal[] prices = new java.math.BigDecimal[lines.size()];
+        long total = 0;
+        int count = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            OrderLine line = lines.get(i);
+            ids[i] = line.getMenuItemId();
+            names[i] = line.getName();
+            quantities[i] = line.getQuantity();
+            prices[i] = Money.toBigDecimal(line.getUnitPriceCents());
+            total += line.getLineTotalCents();
+            count += line.getQuantity();
+        }
+
+        try (Connection conn = connect();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, orderId);
+            pstmt.setString(2, customerName);
+            pstmt.setBigDecimal(3, Money.toBigDecimal(total));
+            pstmt.setInt(4, count);
+            pstmt.setArray(5, conn.createArrayOf("integer", ids));
+            pstmt.setArray(6, conn.createArrayOf("text", names));
+            pstmt.setArray(7, conn.createArrayOf("integer", quantities));
+            pstmt.setArray(8, conn.createArrayOf("numeric", prices));
+            pstmt.setLong(9, version);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    log.info("Order created with ID: {} ({} lines) for customer: {}", orderId, lines.size(), customerName);
+                    return orderId;
+                }
+            }
+
+        } catch (SQLException e) {
+            log.warn("Order creation failed: {}", e.getMessage());
+        }
+        return -1;
+    }
+
+    /**
+     * Reserve `count` ids from the orders id sequence for OrderIdAllocator.
+     * Returns them ascending, or an empty array if the sequence cannot be read.
+     */
+    public int[] reserveOrderIds(int count) {
+        String sql = "SELECT nextval(pg_get_serial_sequence('orders', 'id')) FROM generate_series(1, ?)";
+        try (Connection conn = connect()) {
+            if (conn == null) return new int[0];
+            int[] ids = new int[count];
+            int n = 0;
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, count);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next() && n < count) ids[n++] = rs.getInt(1);
+                }
+            }
+            if (n < count) ids = java.util.Arrays.copyOf(ids, n);
+            java.util.Arrays.sort(ids);
+            return ids;
+        } catch (SQLException e) {
+            log.warn("Reserving order ids failed: {}", e.getMessage());
+            return new int[0];
+        }
+    }
+
+    /**
+     * Insert journaled orders with the ids they were given, in one transaction,
+     * each with its order_changes row. Ids that already exist are skipped, so
+     * replaying entries that were flushed before a crash is harmless. Returns
+     * false if nothing was written.
+     */
+    public boolean insertOrders(List<OrderJournal.Entry> entries) {
+        if (entries.isEmpty()) return true;
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                if (schemaMode == SchemaMode.NORMALIZED) {
+                    insertNormalizedOrders(conn, entries);
+                } else {
+                    String sql = "WITH o AS (" +
+                                 "  INSERT INTO orders (id, customer_name, order_date, items, total_price, item_count) " +
+                                 "  VALUES (?, ?, ?, ?, ?, ?) ON CONFLICT (id) DO NOTHING RETURNING id) " +
+                                 "INSERT INTO order_changes (version, order_id, op) SELECT ?, id, 'insert' FROM o " +
+                                 "ON CONFLICT (version) DO NOTHING";
+                    try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                        for (OrderJournal.Entry entry : entries) {
+                            Order order = entry.order();
+                            pstmt.setInt(1, order.getOrderId());
+                            pstmt.setString(2, order.getCustomerName());
+                            pstmt.setTimestamp(3, new Timestamp(entry.createdAtMillis()));
+                            pstmt.setString(4, lineItemsJson(order.getLines()));
+                            pstmt.setBigDecimal(5, Money.toBigDecimal(order.getTotalCents()));
+                            pstmt.setInt(6, order.getItemCount());
+                            pstmt.setLong(7, entry.version());
+                            pstmt.addBatch();
+                        }
+                        pstmt.executeBatch();
+                    }
+                }
+                conn.commit();
+                log.debug("Flushed {} journaled orders", entries.size());
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            log.warn("Flushing {} journaled orders failed: {}", entries.size(), e.getMessage());
+            return false;
+        }
+    }
+
+    // Normalized mode: one statement per order; its lines and change row are only inserted if the header was
+    private static void insertNormalizedOrders(Connection conn, List<OrderJournal.Entry> entries) throws SQLException {
+        String sql = "WITH o AS (" +
+                     "  INSERT INTO orders (id, customer_name, order_date, total_price, item_count) " +
+                     "  VALUES (?, ?, ?, ?, ?) ON CONFLICT (id) DO NOTHING RETURNING id), " +
+                     "l AS (" +
+                     "  INSERT INTO order_items (order_id, menu_item_id, item_name, quantity, unit_price) " +
+                     "  SELECT o.id, t.menu_item_id, t.item_name, t.quantity, t.unit_price " +
+                     "  FROM o, unnest(?::int[], ?::text[], ?::int[], ?::numeric[]) " +
+                     "       WITH ORDINALITY AS t(menu_item_id, item_name, quantity, unit_price, n) " +
+                     "  ORDER BY t.n) " +
+                     "INSERT INTO order_changes (version, order_id, op) SELECT ?, id, 'insert' FROM o " +
+                     "ON CONFLICT (version) DO NOTHING";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (OrderJournal.Entry entry : entries) {
+                Order order = entry.order();
+                List<OrderLine> lines = new ArrayList<>(order.getLines());
+                Integer[] ids = new Integer[lines.size()];
+                String[] names = new String[lines.size()];
+                Integer[] quantities = new Integer[lines.size()];
+                java.math.BigDecimal[] prices = new java.math.BigDecimal[lines.size()];
+                for (int i = 0; i < lines.size(); i++) {
+                    OrderLine line = lines.get(i);
+                    ids[i] = line.getMenuItemId();
+                    names[i] = line.getName();
+                    quantities[i] = line.getQuantity();
+                    prices[i] = Money.toBigDecimal(line.getUnitPriceCents());
+                }
+                pstmt.setInt(1, order.getOrderId());
+                pstmt.setString(2, order.getCustomerName());
+                pstmt.setTimestamp(3, new Timestamp(entry.createdAtMillis()));
+                pstmt.setBigDecimal(4, Money.toBigDecimal(order.getTotalCents()));
+                pstmt.setInt(5, order.getItemCount());
+                pstmt.setArray(6, conn.createArrayOf("integer", ids));
+                pstmt.setArray(7, conn.createArrayOf("text", names));
+                pstmt.setArray(8, conn.createArrayOf("integer", quantities));
+                pstmt.setArray(9, conn.createArrayOf("numeric", prices));
+                pstmt.setLong(10, entry.version());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
     // ADD item to order (updates the order with new item and recalculates totals)
-    public void addItemToOrder(int orderId, int menuItemId, int quantity, String itemName, double itemPrice) {
+    public void addItemToOrder(int orderId, int menuItemId, int quantity, String itemName, long itemPriceCents) {
+        if (schemaMode == SchemaMode.NORMALIZED) {
+            addNormalizedItem(orderId, menuItemId, quantity, itemName, itemPriceCents);
+            return;
+        }
+
         try (Connection conn = connect()) {
-            // Get current order data
-            String selectSql = "SELECT items, total_price, item_count FROM orders WHERE id = ?";
-            PreparedStatement selectPstmt = conn.prepareStatement(selectSql);
-            selectPstmt.setInt(1, orderId);
-            ResultSet rs = selectPstmt.executeQuery();
+            // Lock the row for the read-modify-write so concurrent adds cannot lose each other
+            conn.setAutoCommit(false);
+            try {
+                String selectSql = "SELECT items, total_price, item_count FROM orders WHERE id = ? FOR UPDATE";
+                PreparedStatement selectPstmt = conn.prepareStatement(selectSql);
+                selectPstmt.setInt(1, orderId);
+                ResultSet rs = selectPstmt.executeQuery();
 
-            if (rs.next()) {
-                String currentItemsJson = rs.getString("items");
-                double currentTotal = rs.getDouble("total_price");
-                int currentCount = rs.getInt("item_count");
-
-                // Parse existing items
-                List<String> itemsList = parseItemsJson(currentItemsJson);
-
-                // Add new item
-                String newItem = "{\"id\":" + menuItemId + ",\"name\":\"" + escapeJson(itemName) + 
-                                "\",\"quantity\":" + quantity + ",\"price\":" + 
-                                String.format(java.util.Locale.US, "%.2f", itemPrice) + "}";
-                itemsList.add(newItem);
-
-                // Rebuild JSON array
-                StringBuilder itemsJsonBuilder = new StringBuilder("[");
-                for (int i = 0; i < itemsList.size(); i++) {
-                    if (i > 0) itemsJsonBuilder.append(",");
-                    itemsJsonBuilder.append(itemsList.get(i));
+                if (rs.next()) {
+                    String currentItemsJson = rs.getString("items");
+                    long currentTotal = Money.fromBigDecimal(rs.getBigDecimal("total_price"));
+                    int currentCount = rs.getInt("item_count");
+
+                    // Parse existing items
+                    List<OrderLine> itemsList = parseLineItems(currentItemsJson);
+
+                    // Add new item
+                    itemsList.add(new OrderLine(MenuItemInterner.intern(menuItemId, itemName, itemPriceCents), quantity, itemPriceCents));
+
+
+                    // Update order
+                    String updateSql = "UPDATE orders SET items = ?, total_price = ?, item_count = ? WHERE id = ?";
+                    PreparedStatement updatePstmt = conn.prepareStatement(updateSql);
+                    updatePstmt.setString(1, lineItemsJson(itemsList));
+                    updatePstmt.setBigDecimal(2, Money.toBigDecimal(currentTotal + Money.times(itemPriceCents, quantity)));
+                    updatePstmt.setInt(3, currentCount + quantity);
+                    updatePstmt.setInt(4, orderId);
+                    updatePstmt.executeUpdate();
+
+                    log.debug("Added item #{} (qty: {}) to order #{}", menuItemId, quantity, orderId);
                 }
-                itemsJsonBuilder.append("]");
-
-                // Update order
-                String updateSql = "UPDATE orders SET items = ?, total_price = ?, item_count = ? WHERE id = ?";
-                PreparedStatement updatePstmt = conn.prepareStatement(updateSql);
-                updatePstmt.setString(1, itemsJsonBuilder.toString());
-                updatePstmt.setDouble(2, currentTotal + (itemPrice * quantity));
-                updatePstmt.setInt(3, currentCount + quantity);
-                updatePstmt.setInt(4, orderId);
-                updatePstmt.executeUpdate();
-
-                System.out.println("[DB] Added item #" + menuItemId + " (qty: " + quantity + ") to order #" + orderId);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
             }
-            selectPstmt.close();
 
         } catch (SQLException e) {
-            System.out.println("Adding item to order failed: " + e.getMessage());
+            log.warn("Adding item to order failed: {}", e.getMessage());
         }
     }
 
-    // GET all orders as JSON
-    public String getAllOrdersAsJson() {
-        StringBuilder json = new StringBuilder("[");
-        String sql = "SELECT id, customer_name, order_date, items, total_price, item_count FROM orders ORDER BY id DESC";
+    // Normalized mode: append is a single INSERT plus an incremental update of the totals
+    private void addNormalizedItem(int orderId, int menuItemId, int quantity, String itemName, long itemPriceCents) {
+        String sql = "WITH u AS (" +
+                     "  UPDATE orders SET total_price = total_price + ?, item_count = item_count + ? " +
+                     "  WHERE id = ? RETURNING id) " +
+                     "INSERT INTO order_items (order_id, menu_item_id, item_name, quantity, unit_price) " +
+                     "SELECT u.id, ?, ?, ?, ? FROM u";
 
         try (Connection conn = connect();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setBigDecimal(1, Money.toBigDecimal(Money.times(itemPriceCents, quantity)));
+            pstmt.setInt(2, quantity);
+            pstmt.setInt(3, orderId);
+            pstmt.setInt(4, menuItemId);
+            pstmt.setString(5, itemName);
+            pstmt.setInt(6, quantity);
+            pstmt.setBigDecimal(7, Money.toBigDecimal(itemPriceCents));
+            if (pstmt.executeUpdate() > 0) {
+                log.debug("Added item #{} (qty: {}) to order #{}", menuItemId, quantity, orderId);
+            }
+        } catch (SQLException e) {
+            log.warn("Adding item to order failed: {}", e.getMessage());
+        }
+    }
 
-            boolean firstOrder = true;
-            
-            while (rs.next()) {
-                if (!firstOrder) json.append(",");
-                
-                json.append("{\"id\":").append(rs.getInt("id"))
-                    .append(",\"customer\":\"").append(escapeJson(rs.getString("customer_name")))
-                    .append("\",\"orderDate\":\"").append(rs.getTimestamp("order_date"))
-                    .append("\",\"items\":").append(rs.getString("items"))
-                    .append(",\"price\":").append(String.format(java.util.Locale.US, "%.2f", rs.getDouble("total_price")))
-                    .append(",\"itemCount\":").append(rs.getInt("item_count"))
-                    .append("}");
-                
-                firstOrder = false;
+    // SQL expression producing an order's items as a JSON array, for either schema
+    private String itemsJsonColumn() {
+        if (schemaMode == SchemaMode.JSON) return "o.items";
+        return "COALESCE((SELECT json_agg(json_build_object(" +
+               "'id', i.menu_item_id, 'name', i.item_name, 'quantity', i.quantity, 'price', i.unit_price) " +
+               "ORDER BY i.id) FROM order_items i WHERE i.order_id = o.id), '[]'::json)";
+    }
+
+    // Lines as stored in orders.items: [{"id":..,"name":..,"quantity":..,"price":..}, ...]
+    private static String lineItemsJson(Collection<OrderLine> lines) {
+        try (JsonWriter json = JsonWriter.pooled()) {
+            json.beginArray();
+            for (OrderLine line : lines) {
+                json.beginObject()
+                    .name("id").value(line.getMenuItemId())
+                    .name("name").value(line.getName() == null ? "" : line.getName())
+                    .name("quantity").value(line.getQuantity())
+                    .name("price").valueCents(line.getUnitPriceCents())
+                    .endObject();
             }
-            
-            json.append("]");
+            return json.endArray().toString();
+        }
+    }
 
+    // GET all orders as JSON
+    public String getAllOrdersAsJson() {
+        try (JsonWriter json = JsonWriter.pooled()) {
+            writeAllOrdersJson(json);
+            return json.toString();
         } catch (SQLException e) {
-            System.out.println("Retrieving orders failed: " + e.getMessage());
+            log.warn("Retrieving orders failed: {}", e.getMessage());
             return "[]";
         }
+    }
+
+    /**
+     * Stream all orders, newest first, as a JSON array straight from the JDBC
+     * cursor to `out`. Rows are fetched FETCH_SIZE at a time, so memory use is
+     * flat regardless of how many orders exist. If the query fails, part-way
+     * or before the first row, the SQLException is thrown with the array left
+     * open, so the caller can fail the response rather than end it as if the
+     * list were complete.
+     */
+    public void writeAllOrdersJson(JsonWriter out) throws SQLException {
+        writeAllOrdersJson(out, null);
+    }
+
+    /**
+     * As {@link #writeAllOrdersJson(JsonWriter)}, with a "status" field in
+     * each row taken from `statusOf` (order id -> status). Statuses are not
+     * stored in the database, so the caller supplies the current ones.
+     */
+    public void writeAllOrdersJson(JsonWriter out, IntFunction<String> statusOf) throws SQLException {
+        String sql = "SELECT o.id, o.customer_name, o.order_date, " + itemsJsonColumn() + " AS items, " +
+                     "o.total_price, o.item_count FROM orders o ORDER BY o.id DESC";
+
+        out.beginArray();
+        try (Connection conn = getConnection()) {
+            // PostgreSQL only honours the fetch size inside a transaction;
+            // the pool rolls back and restores auto-commit when it is returned
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.setFetchSize(FETCH_SIZE);
+                try (ResultSet rs = stmt.executeQuery(sql)) {
+                    while (rs.next()) {
+                        writeOrderJson(out, rs, statusOf);
+                    }
+                }
+            }
+        }
+        out.endArray();
+    }
+
+    /**
+     * GET one page of orders, newest first, as
+     * {"orders":[...],"limit":N,"nextAfter":id|null}, plus
+     * "nextAfterDate" when the query has a date filter (see OrderQuery).
+     * Uses keyset pagination ((order_date, id) or id < cursor), so every page
+     * is an index range scan regardless of how far back it is. With both a
+     * customer and a date filter, the date range is scanned and the customer
+     * matched on the way, so a customer with few orders in a busy range costs
+     * more per page.
+     */
+    public String getOrdersPageAsJson(OrderQuery query) throws SQLException {
+        try (JsonWriter json = JsonWriter.pooled()) {
+            writeOrdersPageJson(query, json, null);
+            return json.toString();
+        }
+    }
+
+    /**
+     * Stream one page of orders (see {@link #getOrdersPageAsJson}) to `out`.
+     * As with writeAllOrdersJson, a failed query throws and leaves the
+     * document unfinished, and a non-null `statusOf` adds each row's status.
+     */
+    public void writeOrdersPageJson(OrderQuery query, JsonWriter out, IntFunction<String> statusOf)
+    throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT o.id, o.customer_name, o.order_date, ")
+                .append(itemsJsonColumn()).append(" AS items, o.total_price, o.item_count FROM orders o WHERE TRUE");
+        List<Object> params = new ArrayList<>();
+        // A date filter orders by (order_date, id), which idx_orders_order_date_id serves in one range scan;
+        // ordering it by id alone would walk the primary key past every newer order outside the range
+        boolean byDate = query.isDateFiltered();
+        if (query.getAfterId() != null && byDate) {
+            sql.append(" AND (o.order_date, o.id) < (?, ?)");
+            params.add(Timestamp.valueOf(query.getAfterDate()));
+            params.add(query.getAfterId());
+        } else if (query.getAfterId() != null) {
+            sql.append(" AND o.id < ?");
+            params.add(query.getAfterId());
+        }
+        if (query.getFromDate() != null) {
+            sql.append(" AND o.order_date >= ?");
+            params.add(Timestamp.valueOf(query.getFromDate().atStartOfDay()));
+        }
+        if (query.getToDate() != null) {
+            sql.append(" AND o.order_date < ?");
+            params.add(Timestamp.valueOf(query.getToDate().plusDays(1).atStartOfDay()));
+        }
+        if (query.getCustomer() != null) {
+            sql.append(" AND lower(o.customer_name) = lower(?)");
+            params.add(query.getCustomer());
+        }
+        // One extra row tells us whether another page exists
+        sql.append(byDate ? " ORDER BY o.order_date DESC, o.id DESC LIMIT ?" : " ORDER BY o.id DESC LIMIT ?");
+        params.add(query.getLimit() + 1);
 
-        return json.toString();
+        out.beginObject().name("orders").beginArray();
+        Integer nextAfter = null;
+        Timestamp nextAfterDate = null;
+
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+                pstmt.setFetchSize(Math.min(FETCH_SIZE, query.getLimit() + 1));
+                for (int i = 0; i < params.size(); i++) {
+                    pstmt.setObject(i + 1, params.get(i));
+                }
+
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    int rows = 0;
+                    int lastId = 0;
+                    Timestamp lastDate = null;
+                    while (rs.next()) {
+                        if (rows == query.getLimit()) {
+                            nextAfter = lastId;
+                            nextAfterDate = lastDate;
+                            break;
+                        }
+                        writeOrderJson(out, rs, statusOf);
+                        lastId = rs.getInt("id");
+                        lastDate = rs.getTimestamp("order_date");
+                        rows++;
+                    }
+                }
+            }
+        }
+
+        out.endArray().name("limit").value(query.getLimit()).name("nextAfter");
+        if (nextAfter == null) out.nullValue(); else out.value(nextAfter);
+        if (byDate) {
+            out.name("nextAfterDate");
+            if (nextAfterDate == null) out.nullValue(); else out.value(nextAfterDate.toLocalDateTime().toString());
+        }
+        out.endObject();
+    }
+
+    private static void writeOrderJson(JsonWriter out, ResultSet rs, IntFunction<String> statusOf)
+    throws SQLException {
+        int id = rs.getInt("id");
+        String customer = rs.getString("customer_name");
+        out.beginObject()
+           .name("id").value(id)
+           .name("customer").value(customer == null ? "" : customer)
+           .name("orderDate").value(String.valueOf(rs.getTimestamp("order_date")))
+           .name("items").rawValue(rs.getString("items"))
+           .name("price").valueCents(Money.fromBigDecimal(rs.getBigDecimal("total_price")))
+           .name("itemCount").value(rs.getInt("item_count"));
+        if (statusOf != null) out.name("status").value(statusOf.apply(id));
+        out.endObject();
     }
 
     // MENU item CRUD operations
-    public int createMenuItem(String name, String description, double price, String category) {
+    public int createMenuItem(String name, String description, long priceCents, String category) {
         String sql = "INSERT INTO menu_items (name, description, price, category) VALUES (?, ?, ?, ?) RETURNING id";
         try (Connection conn = connect();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, name);
             pstmt.setString(2, description);
-            pstmt.setDouble(3, price);
+            pstmt.setBigDecimal(3, Money.toBigDecimal(priceCents));
             pstmt.setString(4, category);
             ResultSet rs = pstmt.executeQuery();
             if (rs.next()) return rs.getInt(1);
         } catch (SQLException e) {
-            System.out.println("createMenuItem failed: " + e.getMessage());
+            log.warn("createMenuItem failed: {}", e.getMessage());
         }
         return -1;
     }
 
-    public boolean updateMenuItem(int id, String name, String description, double price, String category) {
+    public boolean updateMenuItem(int id, String name, String description, long priceCents, String category) {
         String sql = "UPDATE menu_items SET name = ?, description = ?, price = ?, category = ? WHERE id = ?";
         try (Connection conn = connect();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, name);
             pstmt.setString(2, description);
-            pstmt.setDouble(3, price);
+            pstmt.setBigDecimal(3, Money.toBigDecimal(priceCents));
             pstmt.setString(4, category);
             pstmt.setInt(5, id);
             int affected = pstmt.executeUpdate();
             return affected > 0;
         } catch (SQLException e) {
-            System.out.println("updateMenuItem failed: " + e.getMessage());
+            log.warn("updateMenuItem failed: {}", e.getMessage());
             return false;
         }
     }
@@ -171,18 +620,95 @@ public class DatabaseManager {
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, id);
             int affected = pstmt.executeUpdate();
-            System.out.println("[DB] Deleted menu_item #" + id + ", affected=" + affected);
-            if (affected > 0) {
-                // Keep order sequence aligned as well (defensive)
-                syncOrderSequence();
-            }
+            log.info("Deleted menu_item #{}, affected={}", id, affected);
             return affected > 0;
         } catch (SQLException e) {
-            System.out.println("deleteMenuItem failed: " + e.getMessage());
+            log.warn("deleteMenuItem failed: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * DELETE an order and, if it existed, record the delete in order_changes
+     * under `version`, in one statement.
+     */
+    public boolean deleteOrder(int orderId, long version) {
+        String sql = "WITH d AS (DELETE FROM orders WHERE id = ? RETURNING id), " +
+                     "c AS (INSERT INTO order_changes (version, order_id, op) SELECT ?, id, 'delete' FROM d) " +
+                     "SELECT count(*) FROM d";
+        try (Connection conn = connect()) {
+            if (conn == null) return false;
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, orderId);
+                pstmt.setLong(2, version);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    int affected = rs.next() ? rs.getInt(1) : 0;
+                    log.info("Deleted order #{}, affected={}", orderId, affected);
+                    return affected > 0;
+                }
+            }
+        } catch (SQLException e) {
+            log.warn("Deleting order failed: {}", e.getMessage());
             return false;
         }
     }
 
+    /** Record a change that has no row write of its own (status, or an order only in memory). */
+    public boolean recordOrderChange(long version, int orderId, OrderChangeLog.Op op) {
+        String sql = "INSERT INTO order_changes (version, order_id, op) VALUES (?, ?, ?) ON CONFLICT (version) DO NOTHING";
+        try (Connection conn = connect()) {
+            if (conn == null) return false;
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setLong(1, version);
+                pstmt.setInt(2, orderId);
+                pstmt.setString(3, op.name().toLowerCase());
+                pstmt.executeUpdate();
+                return true;
+            }
+        } catch (SQLException e) {
+            log.warn("Recording order change {} failed: {}", version, e.getMessage());
+            return false;
+        }
+    }
+
+    /** The newest `limit` rows of order_changes, oldest first. */
+    public List<OrderChangeLog.Change> loadRecentOrderChanges(int limit) {
+        List<OrderChangeLog.Change> changes = new ArrayList<>();
+        String sql = "SELECT version, order_id, op FROM order_changes ORDER BY version DESC LIMIT ?";
+        try (Connection conn = connect()) {
+            if (conn == null) return changes;
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, limit);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        changes.add(new OrderChangeLog.Change(rs.getLong("version"), rs.getInt("order_id"),
+                                OrderChangeLog.Op.valueOf(rs.getString("op").toUpperCase()), null));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            log.warn("Loading order changes failed: {}", e.getMessage());
+        }
+        java.util.Collections.reverse(changes);
+        return changes;
+    }
+
+    /** Drop all but the newest `retain` rows of order_changes. */
+    public void pruneOrderChanges(int retain) {
+        String sql = "DELETE FROM order_changes WHERE version < " +
+                     "(SELECT version FROM order_changes ORDER BY version DESC OFFSET ? LIMIT 1)";
+        try (Connection conn = connect()) {
+            if (conn == null) return;
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, Math.max(0, retain - 1));
+                int pruned = pstmt.executeUpdate();
+                if (pruned > 0) log.info("Pruned {} old order changes", pruned);
+            }
+        } catch (SQLException e) {
+            log.warn("Pruning order changes failed: {}", e.getMessage());
+        }
+    }
+
     // DELETE an order by id
     public boolean deleteOrder(int orderId) {
         String sql = "DELETE FROM orders WHERE id = ?";
@@ -190,20 +716,20 @@ public class DatabaseManager {
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, orderId);
             int affected = pstmt.executeUpdate();
-            System.out.println("[DB] Deleted order #" + orderId + ", affected=" + affected);
-            if (affected > 0) {
-                // After deleting, ensure sequence stays aligned with current max(id)
-                syncOrderSequence();
-            }
+            log.info("Deleted order #{}, affected={}", orderId, affected);
             return affected > 0;
         } catch (SQLException e) {
-            System.out.println("Deleting order failed: " + e.getMessage());
+            log.warn("Deleting order failed: {}", e.getMessage());
             return false;
         }
     }
 
     // LOAD orders from DB and construct domain.Order objects
     public List<Order> loadOrders() {
+        if (schemaMode == SchemaMode.NORMALIZED) {
+            return loadNormalizedOrders();
+        }
+
         List<Order> orders = new ArrayList<>();
         String sql = "SELECT id, customer_name, items, total_price FROM orders ORDER BY id";
 
@@ -215,40 +741,131 @@ public class DatabaseManager {
                 int id = rs.getInt("id");
                 String customer = rs.getString("customer_name");
                 String itemsJson = rs.getString("items");
-                double total = rs.getDouble("total_price");
+                long total = Money.fromBigDecimal(rs.getBigDecimal("total_price"));
 
                 Order order = new Order(id, customer == null ? "" : customer);
 
-                List<String> itemStrings = parseItemsJson(itemsJson);
-                for (String itemStr : itemStrings) {
-                    int itemId = extractInt(itemStr, "id");
-                    String name = extractString(itemStr, "name");
-                    double price = extractDouble(itemStr, "price");
-                    int qty = extractInt(itemStr, "quantity");
-                    if (qty <= 0) qty = 1;
-
-                    MenuItem mi = new MenuItem(itemId, name == null ? "" : name, "", price, "Other");
-                    for (int i = 0; i < qty; i++) {
-                        order.addItem(mi);
-                    }
+                for (OrderLine line : parseLineItems(itemsJson)) {
+                    order.addItem(line.getItem(), line.getQuantity());
                 }
 
-                order.setTotalPrice(total);
+                order.setTotalCents(total);
                 orders.add(order);
             }
 
         } catch (SQLException e) {
-            System.out.println("Loading orders failed: " + e.getMessage());
+            log.warn("Loading orders failed: {}", e.getMessage());
+        }
+
+        return orders;
+    }
+
+    // Normalized mode: one joined pass, lines arrive grouped by order
+    private List<Order> loadNormalizedOrders() {
+        List<Order> orders = new ArrayList<>();
+        String sql = "SELECT o.id, o.customer_name, o.total_price, " +
+                     "i.menu_item_id, i.item_name, i.quantity, i.unit_price " +
+                     "FROM orders o LEFT JOIN order_items i ON i.order_id = o.id " +
+                     "ORDER BY o.id, i.id";
+
+        try (Connection conn = connect();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+
+            Order current = null;
+            while (rs.next()) {
+                int id = rs.getInt("id");
+                if (current == null || current.getOrderId() != id) {
+                    String customer = rs.getString("customer_name");
+                    current = new Order(id, customer == null ? "" : customer);
+                    current.setTotalCents(Money.fromBigDecimal(rs.getBigDecimal("total_price")));
+                    orders.add(current);
+                }
+
+                int itemId = rs.getInt("menu_item_id");
+                if (rs.wasNull()) continue; // order without lines
+
+                String name = rs.getString("item_name");
+                long price = Money.fromBigDecimal(rs.getBigDecimal("unit_price"));
+                int qty = rs.getInt("quantity");
+                if (qty <= 0) qty = 1;
+
+                long total = current.getTotalCents();
+                current.addItem(MenuItemInterner.intern(itemId, name, price), qty);
+                current.setTotalCents(total);
+            }
+
+        } catch (SQLException e) {
+            log.warn("Loading orders failed: {}", e.getMessage());
         }
 
         return orders;
     }
 
-    // Ensure PostgreSQL sequence for orders.id is set to max(id) to avoid lower nextval
+    /**
+     * LOAD one page of orders, newest first: orders with id below `beforeId`
+     * (all if null), at most `limit` of them. Used to warm the repository in
+     * the background instead of loading the whole table at startup.
+     */
+    public List<Order> loadOrdersPage(Integer beforeId, int limit) {
+        List<Order> orders = new ArrayList<>();
+        String sql = "SELECT o.id, o.customer_name, o.total_price, " + itemsJsonColumn() + " AS items " +
+                     "FROM orders o " + (beforeId != null ? "WHERE o.id < ? " : "") +
+                     "ORDER BY o.id DESC LIMIT ?";
+
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int idx = 1;
+            if (beforeId != null) pstmt.setInt(idx++, beforeId);
+            pstmt.setInt(idx, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    orders.add(orderFromRow(rs));
+                }
+            }
+        } catch (SQLException e) {
+            log.warn("Loading orders page failed: {}", e.getMessage());
+        }
+        return orders;
+    }
+
+    /** LOAD a single order by id, or null if it does not exist; throws DataAccessException if it cannot be read. */
+    public Order loadOrder(int orderId) {
+        String sql = "SELECT o.id, o.customer_name, o.total_price, " + itemsJsonColumn() + " AS items " +
+                     "FROM orders o WHERE o.id = ?";
+
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, orderId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? orderFromRow(rs) : null;
+            }
+        } catch (SQLException e) {
+            log.warn("Loading order {} failed: {}", orderId, e.getMessage());
+            throw new DataAccessException("Loading order " + orderId + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    // Row with id, customer_name, total_price and items (JSON array) -> Order
+    private static Order orderFromRow(ResultSet rs) throws SQLException {
+        String customer = rs.getString("customer_name");
+        Order order = new Order(rs.getInt("id"), customer == null ? "" : customer);
+        for (OrderLine line : parseLineItems(rs.getString("items"))) {
+            order.addItem(line.getItem(), line.getQuantity());
+        }
+        order.setTotalCents(Money.fromBigDecimal(rs.getBigDecimal("total_price")));
+        return order;
+    }
+
+    /**
+     * Ensure the orders.id sequence is at least max(id), e.g. after rows were
+     * inserted with ids from outside it. Scans the whole table, so it runs at
+     * startup and from the admin endpoint only, never per request.
+     */
     public void syncOrderSequence() {
         try (Connection conn = connect()) {
             if (conn == null) {
-                System.out.println("[DB] Cannot sync sequence: no DB connection");
+                log.warn("Cannot sync sequence: no DB connection");
                 return;
             }
 
@@ -261,7 +878,7 @@ public class DatabaseManager {
             }
 
             if (seqName == null || seqName.isEmpty()) {
-                System.out.println("[DB] Could not determine orders.id sequence name");
+                log.warn("Could not determine orders.id sequence name");
                 return;
             }
 
@@ -272,10 +889,13 @@ public class DatabaseManager {
                 }
             }
 
-            String setvalSql = String.format("SELECT setval('%s', %d, true)", seqName.replace("'", "''"), maxId);
+            // Never move the sequence back: ids above max(id) may be reserved by OrderIdAllocator
+            // and not inserted yet, and handing them out again would collide
+            String setvalSql = String.format("SELECT setval('%s', GREATEST(%d, (SELECT last_value FROM %s)), true)",
+                    seqName.replace("'", "''"), maxId, seqName);
             try (Statement stmt = conn.createStatement()) {
                 stmt.execute(setvalSql);
-                System.out.println("[DB] Order sequence " + seqName + " set to max(id)=" + maxId);
+                log.info("Order sequence {} set to at least max(id)={}", seqName, maxId);
 
                 // Read back last_value and is_called for easier debugging
                 String checkSql = "SELECT last_value, is_called FROM " + seqName;
@@ -283,113 +903,70 @@ public class DatabaseManager {
                     if (rs2.next()) {
                         long lastVal = rs2.getLong("last_value");
                         boolean isCalled = rs2.getBoolean("is_called");
-                        System.out.println("[DB] Sequence state: last_value=" + lastVal + ", is_called=" + isCalled);
+                        log.debug("Sequence state: last_value={}, is_called={}", lastVal, isCalled);
                     }
                 } catch (SQLException e) {
-                    System.out.println("[DB] Could not read sequence state: " + e.getMessage());
+                    log.warn("Could not read sequence state: {}", e.getMessage());
                 }
             }
 
         } catch (SQLException e) {
-            System.out.println("Syncing order sequence failed: " + e.getMessage());
+            log.warn("Syncing order sequence failed: {}", e.getMessage());
         }
     }
 
-    // Parse items JSON string into list
-    private List<String> parseItemsJson(String itemsJson) {
-        List<String> items = new ArrayList<>();
-        if (itemsJson == null || itemsJson.equals("[]")) {
-            return items;
-        }
-        
-        // Simple JSON array parsing
-        String content = itemsJson.substring(1, itemsJson.length() - 1);
-        if (content.isEmpty()) return items;
-        
-        int depth = 0;
-        StringBuilder current = new StringBuilder();
-        for (char c : content.toCharArray()) {
-            if (c == '{') depth++;
-            if (c == '}') depth--;
-            
-            if (c == ',' && depth == 0) {
-                items.add(current.toString().trim());
-                current = new StringBuilder();
-            } else {
-                current.append(c);
-            }
-        }
-        if (current.length() > 0) {
-            items.add(current.toString().trim());
+    /**
+     * Parse an orders.items JSON array ([{"id":1,"name":"X","quantity":2,"price":1.50}, ...])
+     * into line items. Fields may appear in any order; a missing quantity counts
+     * as 1. A malformed blob is logged and treated as having no lines.
+     */
+    static List<OrderLine> parseLineItems(String itemsJson) {
+        try {
+            return parseLineItemsStrict(itemsJson);
+        } catch (IOException e) {
+            log.warn("Ignoring malformed items JSON: {}", e.getMessage());
+            return new ArrayList<>();
         }
-        
-        return items;
-    }
-
-    private static String escapeJson(String text) {
-        if (text == null) return "";
-        return text.replace("\\", "\\\\")
-                   .replace("\"", "\\\"")
-                   .replace("\n", "\\n")
-                   .replace("\r", "\\r")
-                   .replace("\t", "\\t");
     }
 
-    // Helpers to extract simple values from item JSON snippets like {"id":1,"name":"X","quantity":2}
-    private int extractInt(String json, String key) {
-        try {
-            String pattern = "\"" + key + "\":";
-            int idx = json.indexOf(pattern);
-            if (idx == -1) return 0;
-            idx += pattern.length();
-            StringBuilder sb = new StringBuilder();
-            while (idx < json.length()) {
-                char c = json.charAt(idx);
-                if (c == ',' || c == '}' || Character.isWhitespace(c)) break;
-                sb.append(c);
-                idx++;
-            }
-            String s = sb.toString().trim();
-            if (s.isEmpty()) return 0;
-            return Integer.parseInt(s);
-        } catch (Exception e) {
-            return 0;
+    // Like parseLineItems, but a malformed or truncated blob throws instead of yielding what was read so far
+    static List<OrderLine> parseLineItemsStrict(String itemsJson) throws IOException {
+        List<OrderLine> items = new ArrayList<>();
+        if (itemsJson == null || itemsJson.isEmpty() || itemsJson.equals("[]")) {
+            return items;
         }
-    }
 
-    private double extractDouble(String json, String key) {
-        try {
-            String pattern = "\"" + key + "\":";
-            int idx = json.indexOf(pattern);
-            if (idx == -1) return 0.0;
-            idx += pattern.length();
-            StringBuilder sb = new StringBuilder();
-            while (idx < json.length()) {
-                char c = json.charAt(idx);
-                if (c == ',' || c == '}' || Character.isWhitespace(c)) break;
-                sb.append(c);
-                idx++;
+        JsonReader reader = JsonReader.of(itemsJson);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            int id = 0;
+            String name = "";
+            int quantity = 0;
+            long price = 0;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName();
+                if (reader.peek() == JsonReader.Token.NULL) {
+                    reader.skipValue();
+                    continue;
+                }
+                switch (key) {
+                    case "id": id = reader.nextInt(); break;
+                    case "name": name = reader.nextString(); break;
+                    case "quantity": quantity = reader.nextInt(); break;
+                    case "price": price = reader.nextCents(); break;
+                    default: reader.skipValue();
+                }
             }
-            String s = sb.toString().trim();
-            if (s.isEmpty()) return 0.0;
-            return Double.parseDouble(s);
-        } catch (Exception e) {
-            return 0.0;
+            reader.endObject();
+            items.add(new OrderLine(MenuItemInterner.intern(id, name, price), quantity <= 0 ? 1 : quantity, price));
         }
-    }
-
-    private String extractString(String json, String key) {
-        try {
-            String pattern = "\"" + key + "\":\"";
-            int idx = json.indexOf(pattern);
-            if (idx == -1) return "";
-            idx += pattern.length();
-            int end = json.indexOf('"', idx);
-            if (end == -1) return "";
-            return json.substring(idx, end);
-        } catch (Exception e) {
-            return "";
+        reader.endArray();
+        if (reader.peek() != JsonReader.Token.END_DOCUMENT) {
+            throw new IOException("Unexpected data after the items array");
         }
+        return items;
     }
 
     // RECREATE tables with merged schema
@@ -421,11 +998,86 @@ public class DatabaseManager {
                     "item_count INT DEFAULT 0" +
                     ")");
 
-            System.out.println("[DB] Tables recreated successfully with merged schema!");
+            if (schemaMode == SchemaMode.NORMALIZED) {
+                createOrderItemsTable(stmt);
+            }
+            stmt.execute("DROP TABLE IF EXISTS order_changes");
+            createOrderChangesTable(stmt);
+            createOrderIndexes(stmt);
+
+            log.info("Tables recreated successfully with merged schema!");
+
+        } catch (SQLException e) {
+            log.warn("Table recreation failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Create the order_items table used by the NORMALIZED schema if it does not exist.
+     * menu_item_id is indexed but not a foreign key: lines keep the name and
+     * price captured at order time, so they must survive menu item deletion.
+     */
+    public static void createOrderItemsTable(Statement stmt) throws SQLException {
+        stmt.execute("CREATE TABLE IF NOT EXISTS order_items (" +
+                "id SERIAL PRIMARY KEY, " +
+                "order_id INT NOT NULL REFERENCES orders(id) ON DELETE CASCADE, " +
+                "menu_item_id INT NOT NULL, " +
+                "item_name VARCHAR(100) NOT NULL, " +
+                "quantity INT NOT NULL CHECK (quantity > 0), " +
+                "unit_price DECIMAL(10,2) NOT NULL" +
+                ")");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_order_items_order_id ON order_items (order_id)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_order_items_menu_item_id ON order_items (menu_item_id)");
+    }
+
+    /**
+     * Create the order_changes table behind OrderChangeLog if it does not exist.
+     * No foreign key: a delete's row must outlive the order.
+     */
+    public static void createOrderChangesTable(Statement stmt) throws SQLException {
+        stmt.execute("CREATE TABLE IF NOT EXISTS order_changes (" +
+                "version BIGINT PRIMARY KEY, " +
+                "order_id INT NOT NULL, " +
+                "op VARCHAR(10) NOT NULL, " +
+                "changed_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                ")");
+    }
+
+    public void ensureOrderChangesTable() {
+        try (Connection conn = connect()) {
+            if (conn == null) return;
+            try (Statement stmt = conn.createStatement()) {
+                createOrderChangesTable(stmt);
+            }
+        } catch (SQLException e) {
+            log.warn("Creating order_changes failed: {}", e.getMessage());
+        }
+    }
 
+    /**
+     * Indexes backing the paginated order queries: the primary key serves the
+     * id cursor, these serve the customer filter and the date filter with its
+     * (order_date, id) cursor.
+     */
+    public void ensureOrderIndexes() {
+        try (Connection conn = connect()) {
+            if (conn == null) {
+                log.warn("Cannot create order indexes: no DB connection");
+                return;
+            }
+            try (Statement stmt = conn.createStatement()) {
+                createOrderIndexes(stmt);
+            }
         } catch (SQLException e) {
-            System.out.println("Table recreation failed: " + e.getMessage());
+            log.warn("Creating order indexes failed: {}", e.getMessage());
         }
     }
 
+    private static void createOrderIndexes(Statement stmt) throws SQLException {
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_orders_customer_id ON orders (lower(customer_name), id DESC)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_orders_order_date_id ON orders (order_date, id)");
+        // Superseded by idx_orders_order_date_id, which serves the same lookups
+        stmt.execute("DROP INDEX IF EXISTS idx_orders_order_date");
+    }
+
 }
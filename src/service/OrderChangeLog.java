@@ -0,0 +1,137 @@
+package service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * OrderChangeLog - numbered history of order inserts, updates and deletes,
+ * for clients that catch up with "everything since version N".
+ *
+ * A writer reserves a version before its database write and then commits or
+ * aborts it. Writes can finish in any order, but changes are released in
+ * version order: a change becomes visible (and reaches the listener) only
+ * when every lower version is resolved. A client that has seen version N has
+ * therefore seen every change up to N. Aborted versions leave gaps.
+ *
+ * The last -Dorders.changes.history changes (default 10000) are kept. Older
+ * ones are compacted away, and {@link #changesSince} returns null for them:
+ * the client must start over from a full snapshot.
+ *
+ * Every committed change is also a row in the order_changes table, written
+ * together with the order itself (see DatabaseManager). At startup the log
+ * is seeded from the newest rows, so versions keep increasing across
+ * restarts and clients can resume across them.
+ */
+public class OrderChangeLog {
+    public enum Op { INSERT, UPDATE, DELETE }
+
+    /** One change. `row` is the order as JSON at the time, or null if unknown (loaded from the table). */
+    public record Change(long version, int orderId, Op op, byte[] row) {
+    }
+
+    private static final Change PENDING = new Change(0, 0, Op.UPDATE, null);
+    private static final Change ABORTED = new Change(0, 0, Op.UPDATE, null);
+
+    private final Change[] history;   // ring in version order, guarded by this
+    private int head;                 // guarded by this
+    private int count;                // guarded by this
+    private long floor;               // changes after this version are all in history, guarded by this
+    private long latest;              // newest released change, guarded by this
+    private long reserved;            // highest version handed out, guarded by this
+    private final TreeMap<Long, Change> unresolved = new TreeMap<>(); // guarded by this
+    private Consumer<Change> listener = change -> { };                // guarded by this
+
+    /**
+     * `recent` are the newest known changes in version order; `floor` is the
+     * version before which changes may be missing (0 if `recent` is complete).
+     */
+    public OrderChangeLog(int historySize, List<Change> recent, long floor) {
+        this.history = new Change[Math.max(1, historySize)];
+        this.floor = floor;
+        this.latest = floor;
+        for (Change c : recent) {
+            if (c.version() > latest) append(c);
+        }
+        this.reserved = latest;
+    }
+
+    public static int historySizeFromSystemProperties() {
+        return Integer.getInteger("orders.changes.history", 10_000);
+    }
+
+    /** Called with every released change, in version order, while the log is locked. */
+    public synchronized void setListener(Consumer<Change> listener) {
+        this.listener = listener;
+    }
+
+    /** Version for a change about to be written; must be followed by commit or abort. */
+    public synchronized long reserve() {
+        long version = ++reserved;
+        unresolved.put(version, PENDING);
+        return version;
+    }
+
+    public synchronized void commit(long version, int orderId, Op op, byte[] row) {
+        resolve(version, new Change(version, orderId, op, row));
+    }
+
+    public synchronized void abort(long version) {
+        resolve(version, ABORTED);
+    }
+
+    /** Newest change a client can have seen; the version to report with a snapshot. */
+    public synchronized long latestVersion() {
+        return latest;
+    }
+
+    /**
+     * The changes after `version`, oldest first, or null if some of them were
+     * compacted away or `version` is not one this log has issued.
+     */
+    public synchronized List<Change> changesSince(long version) {
+        if (version < floor || version > latest) return null;
+        List<Change> changes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Change c = history[(head + i) % history.length];
+            if (c.version() > version) changes.add(c);
+        }
+        return changes;
+    }
+
+    /**
+     * Run `action` on {@link #changesSince} while no change can be released,
+     * so a subscriber can take the backlog and start listening without a gap.
+     */
+    public synchronized <T> T withChangesSince(long version, Function<List<Change>, T> action) {
+        return action.apply(changesSince(version));
+    }
+
+    private void resolve(long version, Change outcome) {
+        if (unresolved.replace(version, outcome) == null) {
+            throw new IllegalStateException("Order change version " + version + " was not reserved or is already resolved");
+        }
+        // Release everything up to the first version still being written
+        while (!unresolved.isEmpty() && unresolved.firstEntry().getValue() != PENDING) {
+            Map.Entry<Long, Change> e = unresolved.pollFirstEntry();
+            if (e.getValue() != ABORTED) {
+                append(e.getValue());
+                listener.accept(e.getValue());
+            }
+        }
+    }
+
+    private void append(Change c) {
+        if (count < history.length) {
+            history[(head + count++) % history.length] = c;
+        } else {
+            floor = history[head].version();
+            history[head] = c;
+            head = (head + 1) % history.length;
+        }
+        latest = c.version();
+    }
+}
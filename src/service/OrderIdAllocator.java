@@ -0,0 +1,77 @@
+package service;
+
+import logging.Log;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntFunction;
+
+/**
+ * OrderIdAllocator - hands out order ids from blocks reserved in advance.
+ *
+ * The ids come from the orders id sequence (see
+ * DatabaseManager.reserveOrderIds), so they never collide with ids the
+ * database assigns itself. One query reserves a block of ids, and
+ * {@link #next()} then serves them from memory. When half of a block is used,
+ * the next block is fetched in the background, so a request only waits for
+ * the database if ids run out faster than a block can be fetched.
+ *
+ * Ids still unused at shutdown are never handed out again, which leaves gaps
+ * in the sequence.
+ */
+public class OrderIdAllocator {
+    private static final Log log = Log.get("orders");
+
+    private final IntFunction<int[]> source; // count -> reserved ids, empty if none could be reserved
+    private final int blockSize;
+    private final ExecutorService prefetcher;
+
+    private int[] block = new int[0];        // guarded by this
+    private int next;                        // guarded by this
+    private CompletableFuture<int[]> pending; // guarded by this
+
+    public OrderIdAllocator(IntFunction<int[]> source, int blockSize) {
+        this.source = source;
+        this.blockSize = Math.max(1, blockSize);
+        this.prefetcher = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "order-id-prefetch");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public static OrderIdAllocator fromSystemProperties(DatabaseManager databaseManager) {
+        return new OrderIdAllocator(databaseManager::reserveOrderIds, Integer.getInteger("orders.idBlockSize", 100));
+    }
+
+    /**
+     * The next order id. Throws IllegalStateException if the current block is
+     * used up and no new one can be reserved (database unavailable).
+     */
+    public synchronized int next() {
+        if (next == block.length) {
+            block = nextBlock();
+            next = 0;
+            if (block.length == 0) throw new IllegalStateException("No order ids available: could not reserve a block");
+        }
+        int id = block[next++];
+        if (pending == null && next * 2 >= block.length) {
+            pending = CompletableFuture.supplyAsync(() -> source.apply(blockSize), prefetcher);
+        }
+        return id;
+    }
+
+    // The prefetched block if there is a usable one, otherwise a block fetched now
+    private int[] nextBlock() {
+        CompletableFuture<int[]> p = pending;
+        pending = null;
+        if (p != null) {
+            int[] ids = p.exceptionally(e -> new int[0]).join();
+            if (ids.length > 0) return ids;
+        }
+        int[] ids = source.apply(blockSize);
+        if (ids.length > 0) log.debug("Reserved order ids {}..{}", ids[0], ids[ids.length - 1]);
+        return ids;
+    }
+}
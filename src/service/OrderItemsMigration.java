@@ -0,0 +1,141 @@
+package service;
+
+import domain.Money;
+import domain.OrderLine;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * OrderItemsMigration - converts the JSON text in orders.items into rows of
+ * the order_items table (the NORMALIZED schema).
+ *
+ * Orders are read in keyset-paginated batches, so memory use does not depend
+ * on table size. Each batch is one transaction: its lines are inserted with a
+ * JDBC batch and the migrated blobs are reset to '[]'. A re-run therefore only
+ * picks up orders that have not been converted yet. A blob that does not
+ * parse completely is left as it is, with no rows written, and its order id
+ * is reported so it can be repaired by hand before the next run.
+ *
+ * Run with: `java -cp out;lib/* service.OrderItemsMigration [batchSize]`
+ * then start the server with -Ddb.schema=normalized.
+ */
+public class OrderItemsMigration {
+    private static final int DEFAULT_BATCH_SIZE = 500;
+
+    private final ConnectionPool pool;
+    private final int batchSize;
+    private final List<Integer> skipped = new ArrayList<>();
+
+    public OrderItemsMigration(ConnectionPool pool, int batchSize) {
+        this.pool = pool;
+        this.batchSize = batchSize;
+    }
+
+    public static void main(String[] args) throws SQLException {
+        int batchSize = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_BATCH_SIZE;
+        OrderItemsMigration migration = new OrderItemsMigration(ConnectionPool.shared(), batchSize);
+        long migrated = migration.run();
+        System.out.println("[Migration] Done: " + migrated + " orders converted");
+        if (!migration.getSkipped().isEmpty()) {
+            System.err.println("[Migration] " + migration.getSkipped().size()
+                    + " orders left unconverted (malformed items JSON): " + migration.getSkipped());
+        }
+    }
+
+    /** Ids of the orders whose items JSON could not be parsed; their blobs were left untouched. */
+    public List<Integer> getSkipped() {
+        return skipped;
+    }
+
+    /** Convert all remaining JSON blobs; returns the number of orders converted. */
+    public long run() throws SQLException {
+        try (Connection conn = pool.getConnection();
+             Statement stmt = conn.createStatement()) {
+            DatabaseManager.createOrderItemsTable(stmt);
+        }
+
+        long total = 0;
+        int lastId = 0;
+        while (true) {
+            int[] result = migrateBatch(lastId);
+            if (result[0] == 0) break;
+            total += result[1];
+            lastId = result[2];
+            System.out.println("[Migration] Converted " + total + " orders (up to id " + lastId + ")");
+        }
+        return total;
+    }
+
+    // Returns {ordersRead, ordersConverted, lastOrderId}
+    private int[] migrateBatch(int afterId) throws SQLException {
+        String selectSql = "SELECT id, items FROM orders " +
+                           "WHERE id > ? AND items IS NOT NULL AND items <> '[]' " +
+                           "ORDER BY id LIMIT ? FOR UPDATE";
+        String insertSql = "INSERT INTO order_items (order_id, menu_item_id, item_name, quantity, unit_price) " +
+                           "VALUES (?, ?, ?, ?, ?)";
+        String clearSql = "UPDATE orders SET items = '[]' WHERE id = ?";
+
+        try (Connection conn = pool.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement select = conn.prepareStatement(selectSql);
+                 PreparedStatement insert = conn.prepareStatement(insertSql);
+                 PreparedStatement clear = conn.prepareStatement(clearSql)) {
+
+                select.setInt(1, afterId);
+                select.setInt(2, batchSize);
+
+                List<Integer> ids = new ArrayList<>();
+                int converted = 0;
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        int orderId = rs.getInt("id");
+                        ids.add(orderId);
+                        List<OrderLine> lines;
+                        try {
+                            lines = DatabaseManager.parseLineItemsStrict(rs.getString("items"));
+                        } catch (IOException e) {
+                            // Never clear a blob unless every line in it was converted
+                            System.err.println("[Migration] Skipping order " + orderId
+                                    + ": malformed items JSON (" + e.getMessage() + ")");
+                            skipped.add(orderId);
+                            continue;
+                        }
+                        for (OrderLine line : lines) {
+                            insert.setInt(1, orderId);
+                            insert.setInt(2, line.getMenuItemId());
+                            insert.setString(3, line.getName());
+                            insert.setInt(4, line.getQuantity());
+                            insert.setBigDecimal(5, Money.toBigDecimal(line.getUnitPriceCents()));
+                            insert.addBatch();
+                        }
+                        clear.setInt(1, orderId);
+                        clear.addBatch();
+                        converted++;
+                    }
+                }
+
+                if (ids.isEmpty()) {
+                    conn.commit();
+                    return new int[]{0, 0, afterId};
+                }
+
+                if (converted > 0) {
+                    insert.executeBatch();
+                    clear.executeBatch();
+                }
+                conn.commit();
+                return new int[]{ids.size(), converted, ids.get(ids.size() - 1)};
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+}
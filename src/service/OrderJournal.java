@@ -0,0 +1,424 @@
+package service;
+
+import domain.MenuItemInterner;
+import domain.Order;
+import domain.OrderLine;
+import json.JsonReader;
+import json.JsonWriter;
+import logging.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * OrderJournal - append-only file of accepted orders that are not yet known
+ * to be in the database.
+ *
+ * Each order is one line: the CRC32 of the JSON record in hex, a space, the
+ * record and a newline. {@link #append} writes the line and {@link #sync}
+ * makes it durable. Syncs are group commits: while one thread is in fsync,
+ * other threads queue up behind it, and the next fsync covers all of them.
+ * Under load one fsync acknowledges many orders.
+ *
+ * A checkpoint file next to the journal holds the offset up to which every
+ * record has been written to the database. It is advanced by the flusher
+ * (see OrderWriteBehind) and need not be durable itself: records past a stale
+ * checkpoint are inserted again on replay, and the insert ignores ids that
+ * already exist. Once everything is flushed and the file has grown past
+ * -Dorders.journal.compactBytes, it is truncated to zero.
+ *
+ * {@link #recover} reads the records past the checkpoint at startup. A torn
+ * last line (crash during a write) fails its CRC and is cut off.
+ *
+ * An order deleted before it was flushed gets a deletion record
+ * ({@link #appendDeletion}); recovery drops the order it names.
+ */
+public class OrderJournal implements Closeable {
+    private static final Log log = Log.get("journal");
+
+    /**
+     * One journaled order and its OrderChangeLog version. `endOffset` is where
+     * its line ends, counted in bytes ever appended, so it keeps growing
+     * across compactions. A deletion record carries only the order id and is
+     * never returned by {@link #recover}.
+     */
+    public record Entry(Order order, long createdAtMillis, long version, long endOffset, boolean deleted) {
+    }
+
+    private final Path path;
+    private final Path checkpointPath;
+    private final long compactBytes;
+    private final FileChannel channel;
+
+    private final Object writeLock = new Object();
+    private volatile long written;      // end of the last complete line, advanced under writeLock
+    private long base;                  // offset of the current file start, guarded by writeLock
+
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition syncDone = syncLock.newCondition();
+    private long durable;               // guarded by syncLock
+    private boolean syncing;            // guarded by syncLock
+    private IOException syncFailure;    // once fsync fails, the file's state is unknown
+
+    private long checkpoint;            // guarded by writeLock
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    public OrderJournal(Path path, long compactBytes) throws IOException {
+        this.path = path.toAbsolutePath();
+        this.checkpointPath = Path.of(this.path + ".checkpoint");
+        this.compactBytes = compactBytes;
+        if (this.path.getParent() != null) Files.createDirectories(this.path.getParent());
+        this.channel = FileChannel.open(this.path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    public static OrderJournal fromSystemProperties() throws IOException {
+        return new OrderJournal(Path.of(System.getProperty("orders.journal", "orders.journal")),
+                Long.getLong("orders.journal.compactBytes", 16L * 1024 * 1024));
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Read the records after the checkpoint, in file order, and position the
+     * journal for appending after the last valid one. Call once, before the
+     * first append.
+     */
+    public List<Entry> recover() throws IOException {
+        long size = channel.size();
+        long start = Math.min(readCheckpoint(), size);
+        List<Entry> entries = new ArrayList<>();
+        long offset = start;
+
+        channel.position(start);
+        InputStream in = new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024);
+        ByteArrayOutputStream line = new ByteArrayOutputStream(512);
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b != '\n') {
+                line.write(b);
+                continue;
+            }
+            byte[] bytes = line.toByteArray();
+            line.reset();
+            Entry entry = decode(bytes, offset + bytes.length + 1);
+            if (entry == null) break;
+            if (entry.deleted()) {
+                int id = entry.order().getOrderId();
+                entries.removeIf(e -> e.order().getOrderId() == id);
+            } else {
+                entries.add(entry);
+            }
+            offset += bytes.length + 1;
+        }
+
+        if (offset < size) {
+            log.warn("Journal {}: dropping {} bytes of torn or corrupt data at offset {}", path, size - offset, offset);
+            channel.truncate(offset);
+        }
+        channel.position(offset);
+        synchronized (writeLock) {
+            base = 0;
+            written = offset;
+            checkpoint = start;
+        }
+        syncLock.lock();
+        try {
+            durable = offset;
+        } finally {
+            syncLock.unlock();
+        }
+        if (!entries.isEmpty()) {
+            log.info("Journal {}: {} orders not yet in the database", path, entries.size());
+        }
+        return entries;
+    }
+
+    /**
+     * Write one order and return its entry. The line is in the file but not
+     * yet durable; call {@link #sync} with its endOffset before acknowledging.
+     * `beforePublish` runs under the append lock, so its calls happen in file
+     * order (the flusher relies on this to advance the checkpoint in order).
+     * The entry it receives may still fail to sync: consumers must call
+     * {@link #sync} themselves before acting on it.
+     */
+    public Entry append(Order order, long createdAtMillis, long version, Consumer<Entry> beforePublish)
+    throws IOException {
+        return write(encode(order, createdAtMillis, version, false),
+                length -> new Entry(order, createdAtMillis, version, written + length, false), beforePublish);
+    }
+
+    /**
+     * Write a deletion record for an order appended earlier, so that
+     * {@link #recover} drops it. Like {@link #append}, call {@link #sync}
+     * before acknowledging.
+     */
+    public Entry appendDeletion(int orderId, long deletedAtMillis, long version) throws IOException {
+        Order order = new Order(orderId, "");
+        return write(encode(order, deletedAtMillis, version, true),
+                length -> new Entry(order, deletedAtMillis, version, written + length, true), entry -> { });
+    }
+
+    private Entry write(byte[] line, java.util.function.IntFunction<Entry> entryFor, Consumer<Entry> beforePublish)
+    throws IOException {
+        synchronized (writeLock) {
+            checkUsable();
+            ByteBuffer buf = ByteBuffer.wrap(line);
+            while (buf.hasRemaining()) channel.write(buf);
+            Entry entry = entryFor.apply(line.length);
+            beforePublish.accept(entry);
+            written = entry.endOffset();
+            return entry;
+        }
+    }
+
+    /** Block until every byte up to `offset` is on disk, sharing fsyncs with concurrent callers. */
+    public void sync(long offset) throws IOException {
+        syncLock.lock();
+        try {
+            while (durable < offset) {
+                if (syncFailure != null) throw new IOException("Journal is unusable after a failed sync", syncFailure);
+                if (syncing) {
+                    syncDone.awaitUninterruptibly();
+                    continue;
+                }
+                // Become the leader: one fsync for everything written so far
+                syncing = true;
+                long target = written;
+                syncLock.unlock();
+                IOException failure = null;
+                try {
+                    channel.force(false);
+                } catch (IOException e) {
+                    failure = e;
+                } finally {
+                    syncLock.lock();
+                    syncing = false;
+                }
+                if (failure != null) {
+                    syncFailure = failure;
+                    log.error("Journal fsync failed; further orders are rejected", failure);
+                } else if (target > durable) {
+                    durable = target;
+                }
+                syncDone.signalAll();
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /** End of the data known to be on disk. After a failed sync it stays put: entries past it were rejected. */
+    public long durableOffset() {
+        syncLock.lock();
+        try {
+            return durable;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * After a failed sync, cut the lines that were never acknowledged off the
+     * file (best effort), so a restart does not replay orders whose clients
+     * were told they failed. Returns the durable offset.
+     */
+    public long discardUnsynced() {
+        synchronized (writeLock) {
+            long end = durableOffset();
+            if (written > end) {
+                try {
+                    channel.truncate(end - base);
+                } catch (IOException e) {
+                    log.warn("Journal {}: could not cut unacknowledged records after offset {}: {}", path, end, e.getMessage());
+                }
+            }
+            return end;
+        }
+    }
+
+    /**
+     * Record that every entry up to `offset` is in the database. Compacts the
+     * file when that covers everything written and the file is large enough.
+     */
+    public void checkpoint(long offset) throws IOException {
+        synchronized (writeLock) {
+            if (offset <= checkpoint) return;
+            checkpoint = offset;
+            if (offset == written && written - base >= compactBytes) {
+                // Offsets keep counting; only the file starts over
+                channel.truncate(0);
+                channel.position(0);
+                base = written;
+                log.info("Journal {} compacted", path);
+            }
+            writeCheckpoint(checkpoint - base);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void checkUsable() throws IOException {
+        syncLock.lock();
+        try {
+            if (syncFailure != null) throw new IOException("Journal is unusable after a failed sync", syncFailure);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    // ==================== Checkpoint file ====================
+
+    private long readCheckpoint() {
+        try {
+            return Files.exists(checkpointPath) ? Long.parseLong(Files.readString(checkpointPath).trim()) : 0;
+        } catch (IOException | NumberFormatException e) {
+            log.warn("Unreadable journal checkpoint {}, replaying from the start: {}", checkpointPath, e.getMessage());
+            return 0;
+        }
+    }
+
+    // Write-then-rename, so a crash leaves either the old or the new value
+    private void writeCheckpoint(long offset) throws IOException {
+        Path tmp = Path.of(checkpointPath + ".tmp");
+        Files.writeString(tmp, Long.toString(offset));
+        Files.move(tmp, checkpointPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // ==================== Record format ====================
+
+    // "<crc32 hex> {"id":..,"customer":..,"at":..,"version":..,"lines":[{"id":..,"name":..,"quantity":..,"price":..}]}\n"
+    // A deletion record is "<crc32 hex> {"id":..,"deleted":true,"at":..,"version":..}\n"
+    static byte[] encode(Order order, long createdAtMillis, long version, boolean deleted) {
+        byte[] json;
+        try (JsonWriter w = JsonWriter.pooled()) {
+            if (deleted) {
+                w.beginObject()
+                 .name("id").value(order.getOrderId())
+                 .name("deleted").value(true)
+                 .name("at").value(createdAtMillis)
+                 .name("version").value(version)
+                 .endObject();
+                return frame(w.toByteArray());
+            }
+            w.beginObject()
+             .name("id").value(order.getOrderId())
+             .name("customer").value(order.getCustomerName() == null ? "" : order.getCustomerName())
+             .name("at").value(createdAtMillis)
+             .name("version").value(version)
+             .name("lines").beginArray();
+            for (OrderLine line : order.getLines()) {
+                w.beginObject()
+                 .name("id").value(line.getMenuItemId())
+                 .name("name").value(line.getName() == null ? "" : line.getName())
+                 .name("quantity").value(line.getQuantity())
+                 .name("price").valueCents(line.getUnitPriceCents())
+                 .endObject();
+            }
+            w.endArray().endObject();
+            json = w.toByteArray();
+        }
+        return frame(json);
+    }
+
+    private static byte[] frame(byte[] json) {
+        CRC32 crc = new CRC32();
+        crc.update(json);
+        byte[] line = new byte[9 + json.length + 1];
+        long c = crc.getValue();
+        for (int i = 7; i >= 0; i--, c >>>= 4) line[i] = HEX[(int) (c & 0xF)];
+        line[8] = ' ';
+        System.arraycopy(json, 0, line, 9, json.length);
+        line[line.length - 1] = '\n';
+        return line;
+    }
+
+    // Returns null for a line that is not a valid record
+    static Entry decode(byte[] line, long endOffset) {
+        if (line.length < 10 || line[8] != ' ') return null;
+        long expected;
+        try {
+            expected = Long.parseLong(new String(line, 0, 8, StandardCharsets.US_ASCII), 16);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(line, 9, line.length - 9);
+        if (crc.getValue() != expected) return null;
+
+        try {
+            JsonReader reader = new JsonReader(line, 9, line.length - 9);
+            int id = 0;
+            String customer = "";
+            long at = 0;
+            long version = 0;
+            boolean deleted = false;
+            List<OrderLine> lines = new ArrayList<>();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "id": id = reader.nextInt(); break;
+                    case "customer": customer = reader.nextString(); break;
+                    case "at": at = reader.nextLong(); break;
+                    case "version": version = reader.nextLong(); break;
+                    case "deleted": deleted = reader.nextBoolean(); break;
+                    case "lines":
+                        reader.beginArray();
+                        while (reader.hasNext()) lines.add(decodeLine(reader));
+                        reader.endArray();
+                        break;
+                    default: reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            Order order = new Order(id, customer);
+            for (OrderLine l : lines) order.addItem(l.getItem(), l.getQuantity());
+            return new Entry(order, at, version, endOffset, deleted);
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static OrderLine decodeLine(JsonReader reader) throws IOException {
+        int id = 0;
+        String name = "";
+        int quantity = 1;
+        long price = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id": id = reader.nextInt(); break;
+                case "name": name = reader.nextString(); break;
+                case "quantity": quantity = reader.nextInt(); break;
+                case "price": price = reader.nextCents(); break;
+                default: reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new OrderLine(MenuItemInterner.intern(id, name, price), quantity, price);
+    }
+}
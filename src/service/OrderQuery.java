@@ -0,0 +1,84 @@
+package service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * OrderQuery - one page request for the order history.
+ *
+ * Pages are newest first. `afterId` is the keyset cursor: the page starts
+ * with the first order whose id is lower than it, so fetching a page costs
+ * the same no matter how deep into the history it is.
+ *
+ * With a date filter, pages are ordered by (order date, id) instead, so the
+ * date index serves both the filter and the order; the cursor is then the
+ * last row's order date together with its id (`afterDate`, `afterId`).
+ */
+public class OrderQuery {
+    public static final int DEFAULT_LIMIT = 50;
+    public static final int MAX_LIMIT = 500;
+
+    private final Integer afterId;
+    private final LocalDateTime afterDate;
+    private final int limit;
+    private final LocalDate fromDate;
+    private final LocalDate toDate;
+    private final String customer;
+
+    /**
+     * @param afterId  cursor from the previous page's nextAfter, or null for the first page
+     * @param limit    page size, clamped to [1, MAX_LIMIT]
+     * @param fromDate first order day to include, or null
+     * @param toDate   last order day to include, or null
+     * @param customer customer name to match (case-insensitive), or null
+     */
+    public OrderQuery(Integer afterId, int limit, LocalDate fromDate, LocalDate toDate, String customer) {
+        this(afterId, null, limit, fromDate, toDate, customer);
+    }
+
+    /**
+     * @param afterDate order date from the previous page's nextAfterDate; with a
+     *                  date filter it is required whenever afterId is given
+     */
+    public OrderQuery(Integer afterId, LocalDateTime afterDate, int limit, LocalDate fromDate, LocalDate toDate,
+                      String customer) {
+        if ((fromDate != null || toDate != null) && afterId != null && afterDate == null) {
+            throw new IllegalArgumentException("afterDate is required with after when from or to is given");
+        }
+        this.afterId = afterId;
+        this.afterDate = afterDate;
+        this.limit = Math.max(1, Math.min(MAX_LIMIT, limit));
+        this.fromDate = fromDate;
+        this.toDate = toDate;
+        this.customer = customer == null || customer.trim().isEmpty() ? null : customer.trim();
+    }
+
+    public Integer getAfterId() {
+        return afterId;
+    }
+
+    public LocalDateTime getAfterDate() {
+        return afterDate;
+    }
+
+    /** True if a from or to date is set, which makes the pages date-ordered. */
+    public boolean isDateFiltered() {
+        return fromDate != null || toDate != null;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public LocalDate getFromDate() {
+        return fromDate;
+    }
+
+    public LocalDate getToDate() {
+        return toDate;
+    }
+
+    public String getCustomer() {
+        return customer;
+    }
+}
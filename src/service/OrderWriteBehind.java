@@ -0,0 +1,219 @@
+package service;
+
+import domain.Order;
+import logging.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OrderWriteBehind - accepts orders into the OrderJournal and writes them to
+ * the database in the background.
+ *
+ * {@link #persist} returns once the order is durable in the journal, which
+ * takes one (shared) fsync instead of a database round trip. A flusher thread
+ * takes up to -Dorders.flush.batchSize orders (default 200) at a time, inserts
+ * them in one transaction and then advances the journal checkpoint. If the
+ * database is unavailable the batch is retried with backoff. Orders keep
+ * being accepted meanwhile only while the current block of order ids lasts
+ * (-Dorders.idBlockSize, default 100): reserving the next block needs the
+ * database (see OrderIdAllocator), so after that new orders fail until it is
+ * back. The flusher sees an order as soon as it is written, so it syncs the
+ * journal itself before inserting: an order whose fsync failed was rejected
+ * to its client and is dropped, not inserted.
+ *
+ * Orders in the journal but not yet in the database are queued again by
+ * {@link #start} after a restart. An order deleted before it is flushed is
+ * taken back with {@link #cancel}, which journals a deletion record so a
+ * replay does not bring it back either. Readers that query the database directly
+ * see new orders only once they are flushed.
+ *
+ * Enabled with -Dorders.writeBehind=true.
+ */
+public class OrderWriteBehind implements Closeable {
+    private static final Log log = Log.get("journal");
+
+    private static final long MAX_BACKOFF_MILLIS = 5_000;
+    private static final long CLOSE_TIMEOUT_MILLIS = 10_000;
+
+    private final OrderJournal journal;
+    private final DatabaseManager databaseManager;
+    private final int batchSize;
+    private final BlockingQueue<OrderJournal.Entry> queue = new LinkedBlockingQueue<>();
+    private final Map<Integer, Long> pending = new ConcurrentHashMap<>();   // id -> version, journaled, not yet inserted
+    private final Set<Integer> cancelledInBatch = ConcurrentHashMap.newKeySet();
+    private final Object flushLock = new Object();  // held while a batch is filtered and inserted
+    private final Thread flusher;
+    private volatile boolean closing;
+
+    public OrderWriteBehind(OrderJournal journal, DatabaseManager databaseManager, int batchSize) {
+        this.journal = journal;
+        this.databaseManager = databaseManager;
+        this.batchSize = Math.max(1, batchSize);
+        this.flusher = new Thread(this::flushLoop, "order-flusher");
+        this.flusher.setDaemon(true);
+    }
+
+    /** The configured write-behind, or null when -Dorders.writeBehind is not set. */
+    public static OrderWriteBehind fromSystemProperties(DatabaseManager databaseManager) throws IOException {
+        if (!Boolean.getBoolean("orders.writeBehind")) return null;
+        return new OrderWriteBehind(OrderJournal.fromSystemProperties(), databaseManager,
+                Integer.getInteger("orders.flush.batchSize", 200));
+    }
+
+    /**
+     * Recover the journal, queue its unflushed orders and start the flusher.
+     * Returns the recovered entries so the caller can serve them before they
+     * reach the database.
+     */
+    public List<OrderJournal.Entry> start() throws IOException {
+        List<OrderJournal.Entry> recovered = journal.recover();
+        for (OrderJournal.Entry entry : recovered) pending.put(entry.order().getOrderId(), entry.version());
+        queue.addAll(recovered);
+        flusher.start();
+        return recovered;
+    }
+
+    /**
+     * Journal the order with its change-log version and wait until it is
+     * durable. The order must already have its id.
+     */
+    public void persist(Order order, long version) throws IOException {
+        OrderJournal.Entry entry = journal.append(order, System.currentTimeMillis(), version, e -> {
+            pending.put(order.getOrderId(), version);
+            queue.add(e);
+        });
+        journal.sync(entry.endOffset());
+    }
+
+    /**
+     * Take back an order that is not in the database yet, so it never gets
+     * there. Returns false if it is not pending (never journaled, or already
+     * inserted: the caller deletes it from the database as usual). The
+     * deletion record is durable when this returns.
+     */
+    public boolean cancel(int orderId, long version) throws IOException {
+        if (!pending.containsKey(orderId)) return false;
+        OrderJournal.Entry deletion = journal.appendDeletion(orderId, System.currentTimeMillis(), version);
+        journal.sync(deletion.endOffset());
+        // Under the flush lock the order is either still waiting or already committed, never half way
+        synchronized (flushLock) {
+            if (pending.remove(orderId) == null) return false;
+            if (!queue.removeIf(entry -> entry.order().getOrderId() == orderId)) {
+                cancelledInBatch.add(orderId);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The lowest change-log version among orders accepted but not yet in the
+     * database, or Long.MAX_VALUE if there are none. Every change below it
+     * that is not an insert of a pending order is already in the database.
+     */
+    public long oldestPendingVersion() {
+        long oldest = Long.MAX_VALUE;
+        for (long version : pending.values()) oldest = Math.min(oldest, version);
+        return oldest;
+    }
+
+    /** Orders accepted but not yet written to the database. */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Stop accepting work, give the flusher a few seconds to drain the queue
+     * and close the journal. Whatever is left is replayed on the next start.
+     */
+    @Override
+    public void close() throws IOException {
+        closing = true;
+        try {
+            flusher.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            log.warn("{} orders not flushed; they stay in {} until the next start", queue.size(), journal.getPath());
+        }
+        journal.close();
+    }
+
+    // Wait for the batch to be on disk; after a failed sync, drop what was never acknowledged
+    private boolean durable(List<OrderJournal.Entry> batch) {
+        try {
+            journal.sync(batch.get(batch.size() - 1).endOffset());
+            return true;
+        } catch (IOException e) {
+            long end = journal.discardUnsynced();
+            int before = batch.size() + queue.size();
+            java.util.function.Predicate<OrderJournal.Entry> unsynced = entry -> {
+                if (entry.endOffset() <= end) return false;
+                pending.remove(entry.order().getOrderId());
+                return true;
+            };
+            batch.removeIf(unsynced);
+            queue.removeIf(unsynced);
+            log.warn("Dropped {} orders whose journal sync failed", before - batch.size() - queue.size());
+            return !batch.isEmpty();
+        }
+    }
+
+    private void flushLoop() {
+        List<OrderJournal.Entry> batch = new ArrayList<>(batchSize);
+        long backoff = 0;
+        while (true) {
+            try {
+                if (batch.isEmpty()) {
+                    OrderJournal.Entry first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        if (closing) return;
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                    if (!durable(batch)) continue;
+                }
+
+                long flushedTo = batch.get(batch.size() - 1).endOffset();
+                synchronized (flushLock) {
+                    batch.removeIf(entry -> cancelledInBatch.remove(entry.order().getOrderId()));
+                    if (!databaseManager.insertOrders(batch)) {
+                        // Keep the batch and try again; the orders are safe in the journal
+                        if (closing) return;
+                        backoff = Math.min(Math.max(100, backoff * 2), MAX_BACKOFF_MILLIS);
+                        flushLock.wait(backoff);
+                        continue;
+                    }
+                    for (OrderJournal.Entry entry : batch) pending.remove(entry.order().getOrderId());
+                }
+                backoff = 0;
+                batch.clear();
+                try {
+                    journal.checkpoint(flushedTo);
+                } catch (IOException e) {
+                    // A stale checkpoint only means some orders are inserted again (and skipped) on replay
+                    log.warn("Journal checkpoint failed: {}", e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                log.error("Order flusher failed, retrying", e);
+                try {
+                    Thread.sleep(MAX_BACKOFF_MILLIS);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package test;
+
+import server.ByteRanges;
+
+import java.util.Arrays;
+
+/**
+ * Checks for ByteRanges, the Range and If-Range parsing behind static files (no database needed)
+ * Run with: `java -cp out test.ByteRangesTest`
+ */
+public class ByteRangesTest {
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        // Ranges of a 1000-byte file as {offset, count}
+        range("bytes=0-99", 1000, 0, 100);
+        range("bytes=100-199", 1000, 100, 100);
+        range("BYTES=5-5", 1000, 5, 1);
+        range("bytes= 10 - 19 ", 1000, 10, 10);
+        range("bytes=900-", 1000, 900, 100);        // open end
+        range("bytes=0-", 1000, 0, 1000);
+        range("bytes=990-5000", 1000, 990, 10);     // end past the file is cut to its end
+        range("bytes=-100", 1000, 900, 100);        // suffix: the last 100 bytes
+        range("bytes=-5000", 1000, 0, 1000);        // suffix longer than the file: all of it
+
+        // Unsatisfiable: 416
+        unsatisfiable("bytes=1000-", 1000);
+        unsatisfiable("bytes=5000-6000", 1000);
+        unsatisfiable("bytes=-0", 1000);
+        unsatisfiable("bytes=0-", 0);
+
+        // Ignored: the whole file is sent
+        ignored("bytes=0-99,200-299");                // several ranges
+        ignored("items=0-10");                         // other unit
+        ignored("bytes=500-100");                      // end before start
+        ignored("bytes=");
+        ignored("bytes=-");
+        ignored("bytes=abc-def");
+        ignored("bytes=100");
+        ignored("bytes=--5");
+
+        // If-Range
+        String etag = "\"abc123\"";
+        long lastModified = 1_700_000_000_500L;       // Tue, 14 Nov 2023 22:13:20.500 GMT
+        String date = "Tue, 14 Nov 2023 22:13:20 GMT";
+        check(ByteRanges.ifRangeMatches(null, etag, lastModified), "no If-Range");
+        check(ByteRanges.ifRangeMatches(etag, etag, lastModified), "same strong ETag");
+        check(ByteRanges.ifRangeMatches(" \"abc123\" ", etag, lastModified), "same ETag with spaces");
+        check(!ByteRanges.ifRangeMatches("\"other\"", etag, lastModified), "different ETag");
+        check(!ByteRanges.ifRangeMatches("W/\"abc123\"", etag, lastModified), "weak ETag never matches");
+        check(!ByteRanges.ifRangeMatches("W/\"abc123\"", "W/\"abc123\"", lastModified), "weak against weak");
+        check(!ByteRanges.ifRangeMatches(etag, "W/\"abc123\"", lastModified), "strong against our weak ETag");
+        check(ByteRanges.ifRangeMatches(date, etag, lastModified), "date equal to the second");
+        check(!ByteRanges.ifRangeMatches("Tue, 14 Nov 2023 22:13:19 GMT", etag, lastModified), "older date");
+        check(!ByteRanges.ifRangeMatches("Tue, 14 Nov 2023 22:13:21 GMT", etag, lastModified), "newer date");
+        check(!ByteRanges.ifRangeMatches(date, etag, -1), "date with Last-Modified unknown");
+        check(!ByteRanges.ifRangeMatches("yesterday", etag, lastModified), "malformed date");
+
+        if (failures > 0) {
+            System.err.println("FAILED: " + failures + " check(s)");
+            System.exit(1);
+        }
+        System.out.println("PASS: ByteRanges");
+    }
+
+    private static void range(String header, long length, long offset, long count) {
+        long[] r = ByteRanges.parse(header, length);
+        check(r != null && r.length == 2 && r[0] == offset && r[1] == count,
+                header + " of " + length + ": " + Arrays.toString(r));
+    }
+
+    private static void unsatisfiable(String header, long length) {
+        long[] r = ByteRanges.parse(header, length);
+        check(r != null && r.length == 0, header + " of " + length + " unsatisfiable: " + Arrays.toString(r));
+    }
+
+    private static void ignored(String header) {
+        long[] r = ByteRanges.parse(header, 1000);
+        check(r == null, header + " ignored: " + Arrays.toString(r));
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) {
+            System.err.println("FAILED: " + what);
+            failures++;
+        }
+    }
+}
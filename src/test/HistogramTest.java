@@ -0,0 +1,59 @@
+package test;
+
+import metrics.Histogram;
+
+/**
+ * Checks for Histogram (no database needed)
+ * Run with: `java -cp out test.HistogramTest`
+ */
+public class HistogramTest {
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        Histogram empty = new Histogram();
+        check(empty.getCount() == 0 && empty.getValueAtPercentile(99) == 0, "empty");
+
+        // Small values are exact
+        Histogram small = new Histogram();
+        for (int v = 1; v <= 100; v++) small.record(v);
+        check(small.getValueAtPercentile(50) == 50, "p50 of 1..100: " + small.getValueAtPercentile(50));
+        check(small.getValueAtPercentile(99) == 99, "p99 of 1..100: " + small.getValueAtPercentile(99));
+        check(small.getValueAtPercentile(100) == 100 && small.getMax() == 100, "max");
+        check(small.getMean() == 50.5, "mean: " + small.getMean());
+
+        // Large values are within the bucket precision and never above the max
+        Histogram latencies = new Histogram();
+        for (long v = 1; v <= 1_000_000; v++) latencies.record(v * 1_000);
+        double[] percentiles = {50, 99, 99.9};
+        long[] expected = {500_000_000L, 990_000_000L, 999_000_000L};
+        for (int i = 0; i < percentiles.length; i++) {
+            long got = latencies.getValueAtPercentile(percentiles[i]);
+            long want = expected[i];
+            check(Math.abs(got - want) <= want / 64, "p" + percentiles[i] + ": " + got + " vs " + want);
+        }
+        check(latencies.getValueAtPercentile(100) == 1_000_000_000L, "p100 is the max");
+
+        // Extremes and merging
+        Histogram edges = new Histogram();
+        edges.record(-5);
+        edges.record(Long.MAX_VALUE);
+        check(edges.getValueAtPercentile(50) == 0, "negative counts as 0");
+        check(edges.getValueAtPercentile(100) == Long.MAX_VALUE, "Long.MAX_VALUE");
+        edges.add(small);
+        check(edges.getCount() == 102 && edges.getMax() == Long.MAX_VALUE, "add");
+
+        if (failures > 0) {
+            System.err.println("FAILED: " + failures + " check(s)");
+            System.exit(1);
+        }
+        System.out.println("PASS: Histogram");
+        System.exit(0);
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) {
+            System.err.println("FAILED: " + what);
+            failures++;
+        }
+    }
+}
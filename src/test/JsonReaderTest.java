@@ -0,0 +1,111 @@
+package test;
+
+import exceptions.JsonParseException;
+import json.JsonReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Checks for JsonReader (no database needed)
+ * Run with: `java -cp out test.JsonReaderTest`
+ */
+public class JsonReaderTest {
+    private static int failures = 0;
+
+    public static void main(String[] args) throws IOException {
+        // Reordered fields and nested values that must be skipped
+        JsonReader r = JsonReader.of("{\"items\":[{\"quantity\":2,\"extra\":{\"a\":[1,{\"b\":null}]},\"menuItemId\":7}],"
+                + "\"customerName\":\"Tom \\\"Cat\\\" \\u00e9\\n\"}");
+        r.beginObject();
+        check(r.nextName().equals("items"), "first name");
+        r.beginArray();
+        r.beginObject();
+        int qty = 0;
+        int id = 0;
+        while (r.hasNext()) {
+            String key = r.nextName();
+            if (key.equals("quantity")) qty = r.nextInt();
+            else if (key.equals("menuItemId")) id = r.nextInt();
+            else r.skipValue();
+        }
+        r.endObject();
+        r.endArray();
+        check(qty == 2 && id == 7, "reordered fields: qty=" + qty + " id=" + id);
+        check(r.nextName().equals("customerName"), "second name");
+        String name = r.nextString();
+        check(name.equals("Tom \"Cat\" é\n"), "escapes: " + name);
+        r.endObject();
+        check(r.peek() == JsonReader.Token.END_DOCUMENT, "end of document");
+
+        // Numbers
+        r = JsonReader.of("[12.99, -0.5, 1e3, 9007199254740993, \"42\", true, null]");
+        r.beginArray();
+        check(r.nextDouble() == 12.99, "12.99");
+        check(r.nextDouble() == -0.5, "-0.5");
+        check(r.nextDouble() == 1000.0, "1e3");
+        check(r.nextLong() == 9007199254740993L, "long beyond 2^53");
+        check(r.nextInt() == 42, "numeric string");
+        check(r.nextBoolean(), "true");
+        r.nextNull();
+        r.endArray();
+
+        // Money amounts as exact cents
+        r = JsonReader.of("[12.99, 0.1, 7, -3.05, 2.675, 2.6749, 1.5e1, \"4.20\"]");
+        r.beginArray();
+        check(r.nextCents() == 1299, "12.99 cents");
+        check(r.nextCents() == 10, "0.1 cents");
+        check(r.nextCents() == 700, "7 cents");
+        check(r.nextCents() == -305, "-3.05 cents");
+        check(r.nextCents() == 268, "2.675 rounds half up");
+        check(r.nextCents() == 267, "2.6749 rounds down");
+        check(r.nextCents() == 1500, "1.5e1 cents");
+        check(r.nextCents() == 420, "string cents");
+        r.endArray();
+
+        // Multi-byte UTF-8 split across a stream buffer boundary
+        StringBuilder big = new StringBuilder("[\"");
+        for (int i = 0; i < 8189; i++) big.append('x');
+        big.append("é猫\"]");
+        r = new JsonReader(new ByteArrayInputStream(big.toString().getBytes(StandardCharsets.UTF_8)));
+        r.beginArray();
+        String s = r.nextString();
+        check(s.endsWith("é猫") && s.length() == 8191, "buffer boundary");
+        r.endArray();
+
+        // Malformed input is reported, not silently accepted
+        expectFailure("{\"a\":1,}");
+        expectFailure("{\"a\" 1}");
+        expectFailure("[1,2");
+        expectFailure("{\"a\":\"unterminated}");
+        expectFailure("[tru]");
+
+        if (failures > 0) {
+            System.err.println("FAILED: " + failures + " check(s)");
+            System.exit(1);
+        }
+        System.out.println("PASS: JsonReader");
+        System.exit(0);
+    }
+
+    private static void expectFailure(String json) {
+        try {
+            JsonReader r = JsonReader.of(json);
+            r.skipValue();
+            r.peek();
+            check(false, "expected JsonParseException for " + json);
+        } catch (JsonParseException e) {
+            // expected
+        } catch (IOException e) {
+            check(false, "unexpected " + e + " for " + json);
+        }
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) {
+            System.err.println("FAILED: " + what);
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package test;
+
+import json.JsonReader;
+import json.JsonWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Checks for JsonWriter (no database needed)
+ * Run with: `java -cp out test.JsonWriterTest`
+ */
+public class JsonWriterTest {
+    private static int failures = 0;
+
+    public static void main(String[] args) throws IOException {
+        // Structure, commas and numbers
+        try (JsonWriter w = JsonWriter.pooled()) {
+            w.beginObject()
+             .name("id").value(7)
+             .name("min").value(Long.MIN_VALUE)
+             .name("price").valueCents(1250)
+             .name("refund").valueCents(-5)
+             .name("ok").value(true)
+             .name("none").value((String) null)
+             .name("items").beginArray().value(1).beginArray().endArray().beginObject().endObject().endArray()
+             .name("raw").rawValue("[{\"a\":1}]")
+             .endObject();
+            String expected = "{\"id\":7,\"min\":-9223372036854775808,\"price\":12.50,\"refund\":-0.05,"
+                    + "\"ok\":true,\"none\":null,\"items\":[1,[],{}],\"raw\":[{\"a\":1}]}";
+            check(w.toString().equals(expected), "structure: " + w);
+        }
+
+        // Escapes and UTF-8 survive a round trip through JsonReader
+        String tricky = "Tom \"Cat\" \\ é 猫 😺\n\r\t\b\f\u0001 / end";
+        try (JsonWriter w = JsonWriter.pooled()) {
+            w.beginArray().value(tricky).endArray();
+            check(w.toString().contains("\\u0001"), "control char escaped: " + w);
+            check(java.util.Arrays.equals(w.toByteArray(), w.toString().getBytes(StandardCharsets.UTF_8)), "UTF-8 bytes");
+            JsonReader r = new JsonReader(w.toByteArray());
+            r.beginArray();
+            check(r.nextString().equals(tricky), "round trip");
+            r.endArray();
+        }
+
+        // A long multi-byte string crossing many buffer boundaries
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 20_000; i++) big.append(i % 7 == 0 ? "猫" : i % 5 == 0 ? "\"" : "x");
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        try (JsonWriter w = JsonWriter.streaming(sink)) {
+            w.beginArray();
+            for (int i = 0; i < 10; i++) w.value(big.toString());
+            w.endArray();
+        }
+        JsonReader r = new JsonReader(sink.toByteArray());
+        r.beginArray();
+        int strings = 0;
+        while (r.hasNext()) {
+            if (r.nextString().equals(big.toString())) strings++;
+        }
+        r.endArray();
+        check(strings == 10, "streaming round trip: " + strings);
+
+        // Misuse is rejected
+        expectFailure(() -> JsonWriter.pooled().beginObject().value(1));
+        expectFailure(() -> JsonWriter.pooled().beginArray().name("a"));
+        expectFailure(() -> JsonWriter.pooled().value(1).value(2));
+        expectFailure(() -> JsonWriter.pooled().beginArray().endObject());
+
+        if (failures > 0) {
+            System.err.println("FAILED: " + failures + " check(s)");
+            System.exit(1);
+        }
+        System.out.println("PASS: JsonWriter");
+        System.exit(0);
+    }
+
+    private static void expectFailure(Runnable misuse) {
+        try {
+            misuse.run();
+            check(false, "expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) {
+            System.err.println("FAILED: " + what);
+            failures++;
+        }
+    }
+}
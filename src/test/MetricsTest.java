@@ -0,0 +1,58 @@
+package test;
+
+import json.JsonWriter;
+import metrics.Metrics;
+
+/**
+ * Checks for the Metrics export formats (no database needed)
+ * Run with: `java -cp out test.MetricsTest`
+ */
+public class MetricsTest {
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        Metrics metrics = new Metrics();
+        metrics.timer("req_seconds", "route", "/a", "status", "200").record(2_000_000); // 2 ms
+        metrics.timer("req_seconds", "route", "/a", "status", "200").record(4_000_000);
+        metrics.histogram("body_bytes", "route", "say \"hi\"").record(100);
+        metrics.gauge("depth", () -> 7);
+        metrics.counter("done_total", () -> 3);
+
+        String prom = metrics.toPrometheus();
+        check(prom.contains("# TYPE req_seconds summary\n"), "summary type line:\n" + prom);
+        check(prom.contains("req_seconds_count{route=\"/a\",status=\"200\"} 2\n"), "count line");
+        check(prom.contains("req_seconds_sum{route=\"/a\",status=\"200\"} 0.006\n"), "sum in seconds");
+        check(prom.contains("req_seconds{route=\"/a\",status=\"200\",quantile=\"0.99\"} 0.00"), "quantile line");
+        check(prom.contains("body_bytes_count{route=\"say \\\"hi\\\"\"} 1\n"), "escaped label");
+        check(prom.contains("# TYPE depth gauge\ndepth 7\n"), "gauge");
+        check(prom.contains("# TYPE done_total counter\ndone_total 3\n"), "counter");
+        check(prom.indexOf("# TYPE req_seconds") == prom.lastIndexOf("# TYPE req_seconds"), "one TYPE line per name");
+
+        try (JsonWriter json = JsonWriter.pooled()) {
+            metrics.writeJson(json);
+            String s = json.toString();
+            check(s.startsWith("{\"metrics\":[{\"name\":\"body_bytes\",\"type\":\"summary\",\"labels\":{\"route\":\"say \\\"hi\\\"\"},\"count\":1"),
+                    "json: " + s);
+            check(s.contains("{\"name\":\"depth\",\"type\":\"gauge\",\"value\":7}"), "json gauge");
+            check(s.contains("\"p999\":"), "json percentiles");
+        }
+
+        long before = Metrics.getDbNanos();
+        Metrics.addDbNanos(500);
+        check(Metrics.getDbNanos() - before == 500, "db time per thread");
+
+        if (failures > 0) {
+            System.err.println("FAILED: " + failures + " check(s)");
+            System.exit(1);
+        }
+        System.out.println("PASS: Metrics");
+        System.exit(0);
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) {
+            System.err.println("FAILED: " + what);
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package test;
+
+import com.sun.net.httpserver.HttpExchange;
+import server.NioHttpServer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Checks for NioHttpServer over raw sockets: pipelining, chunked framing,
+ * Content-Length mismatches, size limits and HTTP/1.0 (no database needed)
+ * Run with: `java -cp out test.NioHttpServerTest`
+ */
+public class NioHttpServerTest {
+    private static final int BUFFER_SIZE = 4096;
+    private static final int MAX_BODY = 1000;
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        NioHttpServer server = new NioHttpServer(1, BUFFER_SIZE, MAX_BODY, 5_000);
+        server.bind(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/echo", NioHttpServerTest::echo);
+        server.createContext("/chunked", NioHttpServerTest::chunked);
+        server.createContext("/short", exchange -> {
+            exchange.sendResponseHeaders(200, 10);
+            OutputStream os = exchange.getResponseBody();
+            os.write("12345".getBytes(StandardCharsets.US_ASCII));
+            os.close();
+        });
+        server.createContext("/long", exchange -> {
+            exchange.sendResponseHeaders(200, 5);
+            OutputStream os = exchange.getResponseBody();
+            os.write("1234567890".getBytes(StandardCharsets.US_ASCII));
+            os.close();
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        server.setExecutor(executor);
+        server.start();
+        int port = server.getAddress().getPort();
+
+        try {
+            run("pipelining", () -> checkPipelining(port));
+            run("chunked", () -> checkChunked(port));
+            run("short body", () -> checkLengthMismatch(port, "/short"));
+            run("long body", () -> checkLengthMismatch(port, "/long"));
+            run("limits", () -> checkLimits(port));
+            run("HTTP/1.0", () -> checkHttp10(port));
+            run("Connection: close", () -> checkConnectionClose(port));
+        } finally {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+
+        if (failures > 0) {
+            System.err.println("FAILED: " + failures + " check(s)");
+            System.exit(1);
+        }
+        System.out.println("PASS: NioHttpServer");
+        System.exit(0);
+    }
+
+    // Replies "<method> <path>?<query> <request body>"; ?sleep=N delays it by N ms
+    private static void echo(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null && query.startsWith("sleep=")) {
+            try {
+                Thread.sleep(Long.parseLong(query.substring(6)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        byte[] body = exchange.getRequestBody().readAllBytes();
+        byte[] text = (exchange.getRequestMethod() + " " + exchange.getRequestURI() + " "
+                + new String(body, StandardCharsets.UTF_8)).getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, text.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(text);
+        }
+    }
+
+    // 10000 bytes of a repeating pattern, streamed, with a flush part-way
+    private static void chunked(HttpExchange exchange) throws IOException {
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream os = exchange.getResponseBody()) {
+            byte[] data = pattern(10_000);
+            os.write(data, 0, 100);
+            os.flush();
+            os.write(data, 100, data.length - 100);
+        }
+    }
+
+    private static void checkPipelining(int port) throws IOException {
+        try (Socket socket = connect(port)) {
+            // The first request is the slowest; the answers must still come back in request order
+            send(socket, "GET /echo?sleep=300 HTTP/1.1\r\nHost: t\r\n\r\n"
+                    + "POST /echo?n=2 HTTP/1.1\r\nHost: t\r\nContent-Length: 5\r\n\r\nhello"
+                    + "GET /echo?n=3 HTTP/1.1\r\nHost: t\r\n\r\n");
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            Response first = Response.read(in);
+            Response second = Response.read(in);
+            Response third = Response.read(in);
+            check(first.text().equals("GET /echo?sleep=300 "), "pipelined 1: " + first.text());
+            check(second.text().equals("POST /echo?n=2 hello"), "pipelined 2: " + second.text());
+            check(third.text().equals("GET /echo?n=3 "), "pipelined 3: " + third.text());
+        }
+    }
+
+    private static void checkChunked(int port) throws IOException {
+        try (Socket socket = connect(port)) {
+            send(socket, "GET /chunked HTTP/1.1\r\nHost: t\r\n\r\n");
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            Response response = Response.read(in);
+            check("chunked".equalsIgnoreCase(response.header("transfer-encoding")), "chunked encoding header");
+            check(response.header("content-length") == null, "no Content-Length with chunked");
+            check(java.util.Arrays.equals(response.body, pattern(10_000)), "chunked body of " + response.body.length);
+            check(response.chunks >= 3, "flush and full buffers end chunks: " + response.chunks);
+
+            // The connection stays usable after the last chunk
+            send(socket, "GET /echo HTTP/1.1\r\nHost: t\r\n\r\n");
+            check(Response.read(in).text().equals("GET /echo "), "request after a chunked response");
+        }
+    }
+
+    // A body that does not match its Content-Length must end the connection, never a complete-looking response
+    private static void checkLengthMismatch(int port, String path) throws IOException {
+        try (Socket socket = connect(port)) {
+            send(socket, "GET " + path + " HTTP/1.1\r\nHost: t\r\n\r\n");
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            boolean aborted;
+            try {
+                Response response = Response.read(in);
+                aborted = false;
+                check(false, path + ": complete response " + response.status + " " + response.text());
+            } catch (EOFException e) {
+                aborted = true;
+            }
+            check(aborted && in.read() < 0, path + ": connection closed");
+        }
+    }
+
+    private static void checkLimits(int port) throws IOException {
+        try (Socket socket = connect(port)) {
+            send(socket, "POST /echo HTTP/1.1\r\nHost: t\r\nContent-Length: " + (MAX_BODY + 1) + "\r\n\r\n");
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            check(Response.read(in).status == 413, "413 for a body over the limit");
+            check(in.read() < 0, "connection closed after 413");
+        }
+        try (Socket socket = connect(port)) {
+            send(socket, "GET /echo HTTP/1.1\r\nHost: t\r\nX-Big: " + "x".repeat(BUFFER_SIZE) + "\r\n\r\n");
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            check(Response.read(in).status == 431, "431 for a head over the buffer size");
+            check(in.read() < 0, "connection closed after 431");
+        }
+    }
+
+    private static void checkHttp10(int port) throws IOException {
+        // Without keep-alive the server answers and closes
+        try (Socket socket = connect(port)) {
+            send(socket, "GET /echo HTTP/1.0\r\n\r\n");
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            Response response = Response.read(in);
+            check(response.statusLine.startsWith("HTTP/1.0 200"), "HTTP/1.0 status line: " + response.statusLine);
+            check(in.read() < 0, "HTTP/1.0 connection closed after the response");
+        }
+        // A streamed body cannot be chunked for HTTP/1.0: it ends where the connection does
+        try (Socket socket = connect(port)) {
+            send(socket, "GET /chunked HTTP/1.0\r\nConnection: keep-alive\r\n\r\n");
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            Response response = Response.read(in);
+            check(response.header("transfer-encoding") == null, "no chunked encoding for HTTP/1.0");
+            check(java.util.Arrays.equals(response.body, pattern(10_000)), "HTTP/1.0 body read to close");
+        }
+        // With keep-alive and a Content-Length the connection stays open
+        try (Socket socket = connect(port)) {
+            send(socket, "GET /echo?n=1 HTTP/1.0\r\nConnection: keep-alive\r\n\r\n");
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            Response response = Response.read(in);
+            check("keep-alive".equalsIgnoreCase(response.header("connection")), "HTTP/1.0 keep-alive acknowledged");
+            send(socket, "GET /echo?n=2 HTTP/1.0\r\nConnection: keep-alive\r\n\r\n");
+            check(Response.read(in).text().equals("GET /echo?n=2 "), "second HTTP/1.0 keep-alive request");
+        }
+    }
+
+    private static void checkConnectionClose(int port) throws IOException {
+        try (Socket socket = connect(port)) {
+            send(socket, "GET /echo HTTP/1.1\r\nHost: t\r\nConnection: close\r\n\r\n");
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            Response response = Response.read(in);
+            check("close".equalsIgnoreCase(response.header("connection")), "Connection: close echoed");
+            check(in.read() < 0, "HTTP/1.1 connection closed on request");
+        }
+    }
+
+    private interface Case {
+        void run() throws IOException;
+    }
+
+    // A malformed or missing response fails the case; the other cases still run
+    private static void run(String name, Case c) {
+        try {
+            c.run();
+        } catch (IOException | RuntimeException e) {
+            check(false, name + ": " + e);
+        }
+    }
+
+    private static Socket connect(int port) throws IOException {
+        Socket socket = new Socket("127.0.0.1", port);
+        socket.setSoTimeout(5_000);
+        return socket;
+    }
+
+    private static void send(Socket socket, String request) throws IOException {
+        socket.getOutputStream().write(request.getBytes(StandardCharsets.ISO_8859_1));
+        socket.getOutputStream().flush();
+    }
+
+    private static byte[] pattern(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) data[i] = (byte) ('a' + i % 26);
+        return data;
+    }
+
+    // One response as read off the wire; chunked bodies are decoded with strict framing checks
+    private static final class Response {
+        String statusLine;
+        int status;
+        final Map<String, String> headers = new HashMap<>();
+        byte[] body;
+        int chunks;
+
+        String header(String name) {
+            return headers.get(name);
+        }
+
+        String text() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+
+        // Throws EOFException if the connection ends before the response does
+        static Response read(InputStream in) throws IOException {
+            Response r = new Response();
+            r.statusLine = line(in);
+            r.status = Integer.parseInt(r.statusLine.substring(9, 12));
+            for (String line = line(in); !line.isEmpty(); line = line(in)) {
+                int colon = line.indexOf(':');
+                r.headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+            }
+            String length = r.header("content-length");
+            if ("chunked".equalsIgnoreCase(r.header("transfer-encoding"))) {
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                while (true) {
+                    int size = Integer.parseInt(line(in), 16);
+                    if (size == 0) break;
+                    body.write(exactly(in, size));
+                    r.chunks++;
+                    if (!line(in).isEmpty()) throw new IOException("Chunk data not followed by CRLF");
+                }
+                if (!line(in).isEmpty()) throw new IOException("Last chunk not followed by CRLF");
+                r.body = body.toByteArray();
+            } else if (length != null) {
+                r.body = exactly(in, Integer.parseInt(length));
+            } else {
+                r.body = in.readAllBytes();
+            }
+            return r;
+        }
+
+        private static String line(InputStream in) throws IOException {
+            StringBuilder sb = new StringBuilder();
+            int b;
+            while ((b = in.read()) != '\n') {
+                if (b < 0) throw new EOFException("Connection closed mid-response");
+                sb.append((char) b);
+            }
+            if (sb.length() == 0 || sb.charAt(sb.length() - 1) != '\r') throw new IOException("Line not ended by CRLF");
+            return sb.substring(0, sb.length() - 1);
+        }
+
+        private static byte[] exactly(InputStream in, int n) throws IOException {
+            byte[] data = in.readNBytes(n);
+            if (data.length < n) throw new EOFException("Connection closed after " + data.length + " of " + n + " bytes");
+            return data;
+        }
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) {
+            System.err.println("FAILED: " + what);
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package test;
+
+import domain.MenuItem;
+import domain.Order;
+import service.ConnectionPool;
+import service.DatabaseManager;
+import service.OrderJournal;
+import service.OrderWriteBehind;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that an order deleted before the flusher wrote it never reaches the
+ * database, and is not replayed from the journal, and that the flusher backs
+ * off quietly while Postgres is unreachable (no database needed)
+ * Run with: `java -cp out test.OrderWriteBehindTest`
+ */
+public class OrderWriteBehindTest {
+    private static int failures = 0;
+
+    // Stands in for Postgres: fails while `down`, records what was inserted otherwise
+    private static class FakeDatabase extends DatabaseManager {
+        volatile boolean down = true;
+        final Set<Integer> inserted = ConcurrentHashMap.newKeySet();
+
+        FakeDatabase() {
+            super(null, SchemaMode.JSON);
+        }
+
+        @Override
+        public boolean insertOrders(List<OrderJournal.Entry> entries) {
+            if (down) return false;
+            for (OrderJournal.Entry entry : entries) inserted.add(entry.order().getOrderId());
+            return true;
+        }
+    }
+
+    // The real insert, against a pool whose server refuses connections; counts calls and failures
+    private static class UnreachableDatabase extends DatabaseManager {
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger thrown = new AtomicInteger();
+
+        UnreachableDatabase(ConnectionPool pool) {
+            super(pool, SchemaMode.JSON);
+        }
+
+        @Override
+        public boolean insertOrders(List<OrderJournal.Entry> entries) {
+            calls.incrementAndGet();
+            try {
+                return super.insertOrders(entries);
+            } catch (RuntimeException e) {
+                thrown.incrementAndGet();
+                throw e;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("journal-test");
+        Path file = dir.resolve("orders.journal");
+        MenuItem item = new MenuItem(1, "Olive", "Olives", 4.5, "Appetizer");
+
+        // Database down: orders 1 and 2 wait (2 in the flusher's retry batch), 3 arrives later in the queue
+        FakeDatabase db = new FakeDatabase();
+        OrderWriteBehind writeBehind = new OrderWriteBehind(new OrderJournal(file, 1 << 20), db, 200);
+        writeBehind.start();
+        writeBehind.persist(order(1, item), 1);
+        writeBehind.persist(order(2, item), 2);
+        Thread.sleep(300);
+        writeBehind.persist(order(3, item), 3);
+
+        check(writeBehind.cancel(2, 4), "cancel of an order in the retry batch");
+        check(writeBehind.cancel(3, 5), "cancel of a queued order");
+        check(!writeBehind.cancel(99, 6), "cancel of an unknown order");
+
+        // A restart now must not replay the cancelled orders
+        List<OrderJournal.Entry> replayed;
+        try (OrderJournal copy = new OrderJournal(copyOf(file, dir), 1 << 20)) {
+            replayed = copy.recover();
+        }
+        check(replayed.size() == 1 && replayed.get(0).order().getOrderId() == 1, "replay keeps only order 1: " + replayed);
+
+        db.down = false;
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (writeBehind.getPendingCount() > 0 || !db.inserted.contains(1)) {
+            if (System.currentTimeMillis() > deadline) break;
+            Thread.sleep(50);
+        }
+        writeBehind.close();
+        check(db.inserted.equals(Set.of(1)), "only order 1 inserted: " + db.inserted);
+        check(!writeBehind.cancel(1, 7), "cancel after the flush leaves the delete to the database");
+
+        checkUnreachableDatabase(dir.resolve("unreachable.journal"), item);
+
+        if (failures > 0) {
+            System.err.println("FAILED: " + failures + " check(s)");
+            System.exit(1);
+        }
+        System.out.println("PASS: OrderWriteBehind");
+        System.exit(0);
+    }
+
+    // With Postgres down the flusher must take the retry path: insertOrders returns false, often, and never throws
+    private static void checkUnreachableDatabase(Path file, MenuItem item) throws Exception {
+        ConnectionPool pool = new ConnectionPool("jdbc:postgresql://127.0.0.1:1/none", "none", "none",
+                0, 2, 60_000, 500, 0, false, 30_000);
+        UnreachableDatabase db = new UnreachableDatabase(pool);
+        OrderWriteBehind writeBehind = new OrderWriteBehind(new OrderJournal(file, 1 << 20), db, 200);
+        writeBehind.start();
+        writeBehind.persist(order(10, item), 10);
+        Thread.sleep(1500);
+        check(db.thrown.get() == 0, "insertOrders threw " + db.thrown.get() + " time(s) with the database down");
+        check(db.calls.get() >= 3, "flusher retried with backoff: " + db.calls.get() + " attempt(s)");
+        check(writeBehind.getPendingCount() == 1, "order still pending: " + writeBehind.getPendingCount());
+        writeBehind.close();
+        pool.close();
+    }
+
+    private static Order order(int id, MenuItem item) {
+        Order order = new Order(id, "Test " + id);
+        order.addItem(item, 1);
+        return order;
+    }
+
+    private static Path copyOf(Path file, Path dir) throws java.io.IOException {
+        Path copy = dir.resolve("copy.journal");
+        Files.copy(file, copy);
+        return copy;
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) {
+            System.err.println("FAILED: " + what);
+            failures++;
+        }
+    }
+}